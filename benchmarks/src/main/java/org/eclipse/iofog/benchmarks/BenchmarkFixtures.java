@@ -0,0 +1,72 @@
+/*
+ * *******************************************************************************
+ *   Copyright (c) 2018 Edgeworx, Inc.
+ *
+ *   This program and the accompanying materials are made available under the
+ *   terms of the Eclipse Public License v. 2.0 which is available at
+ *   http://www.eclipse.org/legal/epl-2.0
+ *
+ *   SPDX-License-Identifier: EPL-2.0
+ * *******************************************************************************
+ */
+
+package org.eclipse.iofog.benchmarks;
+
+import org.eclipse.iofog.tmg.manager.TMGMessageManager;
+import org.eclipse.iofog.utils.IOMessageConverter;
+import org.eclipse.iofog.utils.elements.IOMessage;
+import org.w3c.dom.Document;
+import org.w3c.dom.NodeList;
+
+import javax.xml.parsers.DocumentBuilderFactory;
+import java.io.File;
+
+/**
+ * Fixtures of benchmarks based on sample messages from TMG_files/messages.xml.
+ * Location of messages.xml can be changed with "tmg.messages" system property.
+ */
+final class BenchmarkFixtures {
+
+    private static final String MESSAGES_FILE_PROPERTY = "tmg.messages";
+    private static final String DEFAULT_MESSAGES_FILE = "../TMG_files/messages.xml";
+
+    private BenchmarkFixtures() {
+    }
+
+    /**
+     * Method parses messages.xml used as baseline fixture.
+     *
+     * @return Document
+     */
+    static Document getMessagesDocument() {
+        String filename = System.getProperty(MESSAGES_FILE_PROPERTY, DEFAULT_MESSAGES_FILE);
+        try {
+            return DocumentBuilderFactory.newInstance().newDocumentBuilder().parse(new File(filename));
+        } catch (Exception e) {
+            throw new IllegalStateException("Can't load benchmark fixtures from " + filename
+                                            + ". Set -D" + MESSAGES_FILE_PROPERTY + " to location of messages.xml.", e);
+        }
+    }
+
+    /**
+     * Method returns first sample message with content data of requested size.
+     * Content data is built by repeating the original content, so payload keeps its JSON-like text shape.
+     *
+     * @param payloadSize - size of content data in bytes
+     * @return IOMessage
+     */
+    static IOMessage getMessage(int payloadSize) {
+        NodeList xmlMessages = getMessagesDocument().getElementsByTagName(TMGMessageManager.IO_MESSAGE_TAG_NAME);
+        IOMessage message = IOMessageConverter.getMessageFromNode(xmlMessages.item(0));
+        message.setContentData(resize(message.getContentData(), payloadSize));
+        return message;
+    }
+
+    private static byte[] resize(byte[] sample, int size) {
+        byte[] result = new byte[size];
+        for (int i = 0; i < size; i += sample.length) {
+            System.arraycopy(sample, 0, result, i, Math.min(sample.length, size - i));
+        }
+        return result;
+    }
+}
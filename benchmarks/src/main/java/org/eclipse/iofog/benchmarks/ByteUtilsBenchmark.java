@@ -0,0 +1,111 @@
+/*
+ * *******************************************************************************
+ *   Copyright (c) 2018 Edgeworx, Inc.
+ *
+ *   This program and the accompanying materials are made available under the
+ *   terms of the Eclipse Public License v. 2.0 which is available at
+ *   http://www.eclipse.org/legal/epl-2.0
+ *
+ *   SPDX-License-Identifier: EPL-2.0
+ * *******************************************************************************
+ */
+
+package org.eclipse.iofog.benchmarks;
+
+import org.eclipse.iofog.utils.ByteUtils;
+import org.eclipse.iofog.utils.elements.IOMessage;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Benchmarks of {@link ByteUtils} primitives.
+ * String conversions use the content data of the sample message resized to payload size.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class ByteUtilsBenchmark {
+
+    private long longValue;
+    private int intValue;
+    private short shortValue;
+    private byte[] longBytes;
+    private byte[] intBytes;
+    private byte[] shortBytes;
+
+    @Setup
+    public void setUp() {
+        IOMessage message = BenchmarkFixtures.getMessage(0);
+        longValue = message.getTimestamp();
+        intValue = message.getSequenceTotal();
+        shortValue = message.getVersion();
+        longBytes = ByteUtils.longToBytes(longValue);
+        intBytes = ByteUtils.integerToBytes(intValue);
+        shortBytes = ByteUtils.shortToBytes(shortValue);
+    }
+
+    @State(Scope.Benchmark)
+    public static class Payload {
+
+        @Param({"100", "1024", "10240", "102400", "1048576", "10485760"})
+        private int payloadSize;
+
+        private String string;
+        private byte[] bytes;
+
+        @Setup
+        public void setUp() {
+            bytes = BenchmarkFixtures.getMessage(payloadSize).getContentData();
+            string = ByteUtils.bytesToString(bytes);
+        }
+    }
+
+    @Benchmark
+    public byte[] longToBytes() {
+        return ByteUtils.longToBytes(longValue);
+    }
+
+    @Benchmark
+    public long bytesToLong() {
+        return ByteUtils.bytesToLong(longBytes);
+    }
+
+    @Benchmark
+    public byte[] integerToBytes() {
+        return ByteUtils.integerToBytes(intValue);
+    }
+
+    @Benchmark
+    public int bytesToInteger() {
+        return ByteUtils.bytesToInteger(intBytes);
+    }
+
+    @Benchmark
+    public byte[] shortToBytes() {
+        return ByteUtils.shortToBytes(shortValue);
+    }
+
+    @Benchmark
+    public short bytesToShort() {
+        return ByteUtils.bytesToShort(shortBytes);
+    }
+
+    @Benchmark
+    public byte[] stringToBytes(Payload payload) {
+        return ByteUtils.stringToBytes(payload.string);
+    }
+
+    @Benchmark
+    public String bytesToString(Payload payload) {
+        return ByteUtils.bytesToString(payload.bytes);
+    }
+
+    @Benchmark
+    public int getUtf8Length(Payload payload) {
+        return ByteUtils.getUtf8Length(payload.string);
+    }
+}
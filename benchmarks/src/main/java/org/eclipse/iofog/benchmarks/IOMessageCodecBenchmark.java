@@ -0,0 +1,83 @@
+/*
+ * *******************************************************************************
+ *   Copyright (c) 2018 Edgeworx, Inc.
+ *
+ *   This program and the accompanying materials are made available under the
+ *   terms of the Eclipse Public License v. 2.0 which is available at
+ *   http://www.eclipse.org/legal/epl-2.0
+ *
+ *   SPDX-License-Identifier: EPL-2.0
+ * *******************************************************************************
+ */
+
+package org.eclipse.iofog.benchmarks;
+
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.PooledByteBufAllocator;
+import io.netty.buffer.Unpooled;
+import org.eclipse.iofog.utils.IOMessageEncoder;
+import org.eclipse.iofog.utils.elements.IOMessage;
+import org.eclipse.iofog.utils.elements.IOMessageView;
+import org.openjdk.jmh.annotations.*;
+
+import javax.json.JsonObject;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Benchmarks of binary and JSON representations of IOMessage.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class IOMessageCodecBenchmark {
+
+    @Param({"100", "1024", "10240", "102400", "1048576", "10485760"})
+    private int payloadSize;
+
+    private IOMessage message;
+    private byte[] messageBytes;
+    private JsonObject messageJson;
+
+    @Setup
+    public void setUp() {
+        message = BenchmarkFixtures.getMessage(payloadSize);
+        messageBytes = message.toBytes();
+        messageJson = message.toJSON();
+    }
+
+    @Benchmark
+    public byte[] toBytes() {
+        return message.toBytes();
+    }
+
+    @Benchmark
+    public IOMessage fromBytes() {
+        return new IOMessage(messageBytes);
+    }
+
+    @Benchmark
+    public JsonObject toJSON() {
+        return message.toJSON();
+    }
+
+    @Benchmark
+    public IOMessage fromJSON() {
+        return new IOMessage(messageJson);
+    }
+
+    @Benchmark
+    public int encodeFrameToPooledBuffer() {
+        ByteBuf frame = IOMessageEncoder.encodeFrame(message, PooledByteBufAllocator.DEFAULT);
+        int size = frame.readableBytes();
+        frame.release();
+        return size;
+    }
+
+    @Benchmark
+    public String viewPublisher() {
+        return new IOMessageView(Unpooled.wrappedBuffer(messageBytes)).getPublisher();
+    }
+}
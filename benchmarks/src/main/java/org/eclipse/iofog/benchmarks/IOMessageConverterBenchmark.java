@@ -0,0 +1,57 @@
+/*
+ * *******************************************************************************
+ *   Copyright (c) 2018 Edgeworx, Inc.
+ *
+ *   This program and the accompanying materials are made available under the
+ *   terms of the Eclipse Public License v. 2.0 which is available at
+ *   http://www.eclipse.org/legal/epl-2.0
+ *
+ *   SPDX-License-Identifier: EPL-2.0
+ * *******************************************************************************
+ */
+
+package org.eclipse.iofog.benchmarks;
+
+import org.eclipse.iofog.utils.IOMessageConverter;
+import org.eclipse.iofog.utils.elements.IOMessage;
+import org.openjdk.jmh.annotations.*;
+import org.w3c.dom.Document;
+import org.w3c.dom.Node;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Benchmarks of conversion between IOMessage and its XML representation.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class IOMessageConverterBenchmark {
+
+    @Param({"100", "1024", "10240", "102400", "1048576", "10485760"})
+    private int payloadSize;
+
+    private IOMessage message;
+    private Node messageNode;
+    private Document document;
+
+    @Setup
+    public void setUp() {
+        message = BenchmarkFixtures.getMessage(payloadSize);
+        document = BenchmarkFixtures.getMessagesDocument();
+        messageNode = IOMessageConverter.getElementFromMessage(message, document);
+    }
+
+    @Benchmark
+    public IOMessage getMessageFromNode() {
+        return IOMessageConverter.getMessageFromNode(messageNode);
+    }
+
+    @Benchmark
+    public Node getElementFromMessage() {
+        return IOMessageConverter.getElementFromMessage(message, document);
+    }
+}
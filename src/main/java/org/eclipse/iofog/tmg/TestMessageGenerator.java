@@ -26,17 +26,42 @@ import io.netty.handler.ssl.SslContextBuilder;
 import io.netty.handler.ssl.util.SelfSignedCertificate;
 import io.netty.util.concurrent.DefaultEventExecutorGroup;
 import io.netty.util.concurrent.EventExecutorGroup;
+import org.eclipse.iofog.tmg.manager.TMGFilesWatcher;
+import org.eclipse.iofog.tmg.manager.TMGMessageManager;
+import org.eclipse.iofog.ws.manager.WebSocketManager;
 import org.eclipse.iofog.ws.manager.handler.TMGHandler;
+import org.eclipse.iofog.ws.manager.listener.TMGWSManagerListener;
 
 /**
  * TMG - Test Message Generator main class (executor).
  */
 public class TestMessageGenerator {
 
+    private static final String EXPORT_RECEIVED_COMMAND = "export-received";
+    private static final String COMPILE_CORPUS_COMMAND = "compile-corpus";
+
     public static void main(String[] args) throws Exception {
+        if (args.length > 0 && EXPORT_RECEIVED_COMMAND.equals(args[0])) {
+            System.out.println("Exported received messages: " + TMGMessageManager.exportReceivedMessages());
+            return;
+        }
+        if (args.length > 0 && COMPILE_CORPUS_COMMAND.equals(args[0])) {
+            System.out.println("Compiled messages: " + TMGMessageManager.compileMessageCorpus());
+            return;
+        }
+
+        Runtime.getRuntime().addShutdownHook(new Thread(TMGMessageManager::closeMessageStorage));
+        TMGFilesWatcher.start();
+
         EventLoopGroup bossGroup = new NioEventLoopGroup(1);
         EventLoopGroup workerGroup = new NioEventLoopGroup();
         EventExecutorGroup executor = new DefaultEventExecutorGroup(10);
+        WebSocketManager wsManager = new WebSocketManager(new TMGWSManagerListener(executor), TMGMessageManager.getMessageWindowSize(),
+                                                          TMGMessageManager.getMessageRetransmitTimeout(),
+                                                          TMGMessageManager.getMessageMaxRetransmits(),
+                                                          TMGMessageManager.getHeartbeatInterval());
+        wsManager.setControlCompression(TMGMessageManager.getControlCompressionLevel(), TMGMessageManager.getControlCompressionThreshold());
+        wsManager.setMessageCompression(TMGMessageManager.getMessageCompressionLevel(), TMGMessageManager.getMessageCompressionThreshold());
 
         final boolean SSL = Boolean.parseBoolean(System.getProperty("ssl"));
         final int PORT = 54321;
@@ -60,7 +85,7 @@ public class TestMessageGenerator {
                             }
                             pipeline.addLast(new HttpServerCodec());
                             pipeline.addLast(new HttpObjectAggregator(Integer.MAX_VALUE));
-                            pipeline.addLast(new TMGHandler(sslCtx != null , executor));
+                            pipeline.addLast(new TMGHandler(sslCtx != null , executor, wsManager));
                         }
                     });
             Channel ch = b.bind(PORT).sync().channel();
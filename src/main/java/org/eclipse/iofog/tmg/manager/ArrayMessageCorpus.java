@@ -0,0 +1,110 @@
+/*
+ * *******************************************************************************
+ *   Copyright (c) 2018 Edgeworx, Inc.
+ *
+ *   This program and the accompanying materials are made available under the
+ *   terms of the Eclipse Public License v. 2.0 which is available at
+ *   http://www.eclipse.org/legal/epl-2.0
+ *
+ *   SPDX-License-Identifier: EPL-2.0
+ * *******************************************************************************
+ */
+
+package org.eclipse.iofog.tmg.manager;
+
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.Unpooled;
+import io.netty.util.CharsetUtil;
+import org.eclipse.iofog.utils.IOMessageEncoder;
+import org.eclipse.iofog.utils.elements.IOMessage;
+import org.eclipse.iofog.utils.elements.IOMessageView;
+
+/**
+ * Corpus of IOMessages loaded from messages.xml.
+ * Every message is kept as its ready to send binary frame content and JSON representation,
+ * packed into read-only direct buffers, so sending doesn't need any parsing or encoding
+ * and corpus of millions of messages doesn't keep millions of objects on heap.
+ */
+class ArrayMessageCorpus implements MessageCorpus {
+
+    private final ChunkedBufferArray frames;
+    private final ChunkedBufferArray jsonMessages;
+
+    private ArrayMessageCorpus(ChunkedBufferArray frames, ChunkedBufferArray jsonMessages) {
+        this.frames = frames;
+        this.jsonMessages = jsonMessages;
+    }
+
+    @Override
+    public int size() {
+        return frames.size();
+    }
+
+    @Override
+    public IOMessage getMessage(int index) {
+        ByteBuf frame = frames.get(index);
+        return new IOMessageView(frame.skipBytes(IOMessageEncoder.FRAME_PREFIX_SIZE)).toMessage();
+    }
+
+    @Override
+    public ByteBuf getFrame(int index) {
+        return frames.get(index);
+    }
+
+    @Override
+    public void writeJson(int index, ByteBuf out) {
+        out.writeBytes(jsonMessages.get(index));
+    }
+
+    /**
+     * Method encodes message into binary frame content and JSON representation kept by corpus.
+     * Encoding doesn't depend on corpus, so messages can be encoded in parallel and added in order afterwards.
+     *
+     * @param message - IOMessage to be encoded
+     * @return EncodedMessage
+     */
+    static EncodedMessage encode(IOMessage message) {
+        byte[] frame = new byte[IOMessageEncoder.FRAME_PREFIX_SIZE + IOMessageEncoder.getEncodedSize(message)];
+        IOMessageEncoder.encodeFrame(message, Unpooled.wrappedBuffer(frame).writerIndex(0));
+        return new EncodedMessage(frame, message.toJSON().toString().getBytes(CharsetUtil.UTF_8));
+    }
+
+    /**
+     * Binary frame content and JSON representation of one message.
+     */
+    static class EncodedMessage {
+
+        private final byte[] frame;
+        private final byte[] json;
+
+        private EncodedMessage(byte[] frame, byte[] json) {
+            this.frame = frame;
+            this.json = json;
+        }
+    }
+
+    /**
+     * Builder of corpus collecting encoded messages in order they are added.
+     */
+    static class Builder {
+
+        private final ChunkedBufferArray frames = new ChunkedBufferArray();
+        private final ChunkedBufferArray jsonMessages = new ChunkedBufferArray();
+
+        Builder add(EncodedMessage message) {
+            frames.add(message.frame);
+            jsonMessages.add(message.json);
+            return this;
+        }
+
+        Builder add(IOMessage message) {
+            return add(encode(message));
+        }
+
+        MessageCorpus build() {
+            frames.freeze();
+            jsonMessages.freeze();
+            return new ArrayMessageCorpus(frames, jsonMessages);
+        }
+    }
+}
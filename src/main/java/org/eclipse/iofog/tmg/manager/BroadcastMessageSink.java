@@ -0,0 +1,84 @@
+/*
+ * *******************************************************************************
+ *   Copyright (c) 2018 Edgeworx, Inc.
+ *
+ *   This program and the accompanying materials are made available under the
+ *   terms of the Eclipse Public License v. 2.0 which is available at
+ *   http://www.eclipse.org/legal/epl-2.0
+ *
+ *   SPDX-License-Identifier: EPL-2.0
+ * *******************************************************************************
+ */
+
+package org.eclipse.iofog.tmg.manager;
+
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.ByteBufAllocator;
+import io.netty.buffer.PooledByteBufAllocator;
+import io.netty.util.concurrent.DefaultEventExecutorGroup;
+import io.netty.util.concurrent.EventExecutor;
+import org.eclipse.iofog.ws.manager.WebSocketManager;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Sink sending every data message to all open message sockets.
+ * Message is generated and encoded once, sockets get duplicates of the same frame, see
+ * {@link WebSocketManager#broadcastMessageFrames}. Sending is paced on a single executor shared by all containers.
+ */
+class BroadcastMessageSink implements MessageSink {
+
+    private static final EventExecutor mExecutor = new DefaultEventExecutorGroup(1, runnable -> {
+        Thread thread = new Thread(runnable, "tmg-broadcast");
+        thread.setDaemon(true);
+        return thread;
+    }).next();
+
+    private final WebSocketManager mWsManager;
+    private final List<ByteBuf> mFrames = new ArrayList<>();
+
+    BroadcastMessageSink(WebSocketManager pWsManager) {
+        mWsManager = pWsManager;
+    }
+
+    @Override
+    public EventExecutor executor() {
+        return mExecutor;
+    }
+
+    @Override
+    public ByteBufAllocator alloc() {
+        return PooledByteBufAllocator.DEFAULT;
+    }
+
+    /**
+     * Broadcast never waits for slow sockets, frames of a socket which isn't writable or has full in-flight window are dropped for it.
+     */
+    @Override
+    public boolean isWritable() {
+        return true;
+    }
+
+    @Override
+    public String getStats() {
+        return "message sockets " + mWsManager.getMessageSocketCount();
+    }
+
+    @Override
+    public synchronized void write(ByteBuf frame) {
+        mFrames.add(frame);
+    }
+
+    @Override
+    public synchronized void flush() {
+        try {
+            mWsManager.broadcastMessageFrames(mFrames);
+        } finally {
+            for (ByteBuf frame : mFrames) {
+                frame.release();
+            }
+            mFrames.clear();
+        }
+    }
+}
@@ -0,0 +1,63 @@
+/*
+ * *******************************************************************************
+ *   Copyright (c) 2018 Edgeworx, Inc.
+ *
+ *   This program and the accompanying materials are made available under the
+ *   terms of the Eclipse Public License v. 2.0 which is available at
+ *   http://www.eclipse.org/legal/epl-2.0
+ *
+ *   SPDX-License-Identifier: EPL-2.0
+ * *******************************************************************************
+ */
+
+package org.eclipse.iofog.tmg.manager;
+
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.ByteBufAllocator;
+import io.netty.channel.ChannelHandlerContext;
+import io.netty.util.concurrent.EventExecutor;
+import org.eclipse.iofog.ws.manager.WebSocketManager;
+
+/**
+ * Sink writing data messages to message socket of one ioContainer.
+ */
+class ChannelMessageSink implements MessageSink {
+
+    private final ChannelHandlerContext mCtx;
+    private final WebSocketManager mWsManager;
+
+    ChannelMessageSink(ChannelHandlerContext pCtx, WebSocketManager pWsManager) {
+        mCtx = pCtx;
+        mWsManager = pWsManager;
+    }
+
+    @Override
+    public EventExecutor executor() {
+        return mCtx.executor();
+    }
+
+    @Override
+    public ByteBufAllocator alloc() {
+        return mCtx.alloc();
+    }
+
+    @Override
+    public boolean isWritable() {
+        return mCtx.channel().isWritable() && mWsManager.hasMessageWindowRoom(mCtx);
+    }
+
+    @Override
+    public void write(ByteBuf frame) {
+        mWsManager.writeMessageFrame(mCtx, frame);
+    }
+
+    @Override
+    public void flush() {
+        mCtx.channel().flush();
+    }
+
+    @Override
+    public String getStats() {
+        return mWsManager.getMessageSocketStats(mCtx);
+    }
+}
@@ -0,0 +1,98 @@
+/*
+ * *******************************************************************************
+ *   Copyright (c) 2018 Edgeworx, Inc.
+ *
+ *   This program and the accompanying materials are made available under the
+ *   terms of the Eclipse Public License v. 2.0 which is available at
+ *   http://www.eclipse.org/legal/epl-2.0
+ *
+ *   SPDX-License-Identifier: EPL-2.0
+ * *******************************************************************************
+ */
+
+package org.eclipse.iofog.tmg.manager;
+
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.Unpooled;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Array of byte sequences packed one after another into large direct buffers (chunks).
+ * Every element is addressed by its chunk, offset and length kept in primitive arrays,
+ * so per-element overhead is 12 bytes regardless of number of elements.
+ */
+class ChunkedBufferArray {
+
+    private static final int CHUNK_SIZE = 16 * 1024 * 1024;
+
+    private final List<ByteBuf> chunks = new ArrayList<>();
+    private long[] positions = new long[1024];
+    private int[] lengths = new int[1024];
+    private int size;
+    private boolean readOnly;
+
+    /**
+     * Method appends copy of byte sequence to array.
+     *
+     * @param data - bytes to be added
+     * @return index of added element
+     */
+    int add(byte[] data) {
+        if (readOnly) {
+            throw new IllegalStateException("Array is read-only");
+        }
+        ByteBuf chunk = chunks.isEmpty() ? null : chunks.get(chunks.size() - 1);
+        if (chunk == null || chunk.writableBytes() < data.length) {
+            chunk = Unpooled.directBuffer(Math.max(CHUNK_SIZE, data.length), Math.max(CHUNK_SIZE, data.length));
+            chunks.add(chunk);
+        }
+        if (size == positions.length) {
+            positions = Arrays.copyOf(positions, size * 2);
+            lengths = Arrays.copyOf(lengths, size * 2);
+        }
+        positions[size] = (long) (chunks.size() - 1) << 32 | chunk.writerIndex();
+        lengths[size] = data.length;
+        chunk.writeBytes(data);
+        return size++;
+    }
+
+    /**
+     * Method makes array read-only: trims unused space of the last chunk and protects chunks from modification and release.
+     */
+    void freeze() {
+        int last = chunks.size() - 1;
+        if (last >= 0 && chunks.get(last).isWritable()) {
+            ByteBuf chunk = chunks.get(last);
+            chunks.set(last, Unpooled.directBuffer(chunk.readableBytes(), chunk.readableBytes()).writeBytes(chunk));
+            chunk.release();
+        }
+        for (int i = 0; i < chunks.size(); i++) {
+            chunks.set(i, Unpooled.unreleasableBuffer(Unpooled.unmodifiableBuffer(chunks.get(i))));
+        }
+        positions = Arrays.copyOf(positions, size);
+        lengths = Arrays.copyOf(lengths, size);
+        readOnly = true;
+    }
+
+    int size() {
+        return size;
+    }
+
+    /**
+     * Method returns element of array.
+     * Returned buffer is an independent slice which doesn't need to be released.
+     *
+     * @param index - index of element
+     * @return ByteBuf
+     */
+    ByteBuf get(int index) {
+        if (index < 0 || index >= size) {
+            throw new IndexOutOfBoundsException("Index: " + index + ", Size: " + size);
+        }
+        long position = positions[index];
+        return chunks.get((int) (position >>> 32)).slice((int) position, lengths[index]);
+    }
+}
@@ -0,0 +1,190 @@
+/*
+ * *******************************************************************************
+ *   Copyright (c) 2018 Edgeworx, Inc.
+ *
+ *   This program and the accompanying materials are made available under the
+ *   terms of the Eclipse Public License v. 2.0 which is available at
+ *   http://www.eclipse.org/legal/epl-2.0
+ *
+ *   SPDX-License-Identifier: EPL-2.0
+ * *******************************************************************************
+ */
+
+package org.eclipse.iofog.tmg.manager;
+
+import io.netty.buffer.ByteBuf;
+import io.netty.util.CharsetUtil;
+import org.eclipse.iofog.utils.elements.IOMessage;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.SplittableRandom;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Skeleton of content data (usually JSON) with placeholders replaced by random values for every message.
+ * Skeleton is parsed once into literal and field parts, rendering writes bytes directly and allocates nothing.
+ *
+ * Placeholders:
+ * <pre>
+ * ${int:MIN:MAX}      random integer within [MIN, MAX]
+ * ${double:MIN:MAX}   random number within [MIN, MAX] with two decimal places
+ * ${string:LENGTH}    random alphanumeric string
+ * ${choice:A|B|C}     one of listed values
+ * ${sequencenumber}   sequence number of message
+ * ${timestamp}        timestamp of message
+ * </pre>
+ */
+class ContentSkeleton {
+
+    private static final Pattern PLACEHOLDER = Pattern.compile("\\$\\{([a-z]+)(?::([^}]*))?}");
+
+    static final byte[] ALPHANUMERIC = "ABCDEFGHIJKLMNOPQRSTUVWXYZabcdefghijklmnopqrstuvwxyz0123456789".getBytes(CharsetUtil.US_ASCII);
+
+    private final Part[] parts;
+
+    private ContentSkeleton(Part[] parts) {
+        this.parts = parts;
+    }
+
+    /**
+     * Method parses skeleton text.
+     *
+     * @param skeleton - text with placeholders
+     * @return ContentSkeleton
+     * @throws IllegalArgumentException if placeholder is unknown or malformed
+     */
+    static ContentSkeleton parse(String skeleton) {
+        List<Part> parts = new ArrayList<>();
+        Matcher matcher = PLACEHOLDER.matcher(skeleton);
+        int literalStart = 0;
+        while (matcher.find()) {
+            if (matcher.start() > literalStart) {
+                parts.add(new Literal(skeleton.substring(literalStart, matcher.start())));
+            }
+            parts.add(parseField(matcher.group(1), matcher.group(2)));
+            literalStart = matcher.end();
+        }
+        if (literalStart < skeleton.length()) {
+            parts.add(new Literal(skeleton.substring(literalStart)));
+        }
+        return new ContentSkeleton(parts.toArray(new Part[parts.size()]));
+    }
+
+    /**
+     * Method creates skeleton of fixed content without placeholders.
+     *
+     * @param text - content
+     * @return ContentSkeleton
+     */
+    static ContentSkeleton literal(String text) {
+        return new ContentSkeleton(new Part[]{new Literal(text)});
+    }
+
+    /**
+     * Method writes content with random values of fields.
+     *
+     * @param message - message the content is generated for
+     * @param random - source of random values
+     * @param out - buffer to write to
+     */
+    void render(IOMessage message, SplittableRandom random, ByteBuf out) {
+        for (Part part : parts) {
+            part.write(message, random, out);
+        }
+    }
+
+    private static Part parseField(String type, String args) {
+        String[] values = args == null ? new String[0] : args.split(":");
+        try {
+            switch (type) {
+                case "int":
+                    long min = Long.parseLong(values[0].trim());
+                    long max = Long.parseLong(values[1].trim());
+                    checkRange(min, max);
+                    return (message, random, out) -> writeLong(out, min + random.nextLong(max - min + 1));
+                case "double":
+                    double dmin = Double.parseDouble(values[0].trim());
+                    double dmax = Double.parseDouble(values[1].trim());
+                    checkRange(dmin, dmax);
+                    return (message, random, out) -> writeDecimal(out, dmin + random.nextDouble() * (dmax - dmin));
+                case "string":
+                    int length = Integer.parseInt(values[0].trim());
+                    return (message, random, out) -> writeRandomString(out, random, length);
+                case "choice":
+                    String[] options = args.split("\\|");
+                    byte[][] choices = new byte[options.length][];
+                    for (int i = 0; i < options.length; i++) {
+                        choices[i] = options[i].getBytes(CharsetUtil.UTF_8);
+                    }
+                    return (message, random, out) -> out.writeBytes(choices[random.nextInt(choices.length)]);
+                case IOMessage.SEQUENCE_NUMBER_FIELD_NAME:
+                    return (message, random, out) -> writeLong(out, message.getSequenceNumber());
+                case IOMessage.TIMESTAMP_FIELD_NAME:
+                    return (message, random, out) -> writeLong(out, message.getTimestamp());
+                default:
+                    throw new IllegalArgumentException("Unknown placeholder ${" + type + "}");
+            }
+        } catch (ArrayIndexOutOfBoundsException | NullPointerException | NumberFormatException e) {
+            throw new IllegalArgumentException("Malformed placeholder ${" + type + (args == null ? "" : ":" + args) + "}");
+        }
+    }
+
+    private static void checkRange(double min, double max) {
+        if (min > max) {
+            throw new IllegalArgumentException("Minimum " + min + " is greater than maximum " + max);
+        }
+    }
+
+    static void writeRandomString(ByteBuf out, SplittableRandom random, int length) {
+        for (int i = 0; i < length; i++) {
+            out.writeByte(ALPHANUMERIC[random.nextInt(ALPHANUMERIC.length)]);
+        }
+    }
+
+    static void writeLong(ByteBuf out, long value) {
+        if (value < 0) {
+            out.writeByte('-');
+            value = -value;
+        }
+        long divisor = 1;
+        while (value / divisor >= 10) {
+            divisor *= 10;
+        }
+        for (; divisor > 0; divisor /= 10) {
+            out.writeByte((int) ('0' + value / divisor % 10));
+        }
+    }
+
+    private static void writeDecimal(ByteBuf out, double value) {
+        long hundredths = Math.round(value * 100);
+        if (hundredths < 0) {
+            out.writeByte('-');
+            hundredths = -hundredths;
+        }
+        writeLong(out, hundredths / 100);
+        out.writeByte('.');
+        out.writeByte((int) ('0' + hundredths / 10 % 10));
+        out.writeByte((int) ('0' + hundredths % 10));
+    }
+
+    private interface Part {
+
+        void write(IOMessage message, SplittableRandom random, ByteBuf out);
+    }
+
+    private static class Literal implements Part {
+
+        private final byte[] bytes;
+
+        Literal(String text) {
+            bytes = text.getBytes(CharsetUtil.UTF_8);
+        }
+
+        @Override
+        public void write(IOMessage message, SplittableRandom random, ByteBuf out) {
+            out.writeBytes(bytes);
+        }
+    }
+}
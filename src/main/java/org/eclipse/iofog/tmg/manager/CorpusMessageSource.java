@@ -0,0 +1,52 @@
+/*
+ * *******************************************************************************
+ *   Copyright (c) 2018 Edgeworx, Inc.
+ *
+ *   This program and the accompanying materials are made available under the
+ *   terms of the Eclipse Public License v. 2.0 which is available at
+ *   http://www.eclipse.org/legal/epl-2.0
+ *
+ *   SPDX-License-Identifier: EPL-2.0
+ * *******************************************************************************
+ */
+
+package org.eclipse.iofog.tmg.manager;
+
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.ByteBufAllocator;
+
+import java.util.function.Function;
+import java.util.function.Supplier;
+
+/**
+ * Source of random IOMessages from message corpus (messages.xml or messages.corpus).
+ * Corpus is looked up for every message, so a reloaded corpus is used as soon as it is published.
+ */
+class CorpusMessageSource implements MessageSource {
+
+    private final Supplier<MessageCorpus> corpus;
+
+    CorpusMessageSource(Supplier<MessageCorpus> corpus) {
+        this.corpus = corpus;
+    }
+
+    /**
+     * Method returns slice of corpus, nothing is allocated or copied.
+     */
+    @Override
+    public ByteBuf nextFrame(Object consumer, ByteBufAllocator alloc) {
+        return use(messageCorpus -> messageCorpus.getFrame(messageCorpus.getRandomIndex()));
+    }
+
+    @Override
+    public boolean writeNextJson(Object consumer, ByteBuf out) {
+        return use(messageCorpus -> {
+            messageCorpus.writeJson(messageCorpus.getRandomIndex(), out);
+            return true;
+        });
+    }
+
+    private <T> T use(Function<MessageCorpus, T> function) {
+        return UsageCounter.useCurrent(corpus, function);
+    }
+}
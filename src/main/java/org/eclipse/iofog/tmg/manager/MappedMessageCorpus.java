@@ -0,0 +1,271 @@
+/*
+ * *******************************************************************************
+ *   Copyright (c) 2018 Edgeworx, Inc.
+ *
+ *   This program and the accompanying materials are made available under the
+ *   terms of the Eclipse Public License v. 2.0 which is available at
+ *   http://www.eclipse.org/legal/epl-2.0
+ *
+ *   SPDX-License-Identifier: EPL-2.0
+ * *******************************************************************************
+ */
+
+package org.eclipse.iofog.tmg.manager;
+
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.UnpooledByteBufAllocator;
+import io.netty.buffer.UnpooledDirectByteBuf;
+import org.eclipse.iofog.utils.IOMessageEncoder;
+import org.eclipse.iofog.utils.IOMessageJsonWriter;
+import org.eclipse.iofog.utils.MappedBufferUtils;
+import org.eclipse.iofog.utils.elements.IOMessage;
+import org.eclipse.iofog.utils.elements.IOMessageView;
+import org.eclipse.iofog.ws.manager.WebSocketManager;
+
+import javax.xml.stream.XMLStreamException;
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.Arrays;
+
+/**
+ * Corpus of IOMessages mapped from binary file compiled from messages.xml.
+ * Opening the corpus doesn't parse anything, frames are sent as slices of the mapping.
+ * Every region is unmapped as soon as corpus is closed and all frames sliced from it are released,
+ * so replaced corpus doesn't keep its file mapped.
+ *
+ * Layout of file:
+ * <pre>
+ * header (32 bytes): magic int, format version short, reserved short, message count int,
+ *                    region size int, offset of offset table long, reserved long
+ * data: frames (OPCODE_MSG, length int, message in IOMessage.toBytes() layout), a frame never crosses
+ *       border of region, so every region can be mapped separately
+ * offset table: message count longs, offset of every frame from start of data
+ * </pre>
+ */
+class MappedMessageCorpus implements MessageCorpus {
+
+    static final int MAGIC = 0x544D4743;
+    static final short FORMAT_VERSION = 1;
+    static final int HEADER_SIZE = 32;
+    static final int REGION_SIZE = 1 << 30;
+
+    private static final int MAGIC_OFFSET = 0;
+    private static final int FORMAT_VERSION_OFFSET = 4;
+    private static final int COUNT_OFFSET = 8;
+    private static final int REGION_SIZE_OFFSET = 12;
+    private static final int OFFSET_TABLE_OFFSET = 16;
+
+    private final int count;
+    private final int regionSize;
+    private final ByteBuf offsets;
+    private final ByteBuf[] regions;
+    private final UsageCounter users = new UsageCounter(this::release);
+
+    private MappedMessageCorpus(int count, int regionSize, ByteBuf offsets, ByteBuf[] regions) {
+        this.count = count;
+        this.regionSize = regionSize;
+        this.offsets = offsets;
+        this.regions = regions;
+    }
+
+    /**
+     * Method maps compiled corpus file.
+     *
+     * @param file - compiled corpus
+     * @return MappedMessageCorpus
+     */
+    static MappedMessageCorpus open(File file) throws IOException {
+        // private (copy-on-write) mapping, because Netty wraps only writable buffers into releasable ones;
+        // corpus is never written, so pages stay shared with page cache
+        try (RandomAccessFile raf = new RandomAccessFile(file, "rw")) {
+            FileChannel channel = raf.getChannel();
+            if (channel.size() < HEADER_SIZE) {
+                throw new IOException("File is too short for compiled corpus");
+            }
+            if (raf.readInt() != MAGIC) {
+                throw new IOException("Not a compiled corpus");
+            }
+            short formatVersion = raf.readShort();
+            if (formatVersion != FORMAT_VERSION) {
+                throw new IOException("Unsupported format version " + formatVersion);
+            }
+            raf.readShort();
+            int count = raf.readInt();
+            int regionSize = raf.readInt();
+            long offsetTableOffset = raf.readLong();
+            if (count < 0 || regionSize <= 0 || offsetTableOffset < HEADER_SIZE
+                || offsetTableOffset + (long) count * Long.BYTES > channel.size()) {
+                throw new IOException("Corrupted header of compiled corpus");
+            }
+            long dataSize = offsetTableOffset - HEADER_SIZE;
+            ByteBuf[] regions = new ByteBuf[(int) ((dataSize + regionSize - 1) / regionSize)];
+            ByteBuf offsets = null;
+            try {
+                for (int i = 0; i < regions.length; i++) {
+                    long position = (long) i * regionSize;
+                    regions[i] = map(channel, HEADER_SIZE + position, (int) Math.min(regionSize, dataSize - position));
+                }
+                offsets = map(channel, offsetTableOffset, count * Long.BYTES);
+            } catch (IOException | RuntimeException e) {
+                for (ByteBuf region : regions) {
+                    if (region != null) {
+                        region.release();
+                    }
+                }
+                throw e;
+            }
+            return new MappedMessageCorpus(count, regionSize, offsets, regions);
+        }
+    }
+
+    /**
+     * Method compiles messages.xml into binary corpus file.
+     * File is written under temporary name and renamed when complete, so readers never see partial corpus.
+     *
+     * @param xmlFile - messages.xml
+     * @param file - compiled corpus to be (re)written
+     * @return number of compiled messages
+     */
+    static int compile(File xmlFile, File file) throws IOException, XMLStreamException {
+        return compile(xmlFile, file, REGION_SIZE);
+    }
+
+    static int compile(File xmlFile, File file, int regionSize) throws IOException, XMLStreamException {
+        long[][] offsets = {new long[1024]};
+        int[] count = {0};
+        long[] position = {0};
+        File tmpFile = new File(file.getPath() + ".tmp");
+        try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(tmpFile), 1024 * 1024))) {
+            out.write(new byte[HEADER_SIZE]);
+            MessageCorpusLoader.readMessages(xmlFile, message -> {
+                byte[] bytes = message.toBytes();
+                int frameSize = IOMessageEncoder.FRAME_PREFIX_SIZE + bytes.length;
+                if (frameSize > regionSize) {
+                    throw new IOException("Message of " + bytes.length + " bytes is too big for compiled corpus");
+                }
+                long regionRemaining = regionSize - position[0] % regionSize;
+                if (frameSize > regionRemaining) {
+                    byte[] padding = new byte[(int) Math.min(regionRemaining, 64 * 1024)];
+                    for (long written = 0; written < regionRemaining; written += padding.length) {
+                        out.write(padding, 0, (int) Math.min(padding.length, regionRemaining - written));
+                    }
+                    position[0] += regionRemaining;
+                }
+                if (count[0] == offsets[0].length) {
+                    offsets[0] = Arrays.copyOf(offsets[0], count[0] * 2);
+                }
+                offsets[0][count[0]++] = position[0];
+                out.writeByte(WebSocketManager.OPCODE_MSG);
+                out.writeInt(bytes.length);
+                out.write(bytes);
+                position[0] += frameSize;
+            });
+            for (int i = 0; i < count[0]; i++) {
+                out.writeLong(offsets[0][i]);
+            }
+        }
+        try (RandomAccessFile raf = new RandomAccessFile(tmpFile, "rw")) {
+            raf.writeInt(MAGIC);
+            raf.writeShort(FORMAT_VERSION);
+            raf.writeShort(0);
+            raf.writeInt(count[0]);
+            raf.writeInt(regionSize);
+            raf.writeLong(HEADER_SIZE + position[0]);
+        }
+        Files.move(tmpFile.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        return count[0];
+    }
+
+    @Override
+    public int size() {
+        return count;
+    }
+
+    @Override
+    public IOMessage getMessage(int index) {
+        ByteBuf frame = getFrame(index);
+        try {
+            return new IOMessageView(frame.skipBytes(IOMessageEncoder.FRAME_PREFIX_SIZE)).toMessage();
+        } finally {
+            frame.release();
+        }
+    }
+
+    /**
+     * Method returns slice of mapped region holding a reference to the region, which stays mapped until the slice is released.
+     *
+     * @throws IllegalStateException if corpus is closed
+     */
+    @Override
+    public ByteBuf getFrame(int index) {
+        if (index < 0 || index >= count) {
+            throw new IndexOutOfBoundsException("Index: " + index + ", Size: " + count);
+        }
+        if (!users.acquire()) {
+            throw new IllegalStateException("Message corpus is closed");
+        }
+        try {
+            long offset = offsets.getLong(index * Long.BYTES);
+            ByteBuf region = regions[(int) (offset / regionSize)];
+            int position = (int) (offset % regionSize);
+            return region.slice(position, IOMessageEncoder.FRAME_PREFIX_SIZE + region.getInt(position + 1)).retain();
+        } finally {
+            users.release();
+        }
+    }
+
+    /**
+     * Method writes JSON representation of message, which is generated from its binary form.
+     */
+    @Override
+    public void writeJson(int index, ByteBuf out) {
+        IOMessageJsonWriter.writeMessage(out, getMessage(index));
+    }
+
+    /**
+     * Method releases regions of corpus, which are unmapped once frames still being sent are released.
+     * Frames can't be taken from closed corpus.
+     */
+    @Override
+    public void close() {
+        users.close();
+    }
+
+    private void release() {
+        offsets.release();
+        for (ByteBuf region : regions) {
+            region.release();
+        }
+    }
+
+    private static ByteBuf map(FileChannel channel, long position, int size) throws IOException {
+        return new MappedRegion(channel.map(FileChannel.MapMode.PRIVATE, position, size));
+    }
+
+    /**
+     * Buffer of mapped region, unmapped when its last reference is released.
+     */
+    private static class MappedRegion extends UnpooledDirectByteBuf {
+
+        private final MappedByteBuffer mapped;
+
+        MappedRegion(MappedByteBuffer mapped) {
+            super(UnpooledByteBufAllocator.DEFAULT, mapped, mapped.capacity());
+            this.mapped = mapped;
+        }
+
+        @Override
+        protected void deallocate() {
+            super.deallocate();
+            MappedBufferUtils.unmap(mapped);
+        }
+    }
+}
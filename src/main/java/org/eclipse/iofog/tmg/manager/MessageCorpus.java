@@ -0,0 +1,104 @@
+/*
+ * *******************************************************************************
+ *   Copyright (c) 2018 Edgeworx, Inc.
+ *
+ *   This program and the accompanying materials are made available under the
+ *   terms of the Eclipse Public License v. 2.0 which is available at
+ *   http://www.eclipse.org/legal/epl-2.0
+ *
+ *   SPDX-License-Identifier: EPL-2.0
+ * *******************************************************************************
+ */
+
+package org.eclipse.iofog.tmg.manager;
+
+import io.netty.buffer.ByteBuf;
+import org.eclipse.iofog.utils.elements.IOMessage;
+
+import java.util.AbstractList;
+import java.util.List;
+import java.util.RandomAccess;
+import java.util.concurrent.ThreadLocalRandom;
+
+/**
+ * Immutable corpus of IOMessages sent by Test Message Generator.
+ * Messages are addressed by index, so random and indexed access are O(1).
+ */
+public interface MessageCorpus {
+
+    /**
+     * Method returns number of messages in corpus.
+     *
+     * @return int
+     */
+    int size();
+
+    /**
+     * Method decodes message from its binary form.
+     *
+     * @param index - index of message in corpus
+     * @return IOMessage
+     */
+    IOMessage getMessage(int index);
+
+    /**
+     * Method returns binary frame content (OPCODE_MSG, length and message) of message.
+     * Returned buffer is an independent slice of corpus, its ownership is passed to the caller.
+     *
+     * @param index - index of message in corpus
+     * @return ByteBuf
+     */
+    ByteBuf getFrame(int index);
+
+    /**
+     * Method writes JSON representation of message.
+     *
+     * @param index - index of message in corpus
+     * @param out - buffer to write to
+     */
+    void writeJson(int index, ByteBuf out);
+
+    /**
+     * Method returns random index of message in corpus.
+     *
+     * @return int
+     */
+    default int getRandomIndex() {
+        return ThreadLocalRandom.current().nextInt(size());
+    }
+
+    /**
+     * Method releases resources of corpus which is no longer published.
+     * Frames returned before stay valid until they are released.
+     */
+    default void close() {
+    }
+
+    /**
+     * Method returns read-only list of all messages, which are decoded on access.
+     *
+     * @return List<IOMessage>
+     */
+    default List<IOMessage> getMessages() {
+        return new MessageList(this);
+    }
+
+    class MessageList extends AbstractList<IOMessage> implements RandomAccess {
+
+        private final MessageCorpus corpus;
+
+        private MessageList(MessageCorpus corpus) {
+            this.corpus = corpus;
+        }
+
+        @Override
+        public IOMessage get(int index) {
+            return corpus.getMessage(index);
+        }
+
+        @Override
+        public int size() {
+            return corpus.size();
+        }
+    }
+}
@@ -0,0 +1,159 @@
+/*
+ * *******************************************************************************
+ *   Copyright (c) 2018 Edgeworx, Inc.
+ *
+ *   This program and the accompanying materials are made available under the
+ *   terms of the Eclipse Public License v. 2.0 which is available at
+ *   http://www.eclipse.org/legal/epl-2.0
+ *
+ *   SPDX-License-Identifier: EPL-2.0
+ * *******************************************************************************
+ */
+
+package org.eclipse.iofog.tmg.manager;
+
+import org.eclipse.iofog.utils.IOMessageConverter;
+import org.eclipse.iofog.utils.elements.IOMessage;
+
+import javax.xml.stream.XMLInputFactory;
+import javax.xml.stream.XMLStreamConstants;
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamReader;
+import java.io.BufferedInputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.logging.Logger;
+
+/**
+ * Loader of message corpus streaming iomessage elements of messages.xml with StAX.
+ * Only a bounded number of messages is kept in memory besides the corpus itself, so files with
+ * millions of messages can be loaded. Encoding of messages can be spread over several threads,
+ * reading the file and adding to corpus stay sequential and keep order of messages.
+ */
+class MessageCorpusLoader {
+
+    private static final Logger log = Logger.getLogger(MessageCorpusLoader.class.getName());
+
+    private static final int BATCH_SIZE = 1024;
+
+    private static final XMLInputFactory inputFactory = XMLInputFactory.newInstance();
+
+    static {
+        inputFactory.setProperty(XMLInputFactory.IS_SUPPORTING_EXTERNAL_ENTITIES, false);
+        inputFactory.setProperty(XMLInputFactory.SUPPORT_DTD, false);
+    }
+
+    /**
+     * Method loads corpus from messages file.
+     * In case of error messages read before it are kept in corpus.
+     *
+     * @param file - messages.xml
+     * @param threads - number of threads encoding messages, 1 encodes them in the loading thread
+     * @return MessageCorpus
+     */
+    static MessageCorpus load(File file, int threads) {
+        ArrayMessageCorpus.Builder builder = new ArrayMessageCorpus.Builder();
+        ExecutorService executor = threads > 1 ? Executors.newFixedThreadPool(threads) : null;
+        ArrayDeque<Future<List<ArrayMessageCorpus.EncodedMessage>>> pending = new ArrayDeque<>();
+        List<IOMessage> batch = new ArrayList<>(BATCH_SIZE);
+        try {
+            readMessages(file, message -> {
+                batch.add(message);
+                if (batch.size() == BATCH_SIZE) {
+                    submit(builder, executor, pending, new ArrayList<>(batch), threads);
+                    batch.clear();
+                }
+            });
+        } catch (IOException e) {
+            log.warning("Can't read messages file " + file + ". Messages read before error are kept. " + e.getMessage());
+        } catch (XMLStreamException | NumberFormatException e) {
+            log.warning("Error parsing messages file " + file + ". Messages read before error are kept, the rest of file is skipped. "
+                        + e.getMessage());
+        } finally {
+            try {
+                // the last, partly filled batch is added also when reading stopped on error
+                submit(builder, executor, pending, batch, 0);
+            } finally {
+                if (executor != null) {
+                    executor.shutdownNow();
+                }
+            }
+        }
+        return builder.build();
+    }
+
+    /**
+     * Method streams all IOMessages of messages file to handler in order they appear in file.
+     *
+     * @param file - messages.xml
+     * @param handler - handler of messages
+     */
+    static void readMessages(File file, MessageHandler handler) throws IOException, XMLStreamException {
+        try (InputStream in = new BufferedInputStream(new FileInputStream(file))) {
+            XMLStreamReader reader = inputFactory.createXMLStreamReader(in);
+            while (reader.hasNext()) {
+                if (reader.next() == XMLStreamConstants.START_ELEMENT
+                    && TMGMessageManager.IO_MESSAGE_TAG_NAME.equals(reader.getLocalName())) {
+                    handler.handle(IOMessageConverter.readMessage(reader));
+                }
+            }
+            reader.close();
+        }
+    }
+
+    /**
+     * Handler of IOMessages read from messages file.
+     */
+    interface MessageHandler {
+
+        void handle(IOMessage message) throws IOException;
+    }
+
+    /**
+     * Method encodes batch of messages, in executor if there is one, and adds encoded batches to corpus
+     * as soon as there are more than given number of them pending.
+     */
+    private static void submit(ArrayMessageCorpus.Builder builder, ExecutorService executor,
+                               ArrayDeque<Future<List<ArrayMessageCorpus.EncodedMessage>>> pending,
+                               List<IOMessage> batch, int maxPending) {
+        if (executor == null) {
+            for (IOMessage message : batch) {
+                builder.add(message);
+            }
+            return;
+        }
+        pending.addLast(executor.submit(() -> {
+            List<ArrayMessageCorpus.EncodedMessage> encoded = new ArrayList<>(batch.size());
+            for (IOMessage message : batch) {
+                encoded.add(ArrayMessageCorpus.encode(message));
+            }
+            return encoded;
+        }));
+        awaitPending(builder, pending, maxPending);
+    }
+
+    private static void awaitPending(ArrayMessageCorpus.Builder builder,
+                                     ArrayDeque<Future<List<ArrayMessageCorpus.EncodedMessage>>> pending, int maxPending) {
+        while (pending.size() > maxPending) {
+            try {
+                for (ArrayMessageCorpus.EncodedMessage message : pending.removeFirst().get()) {
+                    builder.add(message);
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return;
+            } catch (ExecutionException e) {
+                log.warning("Error encoding messages. " + e.getCause());
+            }
+        }
+    }
+}
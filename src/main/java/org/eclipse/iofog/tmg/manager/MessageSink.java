@@ -0,0 +1,56 @@
+/*
+ * *******************************************************************************
+ *   Copyright (c) 2018 Edgeworx, Inc.
+ *
+ *   This program and the accompanying materials are made available under the
+ *   terms of the Eclipse Public License v. 2.0 which is available at
+ *   http://www.eclipse.org/legal/epl-2.0
+ *
+ *   SPDX-License-Identifier: EPL-2.0
+ * *******************************************************************************
+ */
+
+package org.eclipse.iofog.tmg.manager;
+
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.ByteBufAllocator;
+import io.netty.util.concurrent.EventExecutor;
+
+/**
+ * Destination of data messages: message socket of one ioContainer or all message sockets at once.
+ * Frames are written in batches and flushed once per batch.
+ */
+interface MessageSink {
+
+    /**
+     * @return executor which paced sending runs on
+     */
+    EventExecutor executor();
+
+    /**
+     * @return allocator of frames written to the sink
+     */
+    ByteBufAllocator alloc();
+
+    /**
+     * @return false if the sink can't take more frames for now (channel isn't writable or in-flight window is full)
+     */
+    boolean isWritable();
+
+    /**
+     * Method writes encoded message frame content without flushing it. Ownership of the buffer is taken.
+     *
+     * @param frame - encoded frame content (OPCODE_MSG, length and message)
+     */
+    void write(ByteBuf frame);
+
+    /**
+     * Method flushes frames written since previous flush.
+     */
+    void flush();
+
+    /**
+     * @return state of delivery reported along with achieved rate, such as in-flight window of the socket
+     */
+    String getStats();
+}
@@ -0,0 +1,72 @@
+/*
+ * *******************************************************************************
+ *   Copyright (c) 2018 Edgeworx, Inc.
+ *
+ *   This program and the accompanying materials are made available under the
+ *   terms of the Eclipse Public License v. 2.0 which is available at
+ *   http://www.eclipse.org/legal/epl-2.0
+ *
+ *   SPDX-License-Identifier: EPL-2.0
+ * *******************************************************************************
+ */
+
+package org.eclipse.iofog.tmg.manager;
+
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.ByteBufAllocator;
+
+/**
+ * Source of IOMessages sent by Test Message Generator to ioContainer.
+ * Implementations are called concurrently by senders of all containers. Every call names its consumer
+ * (data schedule of a container, broadcast or REST API): sources replaying timed traffic keep separate position
+ * and timeline for every consumer, other sources ignore it.
+ */
+public interface MessageSource {
+
+    /**
+     * Method returns ready to send binary frame content (OPCODE_MSG, length and message) of next message.
+     * Ownership of returned buffer is passed to the caller.
+     * Method never waits: if source hasn't got next message ready yet (e.g. it is still read from disk),
+     * it returns null and the caller tries again later.
+     *
+     * @param consumer - consumer of message
+     * @param alloc - allocator used if frame has to be built
+     * @return ByteBuf or null if no message is ready yet
+     */
+    ByteBuf nextFrame(Object consumer, ByteBufAllocator alloc);
+
+    /**
+     * Method writes JSON representation of next message. Like {@link #nextFrame(Object, ByteBufAllocator)}, it never waits.
+     *
+     * @param consumer - consumer of message
+     * @param out - buffer to write to
+     * @return false if no message is ready yet and nothing was written
+     */
+    boolean writeNextJson(Object consumer, ByteBuf out);
+
+    /**
+     * Method returns time in nanoseconds until next message is due, or a negative value if source doesn't define
+     * timing of messages and they are sent at data message interval of config.xml.
+     * If next message isn't ready yet, method returns a short delay after which the caller tries again.
+     *
+     * @param consumer - consumer of message
+     * @return long
+     */
+    default long getNextMessageDelay(Object consumer) {
+        return -1;
+    }
+
+    /**
+     * Method releases state kept for consumer which no longer takes messages.
+     *
+     * @param consumer - consumer of messages
+     */
+    default void release(Object consumer) {
+    }
+
+    /**
+     * Method releases resources of source which is no longer used.
+     */
+    default void close() {
+    }
+}
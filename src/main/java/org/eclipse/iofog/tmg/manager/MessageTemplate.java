@@ -0,0 +1,256 @@
+/*
+ * *******************************************************************************
+ *   Copyright (c) 2018 Edgeworx, Inc.
+ *
+ *   This program and the accompanying materials are made available under the
+ *   terms of the Eclipse Public License v. 2.0 which is available at
+ *   http://www.eclipse.org/legal/epl-2.0
+ *
+ *   SPDX-License-Identifier: EPL-2.0
+ * *******************************************************************************
+ */
+
+package org.eclipse.iofog.tmg.manager;
+
+import io.netty.buffer.ByteBuf;
+import org.eclipse.iofog.utils.IOMessageConverter;
+import org.eclipse.iofog.utils.elements.IOMessage;
+import org.w3c.dom.Element;
+import org.w3c.dom.Node;
+import org.w3c.dom.NodeList;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.SplittableRandom;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Template of generated IOMessages read from messagetemplates.xml.
+ * Elements named after IOMessage fields are copied to every message, besides them template defines:
+ * <pre>
+ * &lt;tag&gt;, &lt;groupid&gt;   may be repeated, one of values is chosen for every message
+ * &lt;timestampoffset&gt;     milliseconds added to current time for timestamp
+ * &lt;contentsize&gt;         size distribution of random content: attributes distribution (fixed, uniform, normal
+ *                       or exponential), min, max, mean and stddev
+ * &lt;contentskeleton&gt;     content with placeholders, see {@link ContentSkeleton}; contentdata is used as fixed content
+ * &lt;weight&gt;              relative frequency of template
+ * </pre>
+ * Id, sequence number (counted per publisher) and timestamp are generated.
+ */
+class MessageTemplate {
+
+    static final String TEMPLATE_TAG_NAME = "template";
+
+    private static final String TIMESTAMP_OFFSET_TAG_NAME = "timestampoffset";
+    private static final String CONTENT_SIZE_TAG_NAME = "contentsize";
+    private static final String CONTENT_SKELETON_TAG_NAME = "contentskeleton";
+    private static final String WEIGHT_TAG_NAME = "weight";
+
+    private final Map<String, String> properties;
+    private final String[] tags;
+    private final String[] groupIds;
+    private final AtomicInteger sequence;
+    private final long timestampOffset;
+    private final ContentSize contentSize;
+    private final ContentSkeleton skeleton;
+    private final int weight;
+
+    private MessageTemplate(Map<String, String> properties, String[] tags, String[] groupIds, AtomicInteger sequence,
+                            long timestampOffset, ContentSize contentSize, ContentSkeleton skeleton, int weight) {
+        this.properties = properties;
+        this.tags = tags;
+        this.groupIds = groupIds;
+        this.sequence = sequence;
+        this.timestampOffset = timestampOffset;
+        this.contentSize = contentSize;
+        this.skeleton = skeleton;
+        this.weight = weight;
+    }
+
+    /**
+     * Method parses template element.
+     *
+     * @param template - template element
+     * @param sequences - sequence counters of publishers shared by all templates
+     * @return MessageTemplate
+     * @throws IllegalArgumentException if template is invalid
+     */
+    static MessageTemplate parse(Element template, Map<String, AtomicInteger> sequences) {
+        Map<String, String> properties = new LinkedHashMap<>();
+        List<String> tags = new ArrayList<>();
+        List<String> groupIds = new ArrayList<>();
+        long timestampOffset = 0;
+        ContentSize contentSize = null;
+        ContentSkeleton skeleton = null;
+        int weight = 1;
+        NodeList children = template.getChildNodes();
+        for (int i = 0; i < children.getLength(); i++) {
+            Node child = children.item(i);
+            if (child.getNodeType() != Node.ELEMENT_NODE) {
+                continue;
+            }
+            String name = child.getNodeName();
+            String value = child.getTextContent().trim();
+            switch (name) {
+                case IOMessage.TAG_FIELD_NAME:
+                    tags.add(value);
+                    break;
+                case IOMessage.GROUP_ID_FIELD_NAME:
+                    groupIds.add(value);
+                    break;
+                case TIMESTAMP_OFFSET_TAG_NAME:
+                    timestampOffset = Long.parseLong(value);
+                    break;
+                case CONTENT_SIZE_TAG_NAME:
+                    contentSize = ContentSize.parse((Element) child);
+                    break;
+                case CONTENT_SKELETON_TAG_NAME:
+                    skeleton = ContentSkeleton.parse(child.getTextContent());
+                    break;
+                case IOMessage.CONTENT_DATA_FIELD_NAME:
+                    skeleton = ContentSkeleton.literal(child.getTextContent());
+                    break;
+                case WEIGHT_TAG_NAME:
+                    weight = Integer.parseInt(value);
+                    break;
+                case IOMessage.ID_FIELD_NAME:
+                case IOMessage.SEQUENCE_NUMBER_FIELD_NAME:
+                case IOMessage.TIMESTAMP_FIELD_NAME:
+                    break;
+                default:
+                    properties.put(name, value);
+            }
+        }
+        if (weight <= 0) {
+            throw new IllegalArgumentException("Weight of template must be positive");
+        }
+        if (skeleton == null && contentSize == null) {
+            contentSize = ContentSize.fixed(0);
+        }
+        String publisher = properties.getOrDefault(IOMessage.PUBLISHER_FIELD_NAME, "");
+        return new MessageTemplate(properties, toArray(tags), toArray(groupIds), sequences.computeIfAbsent(publisher, p -> new AtomicInteger()),
+                                   timestampOffset, contentSize, skeleton, weight);
+    }
+
+    /**
+     * Method creates IOMessage with fixed fields of template, which is reused by {@link #prepare}
+     *
+     * @param idPlaceholder - id which is replaced by generated one after message is encoded
+     * @return IOMessage
+     */
+    IOMessage newMessage(String idPlaceholder) {
+        IOMessage message = new IOMessage();
+        for (Map.Entry<String, String> property : properties.entrySet()) {
+            IOMessageConverter.setMessageProperty(message, property.getKey(), property.getValue());
+        }
+        message.setId(idPlaceholder);
+        message.setTag(tags[0]);
+        message.setGroupId(groupIds[0]);
+        return message;
+    }
+
+    /**
+     * Method fills generated fields of message and returns length of its content.
+     * Content generated from skeleton is written to content buffer, random content should be taken from payload pool.
+     *
+     * @param message - message created by {@link #newMessage}
+     * @param random - source of random values
+     * @param content - buffer for content generated from skeleton
+     * @return length of content
+     */
+    int prepare(IOMessage message, SplittableRandom random, ByteBuf content) {
+        message.setSequenceNumber(sequence.incrementAndGet() & Integer.MAX_VALUE);
+        message.setTimestamp(System.currentTimeMillis() + timestampOffset);
+        if (tags.length > 1) {
+            message.setTag(tags[random.nextInt(tags.length)]);
+        }
+        if (groupIds.length > 1) {
+            message.setGroupId(groupIds[random.nextInt(groupIds.length)]);
+        }
+        if (skeleton != null) {
+            int start = content.writerIndex();
+            skeleton.render(message, random, content);
+            return content.writerIndex() - start;
+        }
+        return contentSize.sample(random);
+    }
+
+    boolean hasSkeleton() {
+        return skeleton != null;
+    }
+
+    int getMaxContentSize() {
+        return contentSize == null ? 0 : contentSize.max;
+    }
+
+    int getWeight() {
+        return weight;
+    }
+
+    private static String[] toArray(List<String> values) {
+        return values.isEmpty() ? new String[]{""} : values.toArray(new String[values.size()]);
+    }
+
+    /**
+     * Size distribution of random content.
+     */
+    private static class ContentSize {
+
+        private final String distribution;
+        private final int min;
+        private final int max;
+        private final double mean;
+        private final double stddev;
+
+        private ContentSize(String distribution, int min, int max, double mean, double stddev) {
+            this.distribution = distribution;
+            this.min = min;
+            this.max = max;
+            this.mean = mean;
+            this.stddev = stddev;
+        }
+
+        static ContentSize fixed(int size) {
+            return new ContentSize("fixed", size, size, size, 0);
+        }
+
+        static ContentSize parse(Element element) {
+            String distribution = element.hasAttribute("distribution") ? element.getAttribute("distribution") : "uniform";
+            int min = Integer.parseInt(element.getAttribute("min"));
+            int max = element.hasAttribute("max") ? Integer.parseInt(element.getAttribute("max")) : min;
+            double mean = element.hasAttribute("mean") ? Double.parseDouble(element.getAttribute("mean")) : (min + max) / 2.0;
+            double stddev = element.hasAttribute("stddev") ? Double.parseDouble(element.getAttribute("stddev")) : (max - min) / 6.0;
+            if (min < 0 || min > max) {
+                throw new IllegalArgumentException("Invalid content size range [" + min + ", " + max + "]");
+            }
+            switch (distribution) {
+                case "fixed":
+                case "uniform":
+                case "normal":
+                case "exponential":
+                    return new ContentSize(distribution, min, max, mean, stddev);
+                default:
+                    throw new IllegalArgumentException("Unknown content size distribution " + distribution);
+            }
+        }
+
+        int sample(SplittableRandom random) {
+            double size;
+            switch (distribution) {
+                case "fixed":
+                    return min;
+                case "uniform":
+                    return min + random.nextInt(max - min + 1);
+                case "normal":
+                    // Box-Muller transform
+                    size = mean + stddev * Math.sqrt(-2 * Math.log(1 - random.nextDouble())) * Math.cos(2 * Math.PI * random.nextDouble());
+                    break;
+                default:
+                    size = -mean * Math.log(1 - random.nextDouble());
+            }
+            return (int) Math.max(min, Math.min(max, Math.round(size)));
+        }
+    }
+}
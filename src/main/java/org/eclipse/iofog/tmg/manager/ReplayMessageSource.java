@@ -0,0 +1,340 @@
+/*
+ * *******************************************************************************
+ *   Copyright (c) 2018 Edgeworx, Inc.
+ *
+ *   This program and the accompanying materials are made available under the
+ *   terms of the Eclipse Public License v. 2.0 which is available at
+ *   http://www.eclipse.org/legal/epl-2.0
+ *
+ *   SPDX-License-Identifier: EPL-2.0
+ * *******************************************************************************
+ */
+
+package org.eclipse.iofog.tmg.manager;
+
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.ByteBufAllocator;
+import io.netty.buffer.PooledByteBufAllocator;
+import org.eclipse.iofog.tmg.storage.MessageJournal;
+import org.eclipse.iofog.utils.IOMessageEncoder;
+import org.eclipse.iofog.utils.IOMessageJsonWriter;
+import org.eclipse.iofog.utils.elements.IOMessage;
+import org.eclipse.iofog.utils.elements.IOMessageView;
+
+import javax.json.Json;
+import javax.json.JsonException;
+import javax.json.JsonReader;
+import javax.xml.stream.XMLStreamException;
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.StringReader;
+import java.nio.charset.StandardCharsets;
+import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+import java.util.logging.Logger;
+
+/**
+ * Source replaying captured traffic: receivedmessages.xml, message log (.log) or message journal (.journal).
+ * Messages are sent in captured order with gaps between their timestamps divided by speed multiplier,
+ * speed 0 sends them as fast as possible. Replay starts over when the capture ends.
+ * Every consumer (data schedule of a container, broadcast or REST API) replays the capture from its own cursor
+ * with its own timeline, so each of them gets all captured messages with their captured gaps.
+ * Capture is streamed from disk by a reader thread of the cursor, which keeps a bounded number of encoded frames ready.
+ * Senders never wait for the reader: while no frame is ready, source reports it and senders retry shortly.
+ */
+class ReplayMessageSource implements MessageSource {
+
+    private static final Logger log = Logger.getLogger(ReplayMessageSource.class.getName());
+
+    private static final String XML_EXTENSION = ".xml";
+    private static final String LOG_EXTENSION = ".log";
+    private static final String JOURNAL_EXTENSION = ".journal";
+
+    /**
+     * Entry of queue marking end of capture, timeline of replay restarts after it.
+     */
+    private static final ReplayFrame END_OF_CAPTURE = new ReplayFrame(null, 0);
+
+    private static final long NOT_READY_RETRY_NANOS = TimeUnit.MILLISECONDS.toNanos(1);
+
+    private final String name;
+    private final Capture capture;
+    private final double speed;
+    private final int readAhead;
+    private final Map<Object, ReplayCursor> cursors = new ConcurrentHashMap<>();
+
+    private ReplayMessageSource(String name, Capture capture, double speed, int readAhead) {
+        this.name = name;
+        this.capture = capture;
+        this.speed = speed;
+        this.readAhead = readAhead;
+    }
+
+    /**
+     * Method prepares replay of capture file. Capture is read once a consumer asks for its first message.
+     *
+     * @param folder - folder of capture
+     * @param filename - name of receivedmessages.xml like file, message log (.log) or message journal (name.journal)
+     * @param speed - speed multiplier, 0 means as fast as possible
+     * @param readAhead - number of frames read ahead by every consumer
+     * @return ReplayMessageSource or null if capture doesn't exist
+     */
+    static ReplayMessageSource create(File folder, String filename, double speed, int readAhead) {
+        Capture capture;
+        if (filename.endsWith(JOURNAL_EXTENSION)) {
+            MessageJournal journal = new MessageJournal(folder, filename.substring(0, filename.length() - JOURNAL_EXTENSION.length()));
+            if (journal.getSegmentFiles().isEmpty()) {
+                return null;
+            }
+            capture = consumer -> journal.forEach(message -> consumer.accept(message.toMessage()));
+        } else {
+            File file = new File(folder, filename);
+            if (!file.isFile()) {
+                return null;
+            }
+            if (filename.endsWith(LOG_EXTENSION)) {
+                capture = consumer -> readLog(file, consumer);
+            } else {
+                if (!filename.endsWith(XML_EXTENSION)) {
+                    log.info("Unknown format of replay capture " + filename + ". Reading it as XML.");
+                }
+                capture = consumer -> MessageCorpusLoader.readMessages(file, consumer::accept);
+            }
+        }
+        return new ReplayMessageSource(filename, capture, speed, Math.max(1, readAhead));
+    }
+
+    @Override
+    public ByteBuf nextFrame(Object consumer, ByteBufAllocator alloc) {
+        return cursor(consumer).nextFrame();
+    }
+
+    /**
+     * Method returns time left until intended send time of next message of consumer.
+     * Intended time is counted from the first message of replay, so delays of senders don't accumulate.
+     * If reader hasn't read next message yet, method returns a short retry delay instead of waiting for it.
+     */
+    @Override
+    public long getNextMessageDelay(Object consumer) {
+        return cursor(consumer).getNextMessageDelay();
+    }
+
+    /**
+     * Method writes JSON of next message of consumer without waiting for its send time.
+     */
+    @Override
+    public boolean writeNextJson(Object consumer, ByteBuf out) {
+        ByteBuf frame = nextFrame(consumer, out.alloc());
+        if (frame == null) {
+            return false;
+        }
+        try {
+            IOMessageJsonWriter.writeMessage(out, new IOMessageView(frame.skipBytes(IOMessageEncoder.FRAME_PREFIX_SIZE)).toMessage());
+        } finally {
+            frame.release();
+        }
+        return true;
+    }
+
+    /**
+     * Method stops cursor of consumer, its next message starts replay from the beginning.
+     */
+    @Override
+    public void release(Object consumer) {
+        ReplayCursor cursor = cursors.remove(consumer);
+        if (cursor != null) {
+            cursor.close();
+        }
+    }
+
+    /**
+     * Method stops cursors of all consumers.
+     */
+    @Override
+    public void close() {
+        cursors.keySet().forEach(this::release);
+    }
+
+    private ReplayCursor cursor(Object consumer) {
+        return cursors.computeIfAbsent(consumer, key -> new ReplayCursor());
+    }
+
+    /**
+     * Position and timeline of one consumer in replay, fed by its own reader thread.
+     */
+    private class ReplayCursor {
+
+        private final BlockingQueue<ReplayFrame> queue = new ArrayBlockingQueue<>(readAhead);
+        private final Thread reader;
+
+        private ReplayFrame next;
+        private long baseTimestamp = -1;
+        private long baseNanos;
+
+        ReplayCursor() {
+            reader = new Thread(this::readCapture, "tmg-replay-reader");
+            reader.setDaemon(true);
+            reader.start();
+        }
+
+        synchronized ByteBuf nextFrame() {
+            ReplayFrame entry = peek();
+            if (entry == END_OF_CAPTURE) {
+                log.info("Replay of " + name + " reached end of capture. Starting over.");
+                baseTimestamp = -1;
+                next = null;
+                entry = peek();
+            }
+            if (entry == null) {
+                return null;
+            }
+            next = null;
+            if (baseTimestamp < 0 || speed <= 0) {
+                baseTimestamp = entry.timestamp;
+                baseNanos = System.nanoTime();
+            }
+            return entry.frame;
+        }
+
+        synchronized long getNextMessageDelay() {
+            if (peek() == null) {
+                return NOT_READY_RETRY_NANOS;
+            }
+            if (next == END_OF_CAPTURE || baseTimestamp < 0 || speed <= 0) {
+                return 0;
+            }
+            long intendedNanos = baseNanos + (long) (TimeUnit.MILLISECONDS.toNanos(next.timestamp - baseTimestamp) / speed);
+            return Math.max(0, intendedNanos - System.nanoTime());
+        }
+
+        /**
+         * Method stops reader thread and releases frames read ahead. It doesn't wait for the reader,
+         * which may be in the middle of a disk read: frames it queues afterwards are released when it exits.
+         */
+        synchronized void close() {
+            reader.interrupt();
+            if (next != null) {
+                ReplayMessageSource.release(next);
+            }
+            next = null;
+            drain();
+        }
+
+        /**
+         * Method returns next entry of queue without taking it.
+         *
+         * @return ReplayFrame or null if reader hasn't read next message yet
+         */
+        private ReplayFrame peek() {
+            if (next == null) {
+                // reader is checked before polling, so a frame queued right before the reader ended isn't missed
+                boolean readerAlive = reader.isAlive();
+                next = queue.poll();
+                if (next == null && !readerAlive) {
+                    throw new IllegalStateException("Replay of " + name + " has no messages");
+                }
+            }
+            return next;
+        }
+
+        private void drain() {
+            ReplayFrame entry;
+            while ((entry = queue.poll()) != null) {
+                ReplayMessageSource.release(entry);
+            }
+        }
+
+        private void readCapture() {
+            try {
+                while (!Thread.currentThread().isInterrupted()) {
+                    int[] count = {0};
+                    capture.read(message -> {
+                        ByteBuf frame = IOMessageEncoder.encodeFrame(message, PooledByteBufAllocator.DEFAULT);
+                        put(new ReplayFrame(frame, message.getTimestamp()));
+                        count[0]++;
+                    });
+                    if (count[0] == 0) {
+                        log.warning("Replay capture " + name + " has no messages.");
+                        return;
+                    }
+                    put(END_OF_CAPTURE);
+                }
+            } catch (IOException | XMLStreamException | NumberFormatException e) {
+                log.warning("Error reading replay capture " + name + ". " + e.getMessage());
+            } catch (ReplayStoppedException e) {
+                // cursor is closed
+            } finally {
+                if (Thread.currentThread().isInterrupted()) {
+                    // frames queued after close() released the queue
+                    drain();
+                }
+            }
+        }
+
+        private void put(ReplayFrame entry) {
+            try {
+                queue.put(entry);
+            } catch (InterruptedException e) {
+                ReplayMessageSource.release(entry);
+                Thread.currentThread().interrupt();
+                throw new ReplayStoppedException();
+            }
+        }
+    }
+
+    private static void release(ReplayFrame entry) {
+        if (entry.frame != null) {
+            entry.frame.release();
+        }
+    }
+
+    private static void readLog(File file, Consumer<IOMessage> consumer) throws IOException {
+        try (BufferedReader reader = new BufferedReader(new InputStreamReader(new FileInputStream(file), StandardCharsets.UTF_8))) {
+            String line;
+            while ((line = reader.readLine()) != null) {
+                if (line.isEmpty()) {
+                    continue;
+                }
+                IOMessage message;
+                try (JsonReader jsonReader = Json.createReader(new StringReader(line))) {
+                    message = new IOMessage(jsonReader.readObject());
+                } catch (JsonException e) {
+                    log.warning("Skipping broken record of replay capture " + file + ". " + e.getMessage());
+                    continue;
+                }
+                consumer.accept(message);
+            }
+        }
+    }
+
+    /**
+     * Captured traffic read from the beginning on every pass of replay.
+     */
+    private interface Capture {
+
+        void read(Consumer<IOMessage> consumer) throws IOException, XMLStreamException;
+    }
+
+    private static class ReplayFrame {
+
+        private final ByteBuf frame;
+        private final long timestamp;
+
+        ReplayFrame(ByteBuf frame, long timestamp) {
+            this.frame = frame;
+            this.timestamp = timestamp;
+        }
+    }
+
+    private static class ReplayStoppedException extends RuntimeException {
+
+        private static final long serialVersionUID = 1L;
+    }
+}
@@ -12,57 +12,404 @@
 
 package org.eclipse.iofog.tmg.manager;
 
-
+import io.netty.buffer.ByteBuf;
+import io.netty.channel.ChannelHandlerContext;
+import io.netty.util.HashedWheelTimer;
+import io.netty.util.Timeout;
+import io.netty.util.TimerTask;
 import org.eclipse.iofog.ws.manager.WebSocketManager;
 
-import java.util.concurrent.Executors;
-import java.util.concurrent.ScheduledExecutorService;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.TimeUnit;
+import java.util.logging.Logger;
 
+/**
+ * Scheduler of data messages and control signals sent to ioContainers.
+ * All containers share one timer wheel thread, so number of threads doesn't depend on number of containers.
+ * Data messages are sent at data message interval, or paced at target rate of a traffic shape or data message rate.
+ * Every container has at most one data schedule, started when its message socket opens,
+ * and one control schedule, started when its control socket opens. Schedule belongs to its socket:
+ * starting it again for the same socket does nothing and a new socket of the container replaces it.
+ * Schedules of a container are started and stopped inside the map operation on its sender, so a sender
+ * is never removed as idle while a schedule is being started on it.
+ * When config.xml is reloaded, schedules of all open sockets are restarted with its new values.
+ * In broadcast mode a single data schedule sends every message to all open message sockets instead.
+ */
 public class ScheduleSender {
 
-    private ScheduledExecutorService mScheduler;
+    private static final Logger log = Logger.getLogger(ScheduleSender.class.getName());
+
+    private static final long TICK_DURATION_MILLIS = 1;
+    private static final int TICKS_PER_WHEEL = 1024;
+    private static final long WINDOW_RETRY_NANOS = TimeUnit.MILLISECONDS.toNanos(1);
+    private static final long NOT_READY_RETRY_NANOS = TimeUnit.MILLISECONDS.toNanos(1);
 
-    private long mMessInt;
-    private long mConfInt;
+    private static final HashedWheelTimer mTimer = new HashedWheelTimer(runnable -> {
+        Thread thread = new Thread(runnable, "tmg-scheduler");
+        thread.setDaemon(true);
+        return thread;
+    }, TICK_DURATION_MILLIS, TimeUnit.MILLISECONDS, TICKS_PER_WHEEL);
+
+    private static final Map<String, ScheduleSender> mSenders = new ConcurrentHashMap<>();
+    private static final ScheduleSender mBroadcastSender = new ScheduleSender("broadcast");
+
+    private final String mContId;
     private WebSocketManager mWsManager;
-    private String mContId;
+    private ChannelHandlerContext mMessageCtx;
+    private ChannelHandlerContext mControlCtx;
+    private Schedule mDataSchedule;
+    private Schedule mControlSchedule;
+
+    private ScheduleSender(String pContId) {
+        mContId = pContId;
+    }
+
+    /**
+     * Method starts sending data messages to message socket of ioContainer,
+     * at data message interval or at target rate of config.xml.
+     * In broadcast mode the socket joins data messages sent to all message sockets.
+     *
+     * @param pContId - id of ioContainer
+     * @param pWsManager - WebSocket manager
+     * @param pCtx - context of message socket
+     */
+    public static void startMessages(String pContId, WebSocketManager pWsManager, ChannelHandlerContext pCtx) {
+        boolean broadcast = TMGConfigManager.isDataBroadcast();
+        mSenders.compute(pContId, (contId, sender) -> {
+            sender = sender != null ? sender : new ScheduleSender(contId);
+            sender.openMessages(pWsManager, pCtx, broadcast);
+            return sender;
+        });
+        if (broadcast) {
+            mBroadcastSender.startDataSchedule(pWsManager, null, new BroadcastMessageSink(pWsManager));
+        }
+    }
 
+    /**
+     * Method starts sending control signals to control socket of ioContainer at control message interval of config.xml.
+     *
+     * @param pContId - id of ioContainer
+     * @param pWsManager - WebSocket manager
+     * @param pCtx - context of control socket
+     */
+    public static void startControl(String pContId, WebSocketManager pWsManager, ChannelHandlerContext pCtx) {
+        mSenders.compute(pContId, (contId, sender) -> {
+            sender = sender != null ? sender : new ScheduleSender(contId);
+            sender.openControl(pWsManager, pCtx);
+            return sender;
+        });
+    }
+
+    /**
+     * Method stops data messages of ioContainer, unless they are already sent through another socket.
+     *
+     * @param pContId - id of ioContainer
+     * @param pWsManager - WebSocket manager
+     * @param pCtx - context of closed message socket
+     */
+    public static void stopMessages(String pContId, WebSocketManager pWsManager, ChannelHandlerContext pCtx) {
+        mSenders.computeIfPresent(pContId, (contId, sender) -> {
+            sender.closeMessages(pCtx);
+            return sender.isIdle() ? null : sender;
+        });
+        if (pWsManager.getMessageSocketCount() == 0) {
+            mBroadcastSender.stopDataSchedule(null);
+        }
+    }
+
+    /**
+     * Method stops control signals of ioContainer, unless they are already sent through another socket.
+     *
+     * @param pContId - id of ioContainer
+     * @param pWsManager - WebSocket manager
+     * @param pCtx - context of closed control socket
+     */
+    public static void stopControl(String pContId, WebSocketManager pWsManager, ChannelHandlerContext pCtx) {
+        mSenders.computeIfPresent(pContId, (contId, sender) -> {
+            sender.closeControl(pCtx);
+            return sender.isIdle() ? null : sender;
+        });
+    }
 
-    public ScheduleSender(String pContId, WebSocketManager pWsManager) {
-        mMessInt = TMGConfigManager.getDataMessageInterval();
-        mConfInt = TMGConfigManager.getControlMessageInterval();
+    /**
+     * Method restarts schedules of all open sockets with current values of config.xml (intervals, rate, traffic shape
+     * and broadcast mode), so a reloaded config.xml applies to connected containers without reconnecting them.
+     * Every sender is restarted inside the map operation on it, like start and stop of its schedules.
+     */
+    static void restartSchedules() {
+        boolean broadcast = TMGConfigManager.isDataBroadcast();
+        WebSocketManager[] broadcastManager = new WebSocketManager[1];
+        for (String contId : mSenders.keySet()) {
+            mSenders.computeIfPresent(contId, (id, sender) -> {
+                WebSocketManager wsManager = sender.restart(broadcast);
+                if (wsManager != null) {
+                    broadcastManager[0] = wsManager;
+                }
+                return sender;
+            });
+        }
+        mBroadcastSender.stopDataSchedule(null);
+        if (broadcast && broadcastManager[0] != null && broadcastManager[0].getMessageSocketCount() > 0) {
+            mBroadcastSender.startDataSchedule(broadcastManager[0], null, new BroadcastMessageSink(broadcastManager[0]));
+        }
+    }
+
+    private synchronized void openMessages(WebSocketManager pWsManager, ChannelHandlerContext pCtx, boolean pBroadcast) {
         mWsManager = pWsManager;
-        mContId = pContId;
-        mScheduler = Executors.newScheduledThreadPool(2);
+        mMessageCtx = pCtx;
+        if (!pBroadcast) {
+            startDataSchedule(pWsManager, pCtx, new ChannelMessageSink(pCtx, pWsManager));
+        }
+    }
+
+    private synchronized void openControl(WebSocketManager pWsManager, ChannelHandlerContext pCtx) {
+        mWsManager = pWsManager;
+        mControlCtx = pCtx;
+        startControlSchedule(pWsManager, pCtx);
+    }
+
+    private synchronized void closeMessages(ChannelHandlerContext pCtx) {
+        if (mMessageCtx == pCtx) {
+            mMessageCtx = null;
+        }
+        stopDataSchedule(pCtx);
+    }
+
+    private synchronized void closeControl(ChannelHandlerContext pCtx) {
+        if (mControlCtx == pCtx) {
+            mControlCtx = null;
+        }
+        stopControlSchedule(pCtx);
+    }
+
+    /**
+     * Method replaces schedules of open sockets with new ones reading current config.xml.
+     *
+     * @param pBroadcast - true if data messages are broadcast instead of sent by schedule of message socket
+     * @return WebSocket manager if message socket is open, otherwise null
+     */
+    private synchronized WebSocketManager restart(boolean pBroadcast) {
+        if (mDataSchedule != null) {
+            mDataSchedule.cancel();
+            mDataSchedule = null;
+        }
+        if (mControlSchedule != null) {
+            mControlSchedule.cancel();
+            mControlSchedule = null;
+        }
+        if (mMessageCtx != null && !pBroadcast) {
+            startDataSchedule(mWsManager, mMessageCtx, new ChannelMessageSink(mMessageCtx, mWsManager));
+        }
+        if (mControlCtx != null) {
+            startControlSchedule(mWsManager, mControlCtx);
+        }
+        return mMessageCtx != null ? mWsManager : null;
     }
 
-    public void start() {
-        mScheduler.scheduleWithFixedDelay(new MessageSender(), 0, mMessInt, TimeUnit.MILLISECONDS);
-        mScheduler.scheduleWithFixedDelay(new ConfigSender(), 0, mConfInt, TimeUnit.MILLISECONDS);
+    private synchronized void startDataSchedule(WebSocketManager pWsManager, ChannelHandlerContext pCtx, MessageSink pSink) {
+        if (mDataSchedule != null) {
+            if (mDataSchedule.mCtx == pCtx) {
+                return;
+            }
+            mDataSchedule.cancel();
+        }
+        TrafficShape shape = TMGConfigManager.getTrafficShape();
+        double rate = TMGConfigManager.getDataMessageRate();
+        if (shape == null && rate > 0) {
+            shape = TrafficShape.constant(rate);
+        }
+        if (shape != null) {
+            mDataSchedule = new RateSchedule(pWsManager, pCtx, pSink, shape, TMGConfigManager.getDataMessageDuration());
+        } else {
+            mDataSchedule = new MessageSchedule(pWsManager, pCtx, pSink, TMGConfigManager.getDataMessageInterval());
+        }
+        mDataSchedule.start();
     }
 
-    public void stop() {
-        mScheduler.shutdown();
+    private synchronized void startControlSchedule(WebSocketManager pWsManager, ChannelHandlerContext pCtx) {
+        if (mControlSchedule != null) {
+            if (mControlSchedule.mCtx == pCtx) {
+                return;
+            }
+            mControlSchedule.cancel();
+        }
+        mControlSchedule = new ControlSchedule(pWsManager, pCtx, TMGConfigManager.getControlMessageInterval());
+        mControlSchedule.start();
     }
 
-    private class MessageSender implements Runnable {
+    private synchronized void stopDataSchedule(ChannelHandlerContext pCtx) {
+        if (mDataSchedule != null && mDataSchedule.mCtx == pCtx) {
+            mDataSchedule.cancel();
+            mDataSchedule = null;
+        }
+    }
+
+    private synchronized void stopControlSchedule(ChannelHandlerContext pCtx) {
+        if (mControlSchedule != null && mControlSchedule.mCtx == pCtx) {
+            mControlSchedule.cancel();
+            mControlSchedule = null;
+        }
+    }
+
+    private synchronized boolean isIdle() {
+        return mMessageCtx == null && mControlCtx == null;
+    }
+
+    /**
+     * Timer of one kind of signals of ioContainer, which reschedules itself after every send.
+     */
+    private abstract class Schedule implements TimerTask {
+
+        final WebSocketManager mWsManager;
+        final ChannelHandlerContext mCtx;
+        private final long mInterval;
+        private Timeout mTimeout;
+        private boolean mCancelled;
+
+        /**
+         * @param pWsManager - WebSocket manager
+         * @param pCtx - context of socket the schedule belongs to, null for broadcast
+         * @param pInterval - interval in milliseconds
+         */
+        Schedule(WebSocketManager pWsManager, ChannelHandlerContext pCtx, long pInterval) {
+            mWsManager = pWsManager;
+            mCtx = pCtx;
+            mInterval = pInterval;
+        }
+
+        void start() {
+            schedule(0);
+        }
+
+        synchronized void cancel() {
+            if (mCancelled) {
+                return;
+            }
+            mCancelled = true;
+            if (mTimeout == null || mTimeout.cancel()) {
+                stopped();
+            }
+            // otherwise the schedule is running right now and it calls stopped() instead of rescheduling
+        }
 
         @Override
-        public void run() {
-            System.out.println("Sending message: " + System.currentTimeMillis());
-            mWsManager.sendMessage(mContId, TMGMessageManager.getRandomMessage().toBytes());
+        public void run(Timeout pTimeout) {
+            long delay;
+            try {
+                delay = send();
+            } catch (RuntimeException e) {
+                log.warning("Error sending to container " + mContId + ". " + e.getMessage());
+                delay = -1;
+            }
+            schedule(delay < 0 ? TimeUnit.MILLISECONDS.toNanos(mInterval) : delay);
+        }
+
+        private synchronized void schedule(long pDelay) {
+            if (!mCancelled) {
+                mTimeout = mTimer.newTimeout(this, pDelay, TimeUnit.NANOSECONDS);
+            } else {
+                stopped();
+            }
+        }
+
+        /**
+         * Method is called once after the last send of cancelled schedule.
+         */
+        void stopped() {
         }
+
+        /**
+         * Method sends signal to ioContainer.
+         *
+         * @return time in nanoseconds until next signal, or a negative value to use interval of schedule
+         */
+        abstract long send();
     }
 
-    private class ConfigSender implements Runnable {
+    private class MessageSchedule extends Schedule {
+
+        private final MessageSink mSink;
+
+        MessageSchedule(WebSocketManager pWsManager, ChannelHandlerContext pCtx, MessageSink pSink, long pMessInt) {
+            super(pWsManager, pCtx, pMessInt);
+            mSink = pSink;
+        }
 
         @Override
-        public void run() {
-            System.out.println("Sending control signal : " + System.currentTimeMillis());
-            mWsManager.sendControl(mContId);
+        long send() {
+            if (!mSink.isWritable()) {
+                // in-flight window is full, message is sent as soon as the window has room
+                return WINDOW_RETRY_NANOS;
+            }
+            log.fine(() -> "Sending message to container " + mContId);
+            ByteBuf frame = TMGMessageManager.getNextMessageFrame(mSink, mSink.alloc());
+            if (frame == null) {
+                // replayed capture is still being read, message is sent as soon as it is ready
+                return NOT_READY_RETRY_NANOS;
+            }
+            mSink.write(frame);
+            mSink.flush();
+            // replayed messages define their own timing, other sources are sent at data message interval
+            return TMGMessageManager.getNextMessageDelay(mSink);
+        }
+
+        @Override
+        void stopped() {
+            TMGMessageManager.releaseMessageConsumer(mSink);
         }
     }
 
+    private class ControlSchedule extends Schedule {
+
+        ControlSchedule(WebSocketManager pWsManager, ChannelHandlerContext pCtx, long pConfInt) {
+            super(pWsManager, pCtx, pConfInt);
+        }
 
+        @Override
+        long send() {
+            log.fine(() -> "Sending control signal to container " + mContId);
+            mWsManager.sendControl(mCtx);
+            return -1;
+        }
+    }
+
+    /**
+     * Data schedule of target rate mode (data message rate or traffic shape). Messages are paced by {@link TargetRateSender}
+     * on executor of the sink (event loop of message socket), so the timer isn't used.
+     */
+    private class RateSchedule extends Schedule {
+
+        private final MessageSink mSink;
+        private final TrafficShape mShape;
+        private final long mMessDuration;
+        private TargetRateSender mRateSender;
+
+        RateSchedule(WebSocketManager pWsManager, ChannelHandlerContext pCtx, MessageSink pSink, TrafficShape pShape, long pMessDuration) {
+            super(pWsManager, pCtx, 0);
+            mSink = pSink;
+            mShape = pShape;
+            mMessDuration = pMessDuration;
+        }
+
+        @Override
+        synchronized void start() {
+            String name = ScheduleSender.this == mBroadcastSender ? "Broadcast" : "Container " + mContId;
+            mRateSender = new TargetRateSender(mSink, name, mShape, mMessDuration, TMGConfigManager.getTrafficReportInterval());
+            mRateSender.start();
+        }
+
+        @Override
+        synchronized void cancel() {
+            if (mRateSender != null) {
+                mRateSender.stop();
+                mRateSender = null;
+            }
+        }
+
+        @Override
+        long send() {
+            return -1;
+        }
+    }
 }
@@ -0,0 +1,73 @@
+/*
+ * *******************************************************************************
+ *   Copyright (c) 2018 Edgeworx, Inc.
+ *
+ *   This program and the accompanying materials are made available under the
+ *   terms of the Eclipse Public License v. 2.0 which is available at
+ *   http://www.eclipse.org/legal/epl-2.0
+ *
+ *   SPDX-License-Identifier: EPL-2.0
+ * *******************************************************************************
+ */
+
+package org.eclipse.iofog.tmg.manager;
+
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.ByteBufAllocator;
+
+import java.util.function.Supplier;
+
+/**
+ * Message source published in snapshot, shared by senders of all containers.
+ * Every call holds a reference to the source, so source replaced by reload is closed only after calls
+ * which were using it have returned. Calls made after close fail with IllegalStateException.
+ */
+class SharedMessageSource implements MessageSource {
+
+    private final MessageSource source;
+    private final UsageCounter users;
+
+    SharedMessageSource(MessageSource source) {
+        this.source = source;
+        this.users = new UsageCounter(source::close);
+    }
+
+    @Override
+    public ByteBuf nextFrame(Object consumer, ByteBufAllocator alloc) {
+        return use(() -> source.nextFrame(consumer, alloc));
+    }
+
+    @Override
+    public boolean writeNextJson(Object consumer, ByteBuf out) {
+        return use(() -> source.writeNextJson(consumer, out));
+    }
+
+    @Override
+    public long getNextMessageDelay(Object consumer) {
+        return use(() -> source.getNextMessageDelay(consumer));
+    }
+
+    @Override
+    public void release(Object consumer) {
+        use(() -> {
+            source.release(consumer);
+            return null;
+        });
+    }
+
+    @Override
+    public void close() {
+        users.close();
+    }
+
+    private <T> T use(Supplier<T> call) {
+        if (!users.acquire()) {
+            throw new IllegalStateException("Message source is closed");
+        }
+        try {
+            return call.get();
+        } finally {
+            users.release();
+        }
+    }
+}
@@ -0,0 +1,46 @@
+/*
+ * *******************************************************************************
+ *   Copyright (c) 2018 Edgeworx, Inc.
+ *
+ *   This program and the accompanying materials are made available under the
+ *   terms of the Eclipse Public License v. 2.0 which is available at
+ *   http://www.eclipse.org/legal/epl-2.0
+ *
+ *   SPDX-License-Identifier: EPL-2.0
+ * *******************************************************************************
+ */
+
+package org.eclipse.iofog.tmg.manager;
+
+import java.util.Map;
+
+/**
+ * Immutable values of config.xml, parsed at once from one read of the file:
+ * text of elements by tag name and traffic shape, which isn't a plain value.
+ */
+final class TMGConfig {
+
+    private final Map<String, String> values;
+    private final TrafficShape trafficShape;
+
+    /**
+     * @param values - unmodifiable text of elements by tag name
+     * @param trafficShape - parsed traffic shape or null if config.xml has no valid shape
+     */
+    TMGConfig(Map<String, String> values, TrafficShape trafficShape) {
+        this.values = values;
+        this.trafficShape = trafficShape;
+    }
+
+    /**
+     * @param tagName - name of element
+     * @return text of the first element of given name, or null if config.xml has none
+     */
+    String get(String tagName) {
+        return values.get(tagName);
+    }
+
+    TrafficShape getTrafficShape() {
+        return trafficShape;
+    }
+}
@@ -14,7 +14,13 @@ package org.eclipse.iofog.tmg.manager;
 
 import org.eclipse.iofog.utils.TMGFileUtils;
 import org.w3c.dom.Document;
+import org.w3c.dom.Element;
+import org.w3c.dom.Node;
+import org.w3c.dom.NodeList;
 
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
 import java.util.logging.Logger;
 
 /**
@@ -30,8 +36,33 @@ class TMGConfigManager {
     private static final String CONFIG_FILE_SOURCE = "config.xml";
     private static final String DATA_MSG_INTERVAL_TAG_NAME = "datamessageinteval";
     private static final String CONTROL_MSG_INTERVAL_TAG_NAME = "controlmessageinterval";
-
-    private static Document configFile;
+    private static final String DATA_MSG_RATE_TAG_NAME = "datamessagerate";
+    private static final String DATA_MSG_DURATION_TAG_NAME = "datamessageduration";
+    private static final String TRAFFIC_SHAPE_TAG_NAME = "trafficshape";
+    private static final String DATA_BROADCAST_TAG_NAME = "databroadcast";
+    private static final String MESSAGE_WINDOW_SIZE_TAG_NAME = "messagewindowsize";
+    private static final String MESSAGE_RETRANSMIT_TIMEOUT_TAG_NAME = "messageretransmittimeout";
+    private static final String MESSAGE_MAX_RETRANSMITS_TAG_NAME = "messagemaxretransmits";
+    private static final String HEARTBEAT_INTERVAL_TAG_NAME = "heartbeatinterval";
+    private static final String CONTROL_COMPRESSION_LEVEL_TAG_NAME = "controlcompressionlevel";
+    private static final String CONTROL_COMPRESSION_THRESHOLD_TAG_NAME = "controlcompressionthreshold";
+    private static final String MESSAGE_COMPRESSION_LEVEL_TAG_NAME = "messagecompressionlevel";
+    private static final String MESSAGE_COMPRESSION_THRESHOLD_TAG_NAME = "messagecompressionthreshold";
+    private static final String TRAFFIC_REPORT_INTERVAL_TAG_NAME = "trafficreportinterval";
+    private static final String CORPUS_LOAD_THREADS_TAG_NAME = "corpusloadthreads";
+    private static final String MESSAGE_SOURCE_TAG_NAME = "messagesource";
+    private static final String REPLAY_FILE_TAG_NAME = "replayfile";
+    private static final String REPLAY_SPEED_TAG_NAME = "replayspeed";
+    private static final String REPLAY_READ_AHEAD_TAG_NAME = "replayreadahead";
+    private static final String STORAGE_MODE_TAG_NAME = "storagemode";
+    private static final String STORAGE_FLUSH_INTERVAL_TAG_NAME = "storageflushinterval";
+    private static final String STORAGE_QUEUE_SIZE_TAG_NAME = "storagequeuesize";
+    private static final String STORAGE_QUEUE_POLICY_TAG_NAME = "storagequeuepolicy";
+    private static final String RECEIVED_MAX_COUNT_TAG_NAME = "receivedmessagesmaxcount";
+    private static final String RECEIVED_MAX_BYTES_TAG_NAME = "receivedmessagesmaxbytes";
+    private static final String RECEIVED_MAX_AGE_TAG_NAME = "receivedmessagesmaxage";
+    private static final String JOURNAL_SEGMENT_SIZE_TAG_NAME = "journalsegmentsize";
+    private static final String JOURNAL_RETENTION_TAG_NAME = "journalretention";
 
     /**
      * Method retrieves value for interval at which Test Message Generator will send IOMessages to ioContainer.
@@ -40,13 +71,198 @@ class TMGConfigManager {
      */
     static long getDataMessageInterval(){
         try {
-            return Long.valueOf(getConfigFile().getElementsByTagName(DATA_MSG_INTERVAL_TAG_NAME).item(0).getTextContent());
+            return Long.valueOf(getConfigValue(DATA_MSG_INTERVAL_TAG_NAME));
         } catch (Exception e) {
             log.info("Error retrieving Data Message Interval. Switching to use default value = 5000 milliseconds. Error: " + e);
             return 5000;
         }
     }
 
+    /**
+     * Method retrieves target rate in messages per second at which Test Message Generator will send IOMessages to ioContainer,
+     * 0 means messages are sent at data message interval.
+     *
+     * @return double
+     */
+    static double getDataMessageRate(){
+        try {
+            return Double.valueOf(getConfigValue(DATA_MSG_RATE_TAG_NAME));
+        } catch (Exception e) {
+            log.info("Error retrieving Data Message Rate. Switching to use default value = 0. Error: " + e);
+            return 0;
+        }
+    }
+
+    /**
+     * Method retrieves time in milliseconds IOMessages are sent at target rate for, 0 means until ioContainer disconnects.
+     *
+     * @return long
+     */
+    static long getDataMessageDuration(){
+        try {
+            return Long.valueOf(getConfigValue(DATA_MSG_DURATION_TAG_NAME));
+        } catch (Exception e) {
+            log.info("Error retrieving Data Message Duration. Switching to use default value = 0 milliseconds. Error: " + e);
+            return 0;
+        }
+    }
+
+    /**
+     * Method retrieves whether every IOMessage is sent to all connected ioContainers at once,
+     * instead of generating messages for every ioContainer separately.
+     *
+     * @return boolean
+     */
+    static boolean isDataBroadcast(){
+        try {
+            String value = getConfigValue(DATA_BROADCAST_TAG_NAME).trim();
+            if (!value.equals("true") && !value.equals("false")) {
+                throw new IllegalArgumentException("Unknown value " + value);
+            }
+            return Boolean.parseBoolean(value);
+        } catch (Exception e) {
+            log.info("Error retrieving Data Broadcast. Switching to use default value = false. Error: " + e);
+            return false;
+        }
+    }
+
+    /**
+     * Method retrieves shape of target rate of IOMessages sent to ioContainer, see {@link TrafficShape}.
+     * Shape is parsed with the other values of config.xml and kept in config snapshot.
+     *
+     * @return TrafficShape or null if messages are sent at data message rate or interval
+     */
+    static TrafficShape getTrafficShape(){
+        return getConfig().getTrafficShape();
+    }
+
+    /**
+     * Method retrieves interval in milliseconds at which achieved rate of IOMessages is logged in target rate mode,
+     * 0 means only final report is logged.
+     *
+     * @return long
+     */
+    static long getTrafficReportInterval(){
+        try {
+            return Long.valueOf(getConfigValue(TRAFFIC_REPORT_INTERVAL_TAG_NAME));
+        } catch (Exception e) {
+            log.info("Error retrieving Traffic Report Interval. Switching to use default value = 1000 milliseconds. Error: " + e);
+            return 1000;
+        }
+    }
+
+    /**
+     * Method retrieves maximum number of IOMessages sent to message socket of ioContainer and not acknowledged yet.
+     *
+     * @return int
+     */
+    static int getMessageWindowSize(){
+        try {
+            return Integer.valueOf(getConfigValue(MESSAGE_WINDOW_SIZE_TAG_NAME));
+        } catch (Exception e) {
+            log.info("Error retrieving Message Window Size. Switching to use default value = 64 messages. Error: " + e);
+            return 64;
+        }
+    }
+
+    /**
+     * Method retrieves time in milliseconds an IOMessage waits for acknowledgement of ioContainer before it is sent again.
+     *
+     * @return long
+     */
+    static long getMessageRetransmitTimeout(){
+        try {
+            return Long.valueOf(getConfigValue(MESSAGE_RETRANSMIT_TIMEOUT_TAG_NAME));
+        } catch (Exception e) {
+            log.info("Error retrieving Message Retransmit Timeout. Switching to use default value = 5000 milliseconds. Error: " + e);
+            return 5000;
+        }
+    }
+
+    /**
+     * Method retrieves number of retransmissions of unacknowledged IOMessage before message socket of ioContainer is closed.
+     *
+     * @return int
+     */
+    static int getMessageMaxRetransmits(){
+        try {
+            return Integer.valueOf(getConfigValue(MESSAGE_MAX_RETRANSMITS_TAG_NAME));
+        } catch (Exception e) {
+            log.info("Error retrieving Message Max Retransmits. Switching to use default value = 10. Error: " + e);
+            return 10;
+        }
+    }
+
+    /**
+     * Method retrieves time a socket may stay silent before Test Message Generator pings it, 0 disables heartbeat.
+     *
+     * @return long
+     */
+    static long getHeartbeatInterval(){
+        try {
+            return Long.valueOf(getConfigValue(HEARTBEAT_INTERVAL_TAG_NAME));
+        } catch (Exception e) {
+            log.info("Error retrieving Heartbeat Interval. Switching to use default value = 10000 milliseconds. Error: " + e);
+            return 10000;
+        }
+    }
+
+    /**
+     * Method retrieves deflate level of control sockets which offer permessage-deflate, 0 disables compression.
+     *
+     * @return int
+     */
+    static int getControlCompressionLevel(){
+        try {
+            return Integer.valueOf(getConfigValue(CONTROL_COMPRESSION_LEVEL_TAG_NAME));
+        } catch (Exception e) {
+            log.info("Error retrieving Control Compression Level. Switching to use default value = 0 (disabled). Error: " + e);
+            return 0;
+        }
+    }
+
+    /**
+     * Method retrieves minimal size of control socket message compressed by permessage-deflate.
+     *
+     * @return int
+     */
+    static int getControlCompressionThreshold(){
+        try {
+            return Integer.valueOf(getConfigValue(CONTROL_COMPRESSION_THRESHOLD_TAG_NAME));
+        } catch (Exception e) {
+            log.info("Error retrieving Control Compression Threshold. Switching to use default value = 256 bytes. Error: " + e);
+            return 256;
+        }
+    }
+
+    /**
+     * Method retrieves deflate level of message sockets which offer permessage-deflate, 0 disables compression.
+     *
+     * @return int
+     */
+    static int getMessageCompressionLevel(){
+        try {
+            return Integer.valueOf(getConfigValue(MESSAGE_COMPRESSION_LEVEL_TAG_NAME));
+        } catch (Exception e) {
+            log.info("Error retrieving Message Compression Level. Switching to use default value = 0 (disabled). Error: " + e);
+            return 0;
+        }
+    }
+
+    /**
+     * Method retrieves minimal size of message socket message compressed by permessage-deflate.
+     *
+     * @return int
+     */
+    static int getMessageCompressionThreshold(){
+        try {
+            return Integer.valueOf(getConfigValue(MESSAGE_COMPRESSION_THRESHOLD_TAG_NAME));
+        } catch (Exception e) {
+            log.info("Error retrieving Message Compression Threshold. Switching to use default value = 256 bytes. Error: " + e);
+            return 256;
+        }
+    }
+
     /**
      * Method retrieves value for interval at which Test Message Generator will send New Configuration Signal to ioContainer.
      *
@@ -54,18 +270,254 @@ class TMGConfigManager {
      */
     static long getControlMessageInterval(){
         try {
-            return Long.valueOf(getConfigFile().getElementsByTagName(CONTROL_MSG_INTERVAL_TAG_NAME).item(0).getTextContent());
+            return Long.valueOf(getConfigValue(CONTROL_MSG_INTERVAL_TAG_NAME));
         } catch (Exception e) {
             log.info("Error retrieving Control Message Interval. Switching to use default value = 5000 milliseconds. Error: " + e);
             return 5000;
         }
     }
 
-    private static Document getConfigFile(){
-        if(configFile == null) {
-            configFile = TMGFileUtils.getXMLDocument(CONFIG_FILE_SOURCE);
+    /**
+     * Method retrieves number of threads encoding IOMessages while messages.xml is loaded.
+     *
+     * @return int
+     */
+    static int getCorpusLoadThreads(){
+        try {
+            return Integer.valueOf(getConfigValue(CORPUS_LOAD_THREADS_TAG_NAME));
+        } catch (Exception e) {
+            log.info("Error retrieving Corpus Load Threads. Switching to use default value = 1. Error: " + e);
+            return 1;
+        }
+    }
+
+    /**
+     * Method retrieves source of IOMessages sent to ioContainer: "corpus" (messages.xml), "template" (messagetemplates.xml)
+     * or "replay" (captured traffic).
+     *
+     * @return String
+     */
+    static String getMessageSource(){
+        try {
+            return getConfigValue(MESSAGE_SOURCE_TAG_NAME).trim();
+        } catch (Exception e) {
+            log.info("Error retrieving Message Source. Switching to use default value = corpus. Error: " + e);
+            return "corpus";
+        }
+    }
+
+    /**
+     * Method retrieves name of captured traffic file replayed by replay message source.
+     *
+     * @return String
+     */
+    static String getReplayFile(){
+        try {
+            return getConfigValue(REPLAY_FILE_TAG_NAME).trim();
+        } catch (Exception e) {
+            log.info("Error retrieving Replay File. Switching to use default value = receivedmessages.xml. Error: " + e);
+            return "receivedmessages.xml";
+        }
+    }
+
+    /**
+     * Method retrieves speed multiplier of replay, 0 means as fast as possible.
+     *
+     * @return double
+     */
+    static double getReplaySpeed(){
+        try {
+            return Double.valueOf(getConfigValue(REPLAY_SPEED_TAG_NAME));
+        } catch (Exception e) {
+            log.info("Error retrieving Replay Speed. Switching to use default value = 1. Error: " + e);
+            return 1;
+        }
+    }
+
+    /**
+     * Method retrieves number of replayed messages read ahead from disk.
+     *
+     * @return int
+     */
+    static int getReplayReadAhead(){
+        try {
+            return Integer.valueOf(getConfigValue(REPLAY_READ_AHEAD_TAG_NAME));
+        } catch (Exception e) {
+            log.info("Error retrieving Replay Read Ahead. Switching to use default value = 1024 messages. Error: " + e);
+            return 1024;
+        }
+    }
+
+    /**
+     * Method retrieves mode of persistence for IOMessages received from ioContainer: "xml", "log" or "journal".
+     *
+     * @return String
+     */
+    static String getStorageMode(){
+        try {
+            return getConfigValue(STORAGE_MODE_TAG_NAME).trim();
+        } catch (Exception e) {
+            log.info("Error retrieving Storage Mode. Switching to use default value = xml. Error: " + e);
+            return "xml";
+        }
+    }
+
+    /**
+     * Method retrieves maximum time in milliseconds received IOMessages can stay in write buffer of message log.
+     *
+     * @return long
+     */
+    static long getStorageFlushInterval(){
+        try {
+            return Long.valueOf(getConfigValue(STORAGE_FLUSH_INTERVAL_TAG_NAME));
+        } catch (Exception e) {
+            log.info("Error retrieving Storage Flush Interval. Switching to use default value = 1000 milliseconds. Error: " + e);
+            return 1000;
+        }
+    }
+
+    /**
+     * Method retrieves capacity of queue between receivers of IOMessages and storage writer, 0 means messages are saved synchronously.
+     *
+     * @return int
+     */
+    static int getStorageQueueSize(){
+        try {
+            return Integer.valueOf(getConfigValue(STORAGE_QUEUE_SIZE_TAG_NAME));
+        } catch (Exception e) {
+            log.info("Error retrieving Storage Queue Size. Switching to use default value = 10000 messages. Error: " + e);
+            return 10000;
+        }
+    }
+
+    /**
+     * Method retrieves policy applied to received IOMessages when storage queue is full: "block", "drop" or "reject".
+     *
+     * @return String
+     */
+    static String getStorageQueuePolicy(){
+        try {
+            return getConfigValue(STORAGE_QUEUE_POLICY_TAG_NAME).trim();
+        } catch (Exception e) {
+            log.info("Error retrieving Storage Queue Policy. Switching to use default value = reject. Error: " + e);
+            return "reject";
+        }
+    }
+
+    /**
+     * Method retrieves maximum number of received IOMessages kept in memory for messages query, 0 means no limit.
+     *
+     * @return int
+     */
+    static int getReceivedMessagesMaxCount(){
+        try {
+            return Integer.valueOf(getConfigValue(RECEIVED_MAX_COUNT_TAG_NAME));
+        } catch (Exception e) {
+            log.info("Error retrieving Received Messages Max Count. Switching to use default value = 100000 messages. Error: " + e);
+            return 100000;
+        }
+    }
+
+    /**
+     * Method retrieves maximum total size in bytes of received IOMessages kept in memory for messages query, 0 means no limit.
+     *
+     * @return long
+     */
+    static long getReceivedMessagesMaxBytes(){
+        try {
+            return Long.valueOf(getConfigValue(RECEIVED_MAX_BYTES_TAG_NAME));
+        } catch (Exception e) {
+            log.info("Error retrieving Received Messages Max Bytes. Switching to use default value = 268435456 bytes. Error: " + e);
+            return 268435456;
+        }
+    }
+
+    /**
+     * Method retrieves maximum time in milliseconds received IOMessages are kept in memory for messages query, 0 means no limit.
+     *
+     * @return long
+     */
+    static long getReceivedMessagesMaxAge(){
+        try {
+            return Long.valueOf(getConfigValue(RECEIVED_MAX_AGE_TAG_NAME));
+        } catch (Exception e) {
+            log.info("Error retrieving Received Messages Max Age. Switching to use default value = 3600000 milliseconds. Error: " + e);
+            return 3600000;
+        }
+    }
+
+    /**
+     * Method retrieves size in bytes of segment files of message journal.
+     *
+     * @return int
+     */
+    static int getJournalSegmentSize(){
+        try {
+            return Integer.valueOf(getConfigValue(JOURNAL_SEGMENT_SIZE_TAG_NAME));
+        } catch (Exception e) {
+            log.info("Error retrieving Journal Segment Size. Switching to use default value = 67108864 bytes. Error: " + e);
+            return 67108864;
+        }
+    }
+
+    /**
+     * Method retrieves maximum number of segment files of message journal to keep, 0 means all of them.
+     *
+     * @return int
+     */
+    static int getJournalRetention(){
+        try {
+            return Integer.valueOf(getConfigValue(JOURNAL_RETENTION_TAG_NAME));
+        } catch (Exception e) {
+            log.info("Error retrieving Journal Retention. Switching to use default value = 16 segments. Error: " + e);
+            return 16;
+        }
+    }
+
+    /**
+     * Method rereads config.xml and publishes its values in a new snapshot.
+     * Values read at startup (storage and retention settings) take effect after restart only.
+     */
+    static void reloadConfig(){
+        TMGConfig config = loadConfig();
+        TMGSnapshot.update(snapshot -> snapshot.withConfig(config));
+        log.info("Reloaded " + CONFIG_FILE_SOURCE);
+    }
+
+    private static String getConfigValue(String tagName){
+        return getConfig().get(tagName);
+    }
+
+    private static TMGConfig getConfig(){
+        return TMGSnapshot.getConfig(TMGConfigManager::loadConfig);
+    }
+
+    private static TMGConfig loadConfig(){
+        Map<String, String> values = new HashMap<>();
+        TrafficShape trafficShape = null;
+        Document configFile = TMGFileUtils.getXMLDocument(CONFIG_FILE_SOURCE);
+        if (configFile != null) {
+            NodeList elements = configFile.getElementsByTagName("*");
+            for (int i = 0; i < elements.getLength(); i++) {
+                Node element = elements.item(i);
+                values.putIfAbsent(element.getNodeName(), element.getTextContent());
+            }
+            trafficShape = parseTrafficShape(configFile);
+        }
+        return new TMGConfig(Collections.unmodifiableMap(values), trafficShape);
+    }
+
+    private static TrafficShape parseTrafficShape(Document configFile){
+        try {
+            NodeList shapes = configFile.getElementsByTagName(TRAFFIC_SHAPE_TAG_NAME);
+            if (shapes.getLength() == 0 || ((Element) shapes.item(0)).getElementsByTagName(TrafficShape.PHASE_TAG_NAME).getLength() == 0) {
+                return null;
+            }
+            return TrafficShape.parse((Element) shapes.item(0));
+        } catch (Exception e) {
+            log.info("Error retrieving Traffic Shape. Switching to use data message rate or interval. Error: " + e);
+            return null;
         }
-        return configFile;
     }
 
 }
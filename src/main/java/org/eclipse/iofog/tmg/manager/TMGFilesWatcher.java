@@ -0,0 +1,123 @@
+/*
+ * *******************************************************************************
+ *   Copyright (c) 2018 Edgeworx, Inc.
+ *
+ *   This program and the accompanying materials are made available under the
+ *   terms of the Eclipse Public License v. 2.0 which is available at
+ *   http://www.eclipse.org/legal/epl-2.0
+ *
+ *   SPDX-License-Identifier: EPL-2.0
+ * *******************************************************************************
+ */
+
+package org.eclipse.iofog.tmg.manager;
+
+import org.eclipse.iofog.utils.TMGFileUtils;
+
+import java.io.IOException;
+import java.nio.file.FileSystems;
+import java.nio.file.Path;
+import java.nio.file.StandardWatchEventKinds;
+import java.nio.file.WatchEvent;
+import java.nio.file.WatchKey;
+import java.nio.file.WatchService;
+import java.util.LinkedHashSet;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Logger;
+
+/**
+ * Watcher of TMG files folder reloading messages.xml, messages.corpus, messagetemplates.xml, config.xml and containerconfig.json
+ * when they change.
+ * Files are reparsed on the watcher thread and published as a new snapshot, senders keep using the previous one meanwhile.
+ */
+public class TMGFilesWatcher implements Runnable {
+
+    private static final Logger log = Logger.getLogger(TMGFilesWatcher.class.getName());
+
+    private static final String MESSAGES_FILE_SOURCE = "messages.xml";
+    private static final String MESSAGES_CORPUS_FILE_SOURCE = "messages.corpus";
+    private static final String CONFIG_FILE_SOURCE = "config.xml";
+    private static final String CONTAINER_CONFIG_FILE_SOURCE = "containerconfig.json";
+    private static final String MESSAGE_TEMPLATES_FILE_SOURCE = "messagetemplates.xml";
+
+    /**
+     * Time in milliseconds without further events after which changed files are reloaded,
+     * so a file being written is reloaded once it is complete.
+     */
+    private static final long SETTLE_TIME = 500;
+
+    private final WatchService watchService;
+
+    private TMGFilesWatcher(WatchService watchService) {
+        this.watchService = watchService;
+    }
+
+    /**
+     * Method starts watching TMG files folder in background thread.
+     */
+    public static void start() {
+        try {
+            WatchService watchService = FileSystems.getDefault().newWatchService();
+            TMGFileUtils.getFile("").toPath().register(watchService, StandardWatchEventKinds.ENTRY_CREATE,
+                                                       StandardWatchEventKinds.ENTRY_MODIFY);
+            Thread thread = new Thread(new TMGFilesWatcher(watchService), "tmg-files-watcher");
+            thread.setDaemon(true);
+            thread.start();
+        } catch (IOException e) {
+            log.warning("Can't watch TMG files. Changed files are not reloaded. " + e.getMessage());
+        }
+    }
+
+    @Override
+    public void run() {
+        Set<String> changedFiles = new LinkedHashSet<>();
+        try {
+            while (!Thread.currentThread().isInterrupted()) {
+                WatchKey key = changedFiles.isEmpty() ? watchService.take() : watchService.poll(SETTLE_TIME, TimeUnit.MILLISECONDS);
+                if (key == null) {
+                    changedFiles.forEach(this::reload);
+                    changedFiles.clear();
+                    continue;
+                }
+                for (WatchEvent<?> event : key.pollEvents()) {
+                    if (event.context() instanceof Path) {
+                        String filename = event.context().toString();
+                        changedFiles.add(MESSAGES_CORPUS_FILE_SOURCE.equals(filename) ? MESSAGES_FILE_SOURCE : filename);
+                    }
+                }
+                if (!key.reset()) {
+                    log.warning("TMG files folder is no longer accessible. Changed files are not reloaded.");
+                    return;
+                }
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private void reload(String filename) {
+        try {
+            switch (filename) {
+                case MESSAGES_FILE_SOURCE:
+                    TMGMessageManager.reloadMessageCorpus();
+                    break;
+                case CONFIG_FILE_SOURCE:
+                    TMGConfigManager.reloadConfig();
+                    TMGMessageManager.reloadMessageSource();
+                    ScheduleSender.restartSchedules();
+                    break;
+                case MESSAGE_TEMPLATES_FILE_SOURCE:
+                    TMGMessageManager.reloadMessageSource();
+                    break;
+                case CONTAINER_CONFIG_FILE_SOURCE:
+                    TMGMessageManager.reloadContainerConfig();
+                    break;
+                default:
+                    break;
+            }
+        } catch (Exception e) {
+            log.warning("Error reloading " + filename + ". Previous content is kept. " + e);
+        }
+    }
+}
@@ -12,21 +12,30 @@
 
 package org.eclipse.iofog.tmg.manager;
 
-import org.eclipse.iofog.utils.IOMessageConverter;
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.ByteBufAllocator;
+import org.eclipse.iofog.tmg.storage.AppendOnlyMessageStorage;
+import org.eclipse.iofog.tmg.storage.AsyncMessageStorage;
+import org.eclipse.iofog.tmg.storage.JournalMessageStorage;
+import org.eclipse.iofog.tmg.storage.MessageJournal;
+import org.eclipse.iofog.tmg.storage.MessageStorage;
+import org.eclipse.iofog.tmg.storage.ReceivedMessageStore;
+import org.eclipse.iofog.tmg.storage.ReceivedMessagesExporter;
+import org.eclipse.iofog.tmg.storage.XMLMessageStorage;
 import org.eclipse.iofog.utils.TMGFileUtils;
 import org.eclipse.iofog.utils.elements.IOMessage;
-import org.w3c.dom.Document;
-import org.w3c.dom.Element;
-import org.w3c.dom.Node;
-import org.w3c.dom.NodeList;
+import org.eclipse.iofog.utils.elements.IOMessageView;
 
 import javax.json.Json;
+import javax.json.JsonException;
 import javax.json.JsonObject;
 import javax.json.JsonReader;
+import javax.xml.stream.XMLStreamException;
+import java.io.File;
 import java.io.FileReader;
-import java.util.ArrayList;
+import java.io.IOException;
 import java.util.List;
-import java.util.Random;
+import java.util.concurrent.CopyOnWriteArrayList;
 import java.util.logging.Logger;
 
 /**
@@ -40,13 +49,27 @@ public class TMGMessageManager {
     private static final Logger log = Logger.getLogger(TMGMessageManager.class.getName());
 
     private static final String MESSAGES_FILE_SOURCE = "messages.xml";
+    private static final String MESSAGES_CORPUS_FILE_SOURCE = "messages.corpus";
     private static final String RECEIVED_MESSAGES_FILE_SOURCE = "receivedmessages.xml";
+    private static final String RECEIVED_MESSAGES_LOG_SOURCE = "receivedmessages.log";
+    private static final String RECEIVED_MESSAGES_JOURNAL_NAME = "receivedmessages";
+    private static final String XML_STORAGE_MODE = "xml";
+    private static final String LOG_STORAGE_MODE = "log";
+    private static final String JOURNAL_STORAGE_MODE = "journal";
     public static final String IO_MESSAGE_TAG_NAME = "iomessage";
     private static final String CONTAINER_CONFIG_FILE_SOURCE = "containerconfig.json";
+    private static final String MESSAGE_TEMPLATES_FILE_SOURCE = "messagetemplates.xml";
+    private static final String CORPUS_MESSAGE_SOURCE = "corpus";
+    private static final String TEMPLATE_MESSAGE_SOURCE = "template";
+    private static final String REPLAY_MESSAGE_SOURCE = "replay";
+    // consumer of messages taken by REST API, positioned in replayed capture separately from data schedules
+    private static final Object REST_CONSUMER = new Object();
 
-    private static Document messagesFile;
-    private static Document receivedMessagesFile;
-    private static JsonObject containerConfig;
+    private static MessageStorage messageStorage;
+    private static final ReceivedMessageStore receivedMessageStore =
+            new ReceivedMessageStore(TMGConfigManager.getReceivedMessagesMaxCount(), TMGConfigManager.getReceivedMessagesMaxBytes(),
+                                     TMGConfigManager.getReceivedMessagesMaxAge());
+    private static final List<Runnable> containerConfigListeners = new CopyOnWriteArrayList<>();
 
     /**
      * Method returns all IOMessages from messages.xml.
@@ -54,13 +77,7 @@ public class TMGMessageManager {
      * @return List<IOMessage>
      */
     public static List<IOMessage> getAllMessages() {
-        NodeList xmlMessagesList = getMessagesFile().getElementsByTagName(IO_MESSAGE_TAG_NAME);
-        List<IOMessage> messages = new ArrayList<>(xmlMessagesList.getLength());
-        for (int i = 0; i < xmlMessagesList.getLength(); i++) {
-            Node xmlMessage = xmlMessagesList.item(i);
-            messages.add(IOMessageConverter.getMessageFromNode(xmlMessage));
-        }
-        return messages;
+        return getMessageCorpus().getMessages();
     }
 
     /**
@@ -69,20 +86,181 @@ public class TMGMessageManager {
      * @return IOMessage
      */
     public static IOMessage getRandomMessage() {
-        NodeList xmlMessagesList = getMessagesFile().getElementsByTagName(IO_MESSAGE_TAG_NAME);
-        int randomIndex = new Random().nextInt(xmlMessagesList.getLength());
-        return IOMessageConverter.getMessageFromNode(xmlMessagesList.item(randomIndex));
+        MessageCorpus corpus = getMessageCorpus();
+        return corpus.getMessage(corpus.getRandomIndex());
+    }
+
+    /**
+     * Method returns ready to send binary frame content of next IOMessage of message source
+     * selected in config.xml: random message of messages.xml, message generated from messagetemplates.xml
+     * or next message of replayed capture. Every consumer replays capture from its own position.
+     *
+     * @param consumer - consumer of message, e.g. sink of data schedule
+     * @param alloc - allocator used if frame has to be built
+     * @return ByteBuf or null if replayed capture hasn't got next message ready yet
+     */
+    public static ByteBuf getNextMessageFrame(Object consumer, ByteBufAllocator alloc) {
+        return UsageCounter.useCurrent(TMGMessageManager::getMessageSource, source -> source.nextFrame(consumer, alloc));
+    }
+
+    /**
+     * Method returns time in nanoseconds until next IOMessage of message source is due for consumer,
+     * negative value means messages are sent at data message interval of config.xml
+     *
+     * @param consumer - consumer of message, e.g. sink of data schedule
+     * @return long
+     */
+    public static long getNextMessageDelay(Object consumer) {
+        return UsageCounter.useCurrent(TMGMessageManager::getMessageSource, source -> source.getNextMessageDelay(consumer));
+    }
+
+    /**
+     * Method releases position of consumer which no longer takes messages, e.g. of stopped data schedule.
+     *
+     * @param consumer - consumer of messages
+     */
+    public static void releaseMessageConsumer(Object consumer) {
+        if (TMGSnapshot.get().getMessageSource() == null) {
+            return;
+        }
+        UsageCounter.useCurrent(TMGMessageManager::getMessageSource, source -> {
+            source.release(consumer);
+            return null;
+        });
+    }
+
+    /**
+     * Method writes JSON representation of next IOMessage of message source selected in config.xml.
+     * REST API is a single consumer of its own, it doesn't take messages of data schedules.
+     *
+     * @param out - buffer to write to
+     * @return false if replayed capture hasn't got next message ready yet and nothing was written
+     */
+    public static boolean writeNextMessageJson(ByteBuf out) {
+        return UsageCounter.useCurrent(TMGMessageManager::getMessageSource, source -> source.writeNextJson(REST_CONSUMER, out));
     }
 
     /**
-     * Method saves IOMessages to receivedmessages.xml
+     * Method compiles messages.xml into binary messages.corpus, which is used instead of messages.xml
+     * while it is newer than messages.xml
+     *
+     * @return number of compiled messages
+     */
+    public static int compileMessageCorpus() throws IOException, XMLStreamException {
+        return MappedMessageCorpus.compile(TMGFileUtils.getFile(MESSAGES_FILE_SOURCE), TMGFileUtils.getFile(MESSAGES_CORPUS_FILE_SOURCE));
+    }
+
+    /**
+     * Method saves IOMessages to receivedmessages.xml and makes it available for messages query.
      *
      * @param message - IOMessage to be saved
+     * @return result of saving
      */
-    public static void saveMessage(IOMessage message) {
-        Element rootElement = getReceivedMessagesFile().getDocumentElement();
-        rootElement.appendChild(IOMessageConverter.getElementFromMessage(message, getReceivedMessagesFile()));
-        TMGFileUtils.saveFile(getReceivedMessagesFile(), RECEIVED_MESSAGES_FILE_SOURCE);
+    public static MessageStorage.SaveResult saveMessage(IOMessage message) {
+        MessageStorage.SaveResult result = getMessageStorage().save(message);
+        if (result == MessageStorage.SaveResult.ACCEPTED) {
+            receivedMessageStore.add(message);
+        }
+        return result;
+    }
+
+    /**
+     * Method tells if saving may wait for storage queue (storage queue policy "block").
+     * Such saves must be made outside of socket event loops.
+     *
+     * @return boolean
+     */
+    public static boolean isMessageStorageBlocking() {
+        MessageStorage storage = getMessageStorage();
+        return storage instanceof AsyncMessageStorage && ((AsyncMessageStorage) storage).isBlocking();
+    }
+
+    /**
+     * Method saves IOMessage received in binary form to storage and makes it available for messages query.
+     * Message is copied from view as it is and decoded only by storages which need it.
+     *
+     * @param view - view of IOMessage to be saved, valid only during the call
+     * @return result of saving
+     */
+    public static MessageStorage.SaveResult saveMessage(IOMessageView view) {
+        MessageStorage.SaveResult result = getMessageStorage().save(view);
+        if (result == MessageStorage.SaveResult.ACCEPTED) {
+            receivedMessageStore.add(view);
+        }
+        return result;
+    }
+
+    /**
+     * Method returns received IOMessages of publishers with timestamps within timeframe.
+     * Messages evicted by retention limits are not returned, which is reported to log.
+     *
+     * @param publishers - publishers of messages
+     * @param timeframeStart - start of timeframe
+     * @param timeframeEnd - end of timeframe
+     * @return List<IOMessage>
+     */
+    public static List<IOMessage> queryReceivedMessages(List<String> publishers, long timeframeStart, long timeframeEnd) {
+        List<IOMessage> messages = receivedMessageStore.query(publishers, timeframeStart, timeframeEnd);
+        if (receivedMessageStore.isTruncated(publishers, timeframeStart)) {
+            log.warning("Messages query result is truncated by retention limits. Evicted messages: " + receivedMessageStore.getEvictedByCount()
+                        + " by count, " + receivedMessageStore.getEvictedBySize() + " by size, "
+                        + receivedMessageStore.getEvictedByAge() + " by age. Messages too big to be kept: "
+                        + receivedMessageStore.getRejectedBySize() + ".");
+        }
+        return messages;
+    }
+
+    /**
+     * Method returns store of received IOMessages used for messages query.
+     *
+     * @return ReceivedMessageStore
+     */
+    public static ReceivedMessageStore getReceivedMessageStore() {
+        return receivedMessageStore;
+    }
+
+    /**
+     * Method exports append-only message log, or message journal in journal mode, to receivedmessages.xml
+     *
+     * @return number of exported messages
+     */
+    public static int exportReceivedMessages() {
+        if (messageStorage != null) {
+            messageStorage.flush();
+        }
+        if (JOURNAL_STORAGE_MODE.equals(TMGConfigManager.getStorageMode())) {
+            return ReceivedMessagesExporter.exportToXML(getReceivedMessagesJournal(), TMGFileUtils.getFile(RECEIVED_MESSAGES_FILE_SOURCE));
+        }
+        return ReceivedMessagesExporter.exportToXML(TMGFileUtils.getFile(RECEIVED_MESSAGES_LOG_SOURCE),
+                                                    TMGFileUtils.getFile(RECEIVED_MESSAGES_FILE_SOURCE));
+    }
+
+    /**
+     * Method returns journal of received messages used in journal storage mode.
+     *
+     * @return MessageJournal
+     */
+    public static MessageJournal getReceivedMessagesJournal() {
+        return new MessageJournal(TMGFileUtils.getFile(""), RECEIVED_MESSAGES_JOURNAL_NAME);
+    }
+
+    /**
+     * Method flushes and closes storage of received messages.
+     * In log mode the log is also exported to receivedmessages.xml, journal is kept in its binary form.
+     */
+    public static synchronized void closeMessageStorage() {
+        if (messageStorage == null) {
+            return;
+        }
+        MessageStorage storage = messageStorage;
+        messageStorage = null;
+        storage.close();
+        if (storage instanceof AsyncMessageStorage) {
+            storage = ((AsyncMessageStorage) storage).getStorage();
+        }
+        if (storage instanceof AppendOnlyMessageStorage) {
+            log.info("Exported " + exportReceivedMessages() + " received messages to " + RECEIVED_MESSAGES_FILE_SOURCE);
+        }
     }
 
     /**
@@ -91,37 +269,277 @@ public class TMGMessageManager {
      * @return JsonObject
      */
     public static JsonObject getContainerConfig() {
-        if (containerConfig == null) {
-            FileReader fileReader = TMGFileUtils.readFile(CONTAINER_CONFIG_FILE_SOURCE);
-            if (fileReader != null) {
-                JsonReader reader = Json.createReader(fileReader);
-                JsonObject config = reader.readObject();
-                containerConfig = Json.createObjectBuilder()
-                                      .add("status", "okay")
-                                      .add("config", config.toString()).build();
-                reader.close();
+        return TMGSnapshot.getContainerConfig(TMGMessageManager::loadContainerConfig);
+    }
+
+    /**
+     * Method returns maximum number of unacknowledged IOMessages of message socket from config.xml
+     *
+     * @return int
+     */
+    public static int getMessageWindowSize() {
+        return TMGConfigManager.getMessageWindowSize();
+    }
+
+    /**
+     * Method returns time in milliseconds an unacknowledged IOMessage is sent again after from config.xml
+     *
+     * @return long
+     */
+    public static long getMessageRetransmitTimeout() {
+        return TMGConfigManager.getMessageRetransmitTimeout();
+    }
+
+    /**
+     * Method returns number of retransmissions of unacknowledged IOMessage before message socket is closed from config.xml
+     *
+     * @return int
+     */
+    public static int getMessageMaxRetransmits() {
+        return TMGConfigManager.getMessageMaxRetransmits();
+    }
+
+    /**
+     * Method returns time a socket may stay silent before it is pinged from config.xml
+     *
+     * @return long
+     */
+    public static long getHeartbeatInterval() {
+        return TMGConfigManager.getHeartbeatInterval();
+    }
+
+    /**
+     * Method returns deflate level of compressed control sockets from config.xml
+     *
+     * @return int
+     */
+    public static int getControlCompressionLevel() {
+        return TMGConfigManager.getControlCompressionLevel();
+    }
+
+    /**
+     * Method returns minimal size of compressed control socket message from config.xml
+     *
+     * @return int
+     */
+    public static int getControlCompressionThreshold() {
+        return TMGConfigManager.getControlCompressionThreshold();
+    }
+
+    /**
+     * Method returns deflate level of compressed message sockets from config.xml
+     *
+     * @return int
+     */
+    public static int getMessageCompressionLevel() {
+        return TMGConfigManager.getMessageCompressionLevel();
+    }
+
+    /**
+     * Method returns minimal size of compressed message socket message from config.xml
+     *
+     * @return int
+     */
+    public static int getMessageCompressionThreshold() {
+        return TMGConfigManager.getMessageCompressionThreshold();
+    }
+
+    /**
+     * Method registers listener called after changed containerconfig.json has been reloaded.
+     *
+     * @param listener - listener to be called
+     */
+    public static void addContainerConfigListener(Runnable listener) {
+        containerConfigListeners.add(listener);
+    }
+
+    /**
+     * Method unregisters listener of changed containerconfig.json
+     *
+     * @param listener - listener to be removed
+     */
+    public static void removeContainerConfigListener(Runnable listener) {
+        containerConfigListeners.remove(listener);
+    }
+
+    /**
+     * Method rereads containerconfig.json and publishes it in a new snapshot.
+     * Listeners are notified if configuration has changed.
+     */
+    static void reloadContainerConfig() {
+        JsonObject containerConfig = loadContainerConfig();
+        JsonObject previous = TMGSnapshot.get().getContainerConfig();
+        TMGSnapshot.update(snapshot -> snapshot.withContainerConfig(containerConfig));
+        log.info("Reloaded " + CONTAINER_CONFIG_FILE_SOURCE);
+        if (containerConfig != null && !containerConfig.equals(previous)) {
+            for (Runnable listener : containerConfigListeners) {
                 try {
-                    fileReader.close();
+                    listener.run();
                 } catch (Exception e) {
-                    log.info("Error closing file reader stream for configuration JSON file.");
+                    log.warning("Error notifying about changed container config. " + e);
                 }
             }
         }
+    }
+
+    /**
+     * Method reloads message corpus from messages.corpus or messages.xml and publishes it in a new snapshot.
+     * Corpus is not loaded if it wasn't used yet. Previous corpus is closed, messages being sent from it stay valid.
+     */
+    static void reloadMessageCorpus() {
+        if (TMGSnapshot.get().getCorpus() == null) {
+            return;
+        }
+        MessageCorpus corpus = loadMessageCorpus();
+        if (corpus.size() == 0) {
+            corpus.close();
+            log.warning("Reloaded message corpus is empty. Previous corpus is kept.");
+            return;
+        }
+        MessageCorpus[] previous = new MessageCorpus[1];
+        TMGSnapshot.update(snapshot -> {
+            previous[0] = snapshot.getCorpus();
+            return snapshot.withCorpus(corpus);
+        });
+        previous[0].close();
+        log.info("Reloaded message corpus of " + corpus.size() + " messages");
+    }
+
+    /**
+     * Method recreates message source from config.xml and messagetemplates.xml and publishes it in a new snapshot.
+     * Source is not created if it wasn't used yet. Previous source is closed as soon as calls still using it return.
+     */
+    static void reloadMessageSource() {
+        if (TMGSnapshot.get().getMessageSource() == null) {
+            return;
+        }
+        MessageSource messageSource = createMessageSource();
+        MessageSource[] previous = new MessageSource[1];
+        TMGSnapshot.update(snapshot -> {
+            previous[0] = snapshot.getMessageSource();
+            return snapshot.withMessageSource(messageSource);
+        });
+        previous[0].close();
+        log.info("Reloaded message source");
+    }
+
+    private static MessageSource getMessageSource() {
+        return TMGSnapshot.getMessageSource(TMGMessageManager::createMessageSource);
+    }
+
+    private static MessageSource createMessageSource() {
+        return new SharedMessageSource(createSelectedMessageSource());
+    }
+
+    private static MessageSource createSelectedMessageSource() {
+        String source = TMGConfigManager.getMessageSource();
+        if (TEMPLATE_MESSAGE_SOURCE.equals(source)) {
+            MessageSource generator = TemplateMessageGenerator.create(TMGFileUtils.getXMLDocument(MESSAGE_TEMPLATES_FILE_SOURCE));
+            if (generator != null) {
+                return generator;
+            }
+            log.warning("No valid message templates in " + MESSAGE_TEMPLATES_FILE_SOURCE + ". Switching to use messages of " + MESSAGES_FILE_SOURCE + ".");
+        } else if (REPLAY_MESSAGE_SOURCE.equals(source)) {
+            String replayFile = TMGConfigManager.getReplayFile();
+            MessageSource replay = ReplayMessageSource.create(TMGFileUtils.getFile(""), replayFile, TMGConfigManager.getReplaySpeed(),
+                                                              TMGConfigManager.getReplayReadAhead());
+            if (replay != null) {
+                return replay;
+            }
+            log.warning("Can't find replay capture " + replayFile + ". Switching to use messages of " + MESSAGES_FILE_SOURCE + ".");
+        } else if (!CORPUS_MESSAGE_SOURCE.equals(source)) {
+            log.info("Unknown message source " + source + ". Switching to use default value = corpus.");
+        }
+        return new CorpusMessageSource(TMGMessageManager::getMessageCorpus);
+    }
+
+    private static JsonObject loadContainerConfig() {
+        FileReader fileReader = TMGFileUtils.readFile(CONTAINER_CONFIG_FILE_SOURCE);
+        if (fileReader == null) {
+            return null;
+        }
+        JsonObject containerConfig = null;
+        try (JsonReader reader = Json.createReader(fileReader)) {
+            JsonObject config = reader.readObject();
+            containerConfig = Json.createObjectBuilder()
+                                  .add("status", "okay")
+                                  .add("config", config.toString()).build();
+        } catch (JsonException e) {
+            log.warning("Error parsing " + CONTAINER_CONFIG_FILE_SOURCE + ". " + e.getMessage());
+        }
+        try {
+            fileReader.close();
+        } catch (Exception e) {
+            log.info("Error closing file reader stream for configuration JSON file.");
+        }
         return containerConfig;
     }
 
-    private static Document getMessagesFile() {
-        if (messagesFile == null) {
-            messagesFile = TMGFileUtils.getXMLDocument(MESSAGES_FILE_SOURCE);
+    private static MessageCorpus getMessageCorpus() {
+        return TMGSnapshot.getCorpus(TMGMessageManager::loadMessageCorpus);
+    }
+
+    private static MessageCorpus loadMessageCorpus() {
+        File xmlFile = TMGFileUtils.getFile(MESSAGES_FILE_SOURCE);
+        File corpusFile = TMGFileUtils.getFile(MESSAGES_CORPUS_FILE_SOURCE);
+        if (corpusFile.exists()) {
+            if (xmlFile.exists() && corpusFile.lastModified() < xmlFile.lastModified()) {
+                log.info(MESSAGES_CORPUS_FILE_SOURCE + " is older than " + MESSAGES_FILE_SOURCE + ". Loading " + MESSAGES_FILE_SOURCE + ".");
+            } else {
+                try {
+                    return MappedMessageCorpus.open(corpusFile);
+                } catch (IOException e) {
+                    log.warning("Can't open " + MESSAGES_CORPUS_FILE_SOURCE + ". Loading " + MESSAGES_FILE_SOURCE + ". " + e.getMessage());
+                }
+            }
+        }
+        return MessageCorpusLoader.load(xmlFile, TMGConfigManager.getCorpusLoadThreads());
+    }
+
+    private static synchronized MessageStorage getMessageStorage() {
+        if (messageStorage == null) {
+            messageStorage = createMessageStorage();
+        }
+        return messageStorage;
+    }
+
+    private static MessageStorage createMessageStorage() {
+        MessageStorage storage = createStorage();
+        int queueSize = TMGConfigManager.getStorageQueueSize();
+        if (queueSize <= 0) {
+            return storage;
+        }
+        String queuePolicy = TMGConfigManager.getStorageQueuePolicy();
+        AsyncMessageStorage.QueueFullPolicy policy;
+        try {
+            policy = AsyncMessageStorage.QueueFullPolicy.valueOf(queuePolicy.toUpperCase());
+        } catch (IllegalArgumentException e) {
+            log.info("Unknown storage queue policy " + queuePolicy + ". Switching to use default value = reject.");
+            policy = AsyncMessageStorage.QueueFullPolicy.REJECT;
         }
-        return messagesFile;
+        return new AsyncMessageStorage(storage, queueSize, policy);
     }
 
-    private static Document getReceivedMessagesFile() {
-        if (receivedMessagesFile == null) {
-            receivedMessagesFile = TMGFileUtils.getXMLDocument(RECEIVED_MESSAGES_FILE_SOURCE);
+    private static MessageStorage createStorage() {
+        String storageMode = TMGConfigManager.getStorageMode();
+        if (LOG_STORAGE_MODE.equals(storageMode)) {
+            try {
+                return new AppendOnlyMessageStorage(TMGFileUtils.getFile(RECEIVED_MESSAGES_LOG_SOURCE),
+                                                    TMGConfigManager.getStorageFlushInterval());
+            } catch (IOException e) {
+                log.warning("Can't open message log " + RECEIVED_MESSAGES_LOG_SOURCE + ". Switching to xml storage mode. " + e.getMessage());
+            }
+        } else if (JOURNAL_STORAGE_MODE.equals(storageMode)) {
+            try {
+                return new JournalMessageStorage(getReceivedMessagesJournal(), TMGConfigManager.getJournalSegmentSize(),
+                                                 TMGConfigManager.getJournalRetention(), TMGConfigManager.getStorageFlushInterval());
+            } catch (IOException e) {
+                log.warning("Can't open message journal " + RECEIVED_MESSAGES_JOURNAL_NAME + ". Switching to xml storage mode. " + e.getMessage());
+            }
+        } else if (!XML_STORAGE_MODE.equals(storageMode)) {
+            log.info("Unknown storage mode " + storageMode + ". Switching to use default value = xml.");
         }
-        return receivedMessagesFile;
+        return new XMLMessageStorage(RECEIVED_MESSAGES_FILE_SOURCE);
     }
 
 }
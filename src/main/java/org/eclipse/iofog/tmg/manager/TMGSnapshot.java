@@ -0,0 +1,155 @@
+/*
+ * *******************************************************************************
+ *   Copyright (c) 2018 Edgeworx, Inc.
+ *
+ *   This program and the accompanying materials are made available under the
+ *   terms of the Eclipse Public License v. 2.0 which is available at
+ *   http://www.eclipse.org/legal/epl-2.0
+ *
+ *   SPDX-License-Identifier: EPL-2.0
+ * *******************************************************************************
+ */
+
+package org.eclipse.iofog.tmg.manager;
+
+import javax.json.JsonObject;
+import java.util.function.BiFunction;
+import java.util.function.Function;
+import java.util.function.Supplier;
+import java.util.function.UnaryOperator;
+
+/**
+ * Immutable snapshot of state loaded from TMG files: configuration, container configuration, message corpus
+ * and source of sent messages.
+ * Current snapshot is published through a single volatile reference and replaced as a whole when a file is reloaded,
+ * so readers never take locks and never see partially loaded state.
+ * Parts of snapshot are loaded on first use, a part which wasn't loaded yet is null.
+ */
+final class TMGSnapshot {
+
+    private static volatile TMGSnapshot current = new TMGSnapshot(null, null, null, null);
+
+    private static final Object CONFIG_LOAD_LOCK = new Object();
+    private static final Object CONTAINER_CONFIG_LOAD_LOCK = new Object();
+    private static final Object CORPUS_LOAD_LOCK = new Object();
+    private static final Object MESSAGE_SOURCE_LOAD_LOCK = new Object();
+
+    private final TMGConfig config;
+    private final JsonObject containerConfig;
+    private final MessageCorpus corpus;
+    private final MessageSource messageSource;
+
+    private TMGSnapshot(TMGConfig config, JsonObject containerConfig, MessageCorpus corpus, MessageSource messageSource) {
+        this.config = config;
+        this.containerConfig = containerConfig;
+        this.corpus = corpus;
+        this.messageSource = messageSource;
+    }
+
+    static TMGSnapshot get() {
+        return current;
+    }
+
+    /**
+     * Method replaces current snapshot with updated one.
+     *
+     * @param update - function building new snapshot from current one
+     * @return new snapshot
+     */
+    static synchronized TMGSnapshot update(UnaryOperator<TMGSnapshot> update) {
+        current = update.apply(current);
+        return current;
+    }
+
+    /**
+     * Method returns config values from current snapshot, loading them first if they weren't loaded yet.
+     *
+     * @param loader - loader of config.xml
+     * @return TMGConfig
+     */
+    static TMGConfig getConfig(Supplier<TMGConfig> loader) {
+        return getOrLoad(CONFIG_LOAD_LOCK, TMGSnapshot::getConfig, TMGSnapshot::withConfig, loader);
+    }
+
+    /**
+     * Method returns container config from current snapshot, loading it first if it wasn't loaded yet.
+     *
+     * @param loader - loader of containerconfig.json
+     * @return JsonObject
+     */
+    static JsonObject getContainerConfig(Supplier<JsonObject> loader) {
+        return getOrLoad(CONTAINER_CONFIG_LOAD_LOCK, TMGSnapshot::getContainerConfig, TMGSnapshot::withContainerConfig, loader);
+    }
+
+    /**
+     * Method returns message corpus from current snapshot, loading it first if it wasn't loaded yet.
+     *
+     * @param loader - loader of message corpus
+     * @return MessageCorpus
+     */
+    static MessageCorpus getCorpus(Supplier<MessageCorpus> loader) {
+        return getOrLoad(CORPUS_LOAD_LOCK, TMGSnapshot::getCorpus, TMGSnapshot::withCorpus, loader);
+    }
+
+    /**
+     * Method returns message source from current snapshot, creating it first if it wasn't created yet.
+     *
+     * @param loader - factory of message source
+     * @return MessageSource
+     */
+    static MessageSource getMessageSource(Supplier<MessageSource> loader) {
+        return getOrLoad(MESSAGE_SOURCE_LOAD_LOCK, TMGSnapshot::getMessageSource, TMGSnapshot::withMessageSource, loader);
+    }
+
+    /**
+     * Method returns part of current snapshot, loading it first if it wasn't loaded yet.
+     * Every part is loaded under its own lock, so loading one part (e.g. a large corpus) doesn't block readers
+     * of other parts, and only the short publishing of loaded part goes through {@link #update(UnaryOperator)}.
+     */
+    private static <T> T getOrLoad(Object loadLock, Function<TMGSnapshot, T> part, BiFunction<TMGSnapshot, T, TMGSnapshot> with,
+                                   Supplier<T> loader) {
+        T value = part.apply(current);
+        if (value == null) {
+            synchronized (loadLock) {
+                value = part.apply(current);
+                if (value == null) {
+                    T loaded = loader.get();
+                    value = part.apply(update(snapshot -> part.apply(snapshot) == null ? with.apply(snapshot, loaded) : snapshot));
+                }
+            }
+        }
+        return value;
+    }
+
+    TMGConfig getConfig() {
+        return config;
+    }
+
+    JsonObject getContainerConfig() {
+        return containerConfig;
+    }
+
+    MessageCorpus getCorpus() {
+        return corpus;
+    }
+
+    MessageSource getMessageSource() {
+        return messageSource;
+    }
+
+    TMGSnapshot withConfig(TMGConfig config) {
+        return new TMGSnapshot(config, containerConfig, corpus, messageSource);
+    }
+
+    TMGSnapshot withContainerConfig(JsonObject containerConfig) {
+        return new TMGSnapshot(config, containerConfig, corpus, messageSource);
+    }
+
+    TMGSnapshot withCorpus(MessageCorpus corpus) {
+        return new TMGSnapshot(config, containerConfig, corpus, messageSource);
+    }
+
+    TMGSnapshot withMessageSource(MessageSource messageSource) {
+        return new TMGSnapshot(config, containerConfig, corpus, messageSource);
+    }
+}
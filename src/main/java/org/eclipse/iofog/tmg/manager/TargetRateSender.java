@@ -0,0 +1,170 @@
+/*
+ * *******************************************************************************
+ *   Copyright (c) 2018 Edgeworx, Inc.
+ *
+ *   This program and the accompanying materials are made available under the
+ *   terms of the Eclipse Public License v. 2.0 which is available at
+ *   http://www.eclipse.org/legal/epl-2.0
+ *
+ *   SPDX-License-Identifier: EPL-2.0
+ * *******************************************************************************
+ */
+
+package org.eclipse.iofog.tmg.manager;
+
+import io.netty.buffer.ByteBuf;
+import io.netty.util.concurrent.ScheduledFuture;
+
+import java.util.SplittableRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Logger;
+
+/**
+ * Sender of IOMessages to a {@link MessageSink} following target rate of a {@link TrafficShape}.
+ * Runs on executor of the sink, which is event loop of the socket channel for one ioContainer. Every message has intended send time given by the shape, so tokens
+ * of the bucket accrue from intended send times: messages which couldn't be sent during a stall (busy loop,
+ * unwritable channel, replayed capture not read yet) are sent as soon as possible afterwards and show up as send lag instead of lowering the rate.
+ * A tick sends at most a bounded batch and flushes once, so other channels of the loop aren't starved.
+ * Target and achieved rate are logged for every report interval.
+ */
+class TargetRateSender implements Runnable {
+
+    private static final Logger log = Logger.getLogger(TargetRateSender.class.getName());
+
+    private static final int MAX_BATCH = 1024;
+    private static final long MIN_TICK_NANOS = TimeUnit.MILLISECONDS.toNanos(1);
+    private static final double NANOS_PER_SECOND = TimeUnit.SECONDS.toNanos(1);
+
+    private final MessageSink mSink;
+    private final String mName;
+    private final TrafficShape mShape;
+    private final double mEndNanos;
+    private final long mReportInterval;
+    private final SplittableRandom mRandom = new SplittableRandom();
+
+    private long mStartNanos;
+    private double mNextCount;
+    private double mNextNanos;
+    private long mSent;
+    private long mMaxLagNanos;
+    private long mTotalLagNanos;
+    private boolean mStopped;
+    private ScheduledFuture<?> mReporter;
+
+    private long mReportNanos;
+    private long mReportSent;
+    private long mReportMaxLagNanos;
+
+    /**
+     * @param pSink - destination of messages
+     * @param pName - name of destination in reports
+     * @param pShape - shape of target rate
+     * @param pDuration - time in milliseconds to send for, 0 means until shape ends or socket is closed
+     * @param pReportInterval - interval in milliseconds of achieved rate reports, 0 means final report only
+     */
+    TargetRateSender(MessageSink pSink, String pName, TrafficShape pShape, long pDuration, long pReportInterval) {
+        mSink = pSink;
+        mName = pName;
+        mShape = pShape;
+        double shapeEndNanos = pShape.getDuration() * NANOS_PER_SECOND;
+        mEndNanos = pDuration > 0 ? Math.min(shapeEndNanos, TimeUnit.MILLISECONDS.toNanos(pDuration)) : shapeEndNanos;
+        mReportInterval = pReportInterval;
+    }
+
+    void start() {
+        mSink.executor().execute(() -> {
+            mStartNanos = System.nanoTime();
+            mReportNanos = mStartNanos;
+            mNextCount = mShape.isPoisson(0) ? nextExponential() : 0;
+            mNextNanos = mShape.timeOf(mNextCount) * NANOS_PER_SECOND;
+            if (mReportInterval > 0) {
+                mReporter = mSink.executor().scheduleAtFixedRate(this::report, mReportInterval, mReportInterval, TimeUnit.MILLISECONDS);
+            }
+            run();
+        });
+    }
+
+    @Override
+    public void run() {
+        if (mStopped) {
+            return;
+        }
+        long elapsed = System.nanoTime() - mStartNanos;
+        int batch = 0;
+        boolean ready = true;
+        while (mNextNanos <= elapsed && mNextNanos < mEndNanos && batch < MAX_BATCH && mSink.isWritable()) {
+            ByteBuf frame = TMGMessageManager.getNextMessageFrame(mSink, mSink.alloc());
+            if (frame == null) {
+                // replayed capture is still being read, the message is sent late and shows up as send lag
+                ready = false;
+                break;
+            }
+            long lag = elapsed - (long) mNextNanos;
+            mMaxLagNanos = Math.max(mMaxLagNanos, lag);
+            mReportMaxLagNanos = Math.max(mReportMaxLagNanos, lag);
+            mTotalLagNanos += lag;
+            mSink.write(frame);
+            mSent++;
+            batch++;
+            mNextCount += mShape.isPoisson(mNextNanos / NANOS_PER_SECOND) ? nextExponential() : 1;
+            mNextNanos = mShape.timeOf(mNextCount) * NANOS_PER_SECOND;
+        }
+        if (batch > 0) {
+            mSink.flush();
+        }
+        if (mNextNanos >= mEndNanos) {
+            stop();
+            return;
+        }
+        if (ready && mNextNanos <= elapsed && mSink.isWritable()) {
+            mSink.executor().execute(this);
+        } else {
+            long nextNanos = mStartNanos + (long) mNextNanos - System.nanoTime();
+            mSink.executor().schedule(this, Math.max(nextNanos, MIN_TICK_NANOS), TimeUnit.NANOSECONDS);
+        }
+    }
+
+    /**
+     * Method stops sending and reports achieved rate against target.
+     */
+    void stop() {
+        if (!mSink.executor().inEventLoop()) {
+            mSink.executor().execute(this::stop);
+            return;
+        }
+        if (mStopped) {
+            return;
+        }
+        mStopped = true;
+        if (mReporter != null) {
+            mReporter.cancel(false);
+        }
+        TMGMessageManager.releaseMessageConsumer(mSink);
+        long now = System.nanoTime();
+        double seconds = (now - mStartNanos) / NANOS_PER_SECOND;
+        double expected = mShape.count(Math.min(now - mStartNanos, mEndNanos) / NANOS_PER_SECOND);
+        log.info(String.format("%s: target %.1f msg/s, achieved %.1f msg/s (%d of %.0f messages in %.3f s), send lag: mean %.3f ms, max %.3f ms, %s",
+                               mName, expected / seconds, mSent / seconds, mSent, expected, seconds,
+                               mSent == 0 ? 0 : mTotalLagNanos / 1e6 / mSent, mMaxLagNanos / 1e6, mSink.getStats()));
+    }
+
+    /**
+     * Method logs one point of time series of target and achieved rate.
+     */
+    private void report() {
+        long now = System.nanoTime();
+        double from = (mReportNanos - mStartNanos) / NANOS_PER_SECOND;
+        double to = (now - mStartNanos) / NANOS_PER_SECOND;
+        double seconds = to - from;
+        log.info(String.format("%s rate at %.2f s: target %.1f msg/s, achieved %.1f msg/s, max send lag %.3f ms, %s",
+                               mName, to, (mShape.count(to) - mShape.count(from)) / seconds,
+                               (mSent - mReportSent) / seconds, mReportMaxLagNanos / 1e6, mSink.getStats()));
+        mReportNanos = now;
+        mReportSent = mSent;
+        mReportMaxLagNanos = 0;
+    }
+
+    private double nextExponential() {
+        return -Math.log(1 - mRandom.nextDouble());
+    }
+}
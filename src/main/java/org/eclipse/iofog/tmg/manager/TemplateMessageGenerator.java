@@ -0,0 +1,177 @@
+/*
+ * *******************************************************************************
+ *   Copyright (c) 2018 Edgeworx, Inc.
+ *
+ *   This program and the accompanying materials are made available under the
+ *   terms of the Eclipse Public License v. 2.0 which is available at
+ *   http://www.eclipse.org/legal/epl-2.0
+ *
+ *   SPDX-License-Identifier: EPL-2.0
+ * *******************************************************************************
+ */
+
+package org.eclipse.iofog.tmg.manager;
+
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.ByteBufAllocator;
+import io.netty.buffer.Unpooled;
+import org.eclipse.iofog.utils.IOMessageEncoder;
+import org.eclipse.iofog.utils.IOMessageJsonWriter;
+import org.eclipse.iofog.utils.elements.IOMessage;
+import org.eclipse.iofog.utils.elements.IOMessageView;
+import org.w3c.dom.Document;
+import org.w3c.dom.Element;
+import org.w3c.dom.NodeList;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.SplittableRandom;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.logging.Logger;
+
+/**
+ * Source of synthetic IOMessages generated from templates of messagetemplates.xml, see {@link MessageTemplate}.
+ * Every thread has its own random generator, reusable messages and content buffer; random content is taken
+ * from a shared pool filled once. So the only allocation per message is the pooled frame buffer itself.
+ */
+class TemplateMessageGenerator implements MessageSource {
+
+    private static final Logger log = Logger.getLogger(TemplateMessageGenerator.class.getName());
+
+    /**
+     * Placeholder of generated id, which has form of UUID like ids generated by ioFog.
+     */
+    private static final String ID_PLACEHOLDER = "00000000-0000-0000-0000-000000000000";
+    private static final byte[] HEX_DIGITS = "0123456789abcdef".getBytes();
+    private static final int MIN_PAYLOAD_POOL_SIZE = 64 * 1024;
+
+    private final MessageTemplate[] templates;
+    private final int[] cumulativeWeights;
+    private final ByteBuf payloadPool;
+    private final SplittableRandom seedRandom = new SplittableRandom();
+    private final ThreadLocal<GeneratorState> state = ThreadLocal.withInitial(this::newState);
+
+    private TemplateMessageGenerator(MessageTemplate[] templates) {
+        this.templates = templates;
+        cumulativeWeights = new int[templates.length];
+        int maxContentSize = 0;
+        for (int i = 0; i < templates.length; i++) {
+            cumulativeWeights[i] = (i == 0 ? 0 : cumulativeWeights[i - 1]) + templates[i].getWeight();
+            maxContentSize = Math.max(maxContentSize, templates[i].getMaxContentSize());
+        }
+        int poolSize = Math.max(MIN_PAYLOAD_POOL_SIZE, 2 * maxContentSize);
+        ByteBuf pool = Unpooled.directBuffer(poolSize, poolSize);
+        ContentSkeleton.writeRandomString(pool, seedRandom.split(), poolSize);
+        payloadPool = Unpooled.unreleasableBuffer(Unpooled.unmodifiableBuffer(pool));
+    }
+
+    /**
+     * Method creates generator from templates document.
+     * Invalid templates are skipped.
+     *
+     * @param document - messagetemplates.xml
+     * @return TemplateMessageGenerator or null if there is no valid template
+     */
+    static TemplateMessageGenerator create(Document document) {
+        if (document == null) {
+            return null;
+        }
+        List<MessageTemplate> templates = new ArrayList<>();
+        Map<String, AtomicInteger> sequences = new HashMap<>();
+        NodeList elements = document.getElementsByTagName(MessageTemplate.TEMPLATE_TAG_NAME);
+        for (int i = 0; i < elements.getLength(); i++) {
+            try {
+                templates.add(MessageTemplate.parse((Element) elements.item(i), sequences));
+            } catch (IllegalArgumentException e) {
+                log.warning("Skipping message template " + (i + 1) + ". " + e.getMessage());
+            }
+        }
+        if (templates.isEmpty()) {
+            return null;
+        }
+        return new TemplateMessageGenerator(templates.toArray(new MessageTemplate[templates.size()]));
+    }
+
+    @Override
+    public ByteBuf nextFrame(Object consumer, ByteBufAllocator alloc) {
+        GeneratorState state = this.state.get();
+        int index = nextTemplateIndex(state.random);
+        MessageTemplate template = templates[index];
+        IOMessage message = state.messages[index];
+        ByteBuf content = state.content.clear();
+        int contentLength = template.prepare(message, state.random, content);
+        ByteBuf contentSource = content;
+        int contentIndex = 0;
+        if (!template.hasSkeleton()) {
+            contentSource = payloadPool;
+            contentIndex = state.random.nextInt(payloadPool.capacity() - contentLength + 1);
+        }
+        ByteBuf frame = alloc.buffer(IOMessageEncoder.FRAME_PREFIX_SIZE + IOMessageEncoder.getEncodedSize(message) + contentLength);
+        int idIndex = frame.writerIndex() + IOMessageEncoder.FRAME_PREFIX_SIZE + IOMessageEncoder.HEADER_SIZE;
+        IOMessageEncoder.encodeFrame(message, contentSource, contentIndex, contentLength, frame);
+        writeId(frame, idIndex, state.random);
+        return frame;
+    }
+
+    /**
+     * Method writes JSON of generated message, which is decoded from its frame.
+     */
+    @Override
+    public boolean writeNextJson(Object consumer, ByteBuf out) {
+        ByteBuf frame = nextFrame(consumer, out.alloc());
+        try {
+            IOMessageJsonWriter.writeMessage(out, new IOMessageView(frame.skipBytes(IOMessageEncoder.FRAME_PREFIX_SIZE)).toMessage());
+        } finally {
+            frame.release();
+        }
+        return true;
+    }
+
+    private int nextTemplateIndex(SplittableRandom random) {
+        if (templates.length == 1) {
+            return 0;
+        }
+        int index = Arrays.binarySearch(cumulativeWeights, random.nextInt(cumulativeWeights[templates.length - 1]) + 1);
+        return index >= 0 ? index : -index - 1;
+    }
+
+    /**
+     * Method replaces id placeholder in encoded message with random UUID like id.
+     */
+    private static void writeId(ByteBuf frame, int index, SplittableRandom random) {
+        long bits = random.nextLong();
+        for (int i = 0; i < ID_PLACEHOLDER.length(); i++) {
+            if (ID_PLACEHOLDER.charAt(i) == '-') {
+                continue;
+            }
+            if (i == 19) {
+                bits = random.nextLong();
+            }
+            frame.setByte(index + i, HEX_DIGITS[(int) (bits & 0xf)]);
+            bits >>>= 4;
+        }
+    }
+
+    private synchronized GeneratorState newState() {
+        IOMessage[] messages = new IOMessage[templates.length];
+        for (int i = 0; i < templates.length; i++) {
+            messages[i] = templates[i].newMessage(ID_PLACEHOLDER);
+        }
+        return new GeneratorState(seedRandom.split(), messages);
+    }
+
+    private static class GeneratorState {
+
+        private final SplittableRandom random;
+        private final IOMessage[] messages;
+        private final ByteBuf content = Unpooled.buffer(1024);
+
+        GeneratorState(SplittableRandom random, IOMessage[] messages) {
+            this.random = random;
+            this.messages = messages;
+        }
+    }
+}
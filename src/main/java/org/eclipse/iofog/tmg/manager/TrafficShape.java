@@ -0,0 +1,337 @@
+/*
+ * *******************************************************************************
+ *   Copyright (c) 2018 Edgeworx, Inc.
+ *
+ *   This program and the accompanying materials are made available under the
+ *   terms of the Eclipse Public License v. 2.0 which is available at
+ *   http://www.eclipse.org/legal/epl-2.0
+ *
+ *   SPDX-License-Identifier: EPL-2.0
+ * *******************************************************************************
+ */
+
+package org.eclipse.iofog.tmg.manager;
+
+import org.w3c.dom.Element;
+import org.w3c.dom.Node;
+import org.w3c.dom.NodeList;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Rate of data messages changing over time, read from &lt;trafficshape&gt; of config.xml.
+ * Shape is a sequence of phases, played once or repeated (attribute repeat="true"):
+ * <pre>
+ * &lt;phase type="constant" duration="MS" rate="R"/&gt;
+ * &lt;phase type="ramp" duration="MS" from="R" to="R"/&gt;                linear change of rate
+ * &lt;phase type="burst" duration="MS" rate="R" burstrate="R" burstlength="MS" period="MS"/&gt;
+ *                                                                        burst at start of every period
+ * &lt;phase type="sine" duration="MS" mean="R" amplitude="R" period="MS"/&gt;
+ * &lt;phase type="poisson" duration="MS" rate="R"/&gt;                      constant rate with Poisson arrivals
+ * </pre>
+ * Rates are in messages per second. Messages of a phase are evenly spaced along its rate,
+ * attribute arrivals="poisson" gives any phase exponentially distributed gaps instead.
+ * Time is in seconds: {@link #count} is expected number of messages sent by given time and
+ * {@link #timeOf} is its inverse, which gives intended send time of every message.
+ */
+class TrafficShape {
+
+    static final String PHASE_TAG_NAME = "phase";
+
+    private final Phase[] phases;
+    private final double[] phaseStarts;
+    private final double[] countsBefore;
+    private final double cycleDuration;
+    private final double cycleCount;
+    private final boolean repeat;
+
+    private TrafficShape(Phase[] phases, boolean repeat) {
+        this.phases = phases;
+        this.repeat = repeat;
+        phaseStarts = new double[phases.length];
+        countsBefore = new double[phases.length];
+        double start = 0;
+        double count = 0;
+        for (int i = 0; i < phases.length; i++) {
+            phaseStarts[i] = start;
+            countsBefore[i] = count;
+            phases[i].total = phases[i].count(phases[i].duration);
+            start += phases[i].duration;
+            count += phases[i].total;
+        }
+        cycleDuration = start;
+        cycleCount = count;
+        if (cycleCount <= 0) {
+            throw new IllegalArgumentException("Traffic shape doesn't send any message");
+        }
+    }
+
+    /**
+     * Method creates shape of constant rate with evenly spaced messages.
+     *
+     * @param rate - messages per second
+     * @return TrafficShape
+     */
+    static TrafficShape constant(double rate) {
+        return new TrafficShape(new Phase[]{new Constant(1, false, rate)}, true);
+    }
+
+    /**
+     * Method parses &lt;trafficshape&gt; element.
+     *
+     * @param shape - trafficshape element
+     * @return TrafficShape
+     * @throws IllegalArgumentException if shape is invalid
+     */
+    static TrafficShape parse(Element shape) {
+        List<Phase> phases = new ArrayList<>();
+        NodeList children = shape.getChildNodes();
+        for (int i = 0; i < children.getLength(); i++) {
+            Node child = children.item(i);
+            if (child.getNodeType() == Node.ELEMENT_NODE && PHASE_TAG_NAME.equals(child.getNodeName())) {
+                phases.add(parsePhase((Element) child, phases.size() + 1));
+            }
+        }
+        if (phases.isEmpty()) {
+            throw new IllegalArgumentException("Traffic shape has no phases");
+        }
+        return new TrafficShape(phases.toArray(new Phase[phases.size()]), Boolean.parseBoolean(shape.getAttribute("repeat")));
+    }
+
+    /**
+     * @return duration of shape in seconds, infinity if shape is repeated
+     */
+    double getDuration() {
+        return repeat ? Double.POSITIVE_INFINITY : cycleDuration;
+    }
+
+    /**
+     * Method returns expected number of messages sent since start of shape.
+     *
+     * @param seconds - time since start of shape
+     * @return double
+     */
+    double count(double seconds) {
+        if (seconds <= 0) {
+            return 0;
+        }
+        if (!repeat && seconds >= cycleDuration) {
+            return cycleCount;
+        }
+        double cycles = repeat ? Math.floor(seconds / cycleDuration) : 0;
+        double time = seconds - cycles * cycleDuration;
+        int i = phaseAt(time);
+        return cycles * cycleCount + countsBefore[i] + phases[i].count(time - phaseStarts[i]);
+    }
+
+    /**
+     * Method returns earliest time by which given number of messages is expected to be sent.
+     *
+     * @param count - number of messages
+     * @return time in seconds since start of shape, infinity if shape ends earlier
+     */
+    double timeOf(double count) {
+        if (count <= 0) {
+            return 0;
+        }
+        if (!repeat && count > cycleCount) {
+            return Double.POSITIVE_INFINITY;
+        }
+        double cycles = repeat ? Math.floor(count / cycleCount) : 0;
+        double rest = count - cycles * cycleCount;
+        int i = 0;
+        while (i < phases.length - 1 && rest > countsBefore[i] + phases[i].total) {
+            i++;
+        }
+        return cycles * cycleDuration + phaseStarts[i] + phases[i].timeOf(Math.min(rest - countsBefore[i], phases[i].total));
+    }
+
+    /**
+     * @param seconds - time since start of shape
+     * @return true if messages at given time have Poisson arrivals
+     */
+    boolean isPoisson(double seconds) {
+        double time = repeat ? seconds - Math.floor(seconds / cycleDuration) * cycleDuration : seconds;
+        return phases[phaseAt(time)].poisson;
+    }
+
+    private int phaseAt(double time) {
+        int i = 0;
+        while (i < phases.length - 1 && time >= phaseStarts[i + 1]) {
+            i++;
+        }
+        return i;
+    }
+
+    private static Phase parsePhase(Element element, int number) {
+        String type = element.getAttribute("type");
+        try {
+            double duration = milliseconds(element, "duration");
+            boolean poisson = "poisson".equals(type) || "poisson".equals(element.getAttribute("arrivals"));
+            if (duration <= 0) {
+                throw new IllegalArgumentException("duration must be positive");
+            }
+            switch (type) {
+                case "constant":
+                case "poisson":
+                    return new Constant(duration, poisson, rate(element, "rate"));
+                case "ramp":
+                    return new Ramp(duration, poisson, rate(element, "from"), rate(element, "to"));
+                case "burst":
+                    return new Burst(duration, poisson, rate(element, "rate"), rate(element, "burstrate"),
+                                     milliseconds(element, "burstlength"), milliseconds(element, "period"));
+                case "sine":
+                    return new Sine(duration, poisson, rate(element, "mean"), rate(element, "amplitude"), milliseconds(element, "period"));
+                default:
+                    throw new IllegalArgumentException("unknown type " + type);
+            }
+        } catch (NumberFormatException e) {
+            throw new IllegalArgumentException("Malformed phase " + number + " of traffic shape. " + e.getMessage());
+        } catch (IllegalArgumentException e) {
+            throw new IllegalArgumentException("Invalid phase " + number + " of traffic shape: " + e.getMessage());
+        }
+    }
+
+    private static double rate(Element element, String name) {
+        double rate = Double.parseDouble(attribute(element, name));
+        if (rate < 0) {
+            throw new IllegalArgumentException(name + " must not be negative");
+        }
+        return rate;
+    }
+
+    private static double milliseconds(Element element, String name) {
+        return Double.parseDouble(attribute(element, name)) / 1000;
+    }
+
+    private static String attribute(Element element, String name) {
+        if (!element.hasAttribute(name)) {
+            throw new IllegalArgumentException(name + " is missing");
+        }
+        return element.getAttribute(name).trim();
+    }
+
+    private abstract static class Phase {
+
+        final double duration;
+        final boolean poisson;
+        double total;
+
+        Phase(double duration, boolean poisson) {
+            this.duration = duration;
+            this.poisson = poisson;
+        }
+
+        /**
+         * @param time - seconds since start of phase, within duration
+         * @return expected number of messages of phase sent by given time
+         */
+        abstract double count(double time);
+
+        /**
+         * Method inverts {@link #count} by bisection, count is non-decreasing as rates are not negative.
+         *
+         * @param count - number of messages within total of phase
+         * @return seconds since start of phase
+         */
+        double timeOf(double count) {
+            double low = 0;
+            double high = duration;
+            for (int i = 0; i < 64 && high - low > 1e-9; i++) {
+                double middle = (low + high) / 2;
+                if (count(middle) < count) {
+                    low = middle;
+                } else {
+                    high = middle;
+                }
+            }
+            return count <= 0 ? 0 : high;
+        }
+    }
+
+    private static class Constant extends Phase {
+
+        private final double rate;
+
+        Constant(double duration, boolean poisson, double rate) {
+            super(duration, poisson);
+            this.rate = rate;
+        }
+
+        @Override
+        double count(double time) {
+            return rate * time;
+        }
+
+        @Override
+        double timeOf(double count) {
+            return count <= 0 ? 0 : count / rate;
+        }
+    }
+
+    private static class Ramp extends Phase {
+
+        private final double from;
+        private final double to;
+
+        Ramp(double duration, boolean poisson, double from, double to) {
+            super(duration, poisson);
+            this.from = from;
+            this.to = to;
+        }
+
+        @Override
+        double count(double time) {
+            return from * time + (to - from) * time * time / (2 * duration);
+        }
+    }
+
+    private static class Burst extends Phase {
+
+        private final double rate;
+        private final double burstRate;
+        private final double burstLength;
+        private final double period;
+
+        Burst(double duration, boolean poisson, double rate, double burstRate, double burstLength, double period) {
+            super(duration, poisson);
+            if (period <= 0 || burstLength < 0 || burstLength > period) {
+                throw new IllegalArgumentException("burstlength must be within positive period");
+            }
+            this.rate = rate;
+            this.burstRate = burstRate;
+            this.burstLength = burstLength;
+            this.period = period;
+        }
+
+        @Override
+        double count(double time) {
+            double periods = Math.floor(time / period);
+            double burstTime = periods * burstLength + Math.min(time - periods * period, burstLength);
+            return rate * time + (burstRate - rate) * burstTime;
+        }
+    }
+
+    private static class Sine extends Phase {
+
+        private final double mean;
+        private final double amplitude;
+        private final double period;
+
+        Sine(double duration, boolean poisson, double mean, double amplitude, double period) {
+            super(duration, poisson);
+            if (period <= 0 || amplitude > mean) {
+                throw new IllegalArgumentException("period must be positive and amplitude must not exceed mean");
+            }
+            this.mean = mean;
+            this.amplitude = amplitude;
+            this.period = period;
+        }
+
+        @Override
+        double count(double time) {
+            return mean * time + amplitude * period / (2 * Math.PI) * (1 - Math.cos(2 * Math.PI * time / period));
+        }
+    }
+}
@@ -0,0 +1,94 @@
+/*
+ * *******************************************************************************
+ *   Copyright (c) 2018 Edgeworx, Inc.
+ *
+ *   This program and the accompanying materials are made available under the
+ *   terms of the Eclipse Public License v. 2.0 which is available at
+ *   http://www.eclipse.org/legal/epl-2.0
+ *
+ *   SPDX-License-Identifier: EPL-2.0
+ * *******************************************************************************
+ */
+
+package org.eclipse.iofog.tmg.manager;
+
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Function;
+import java.util.function.Supplier;
+
+/**
+ * Counter of users of a resource published in {@link TMGSnapshot}, which is closed while senders may still be using it.
+ * Owner holds one reference until {@link #close()}, every use holds another one for its duration.
+ * Resource is closed by whoever drops the last reference, so it is never closed in the middle of a use
+ * and a use which starts after close fails to acquire it instead of touching released resource.
+ */
+final class UsageCounter {
+
+    private final AtomicInteger references = new AtomicInteger(1);
+    private final AtomicBoolean closed = new AtomicBoolean();
+    private final Runnable closer;
+
+    /**
+     * @param closer - releases the resource, called once in thread dropping the last reference
+     */
+    UsageCounter(Runnable closer) {
+        this.closer = closer;
+    }
+
+    /**
+     * Method starts a use of the resource, which has to be ended by {@link #release()}.
+     *
+     * @return false if resource is closed and must not be used
+     */
+    boolean acquire() {
+        while (true) {
+            int count = references.get();
+            if (count == 0) {
+                return false;
+            }
+            if (references.compareAndSet(count, count + 1)) {
+                return true;
+            }
+        }
+    }
+
+    /**
+     * Method ends a use of the resource.
+     */
+    void release() {
+        if (references.decrementAndGet() == 0) {
+            closer.run();
+        }
+    }
+
+    /**
+     * Method drops reference of owner, resource is closed as soon as all current uses end.
+     */
+    void close() {
+        if (closed.compareAndSet(false, true)) {
+            release();
+        }
+    }
+
+    /**
+     * Method applies function to current resource. Resource replaced in snapshot is closed and its use fails with
+     * IllegalStateException, so if it was closed between lookup and use, function is applied again to its replacement.
+     *
+     * @param current - lookup of current resource
+     * @param function - use of resource
+     * @return result of function
+     */
+    static <R, T> T useCurrent(Supplier<R> current, Function<R, T> function) {
+        while (true) {
+            R resource = current.get();
+            try {
+                return function.apply(resource);
+            } catch (IllegalStateException e) {
+                if (current.get() == resource) {
+                    throw e;
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,113 @@
+/*
+ * *******************************************************************************
+ *   Copyright (c) 2018 Edgeworx, Inc.
+ *
+ *   This program and the accompanying materials are made available under the
+ *   terms of the Eclipse Public License v. 2.0 which is available at
+ *   http://www.eclipse.org/legal/epl-2.0
+ *
+ *   SPDX-License-Identifier: EPL-2.0
+ * *******************************************************************************
+ */
+
+package org.eclipse.iofog.tmg.storage;
+
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.Unpooled;
+import org.eclipse.iofog.utils.IOMessageJsonWriter;
+import org.eclipse.iofog.utils.elements.IOMessage;
+
+import java.io.BufferedOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Logger;
+
+/**
+ * Storage which appends every received IOMessage to log file as one JSON record per line.
+ * Records are written through a buffer which is flushed at least once per flush interval,
+ * so saving a message costs the same regardless of how many messages were received before.
+ */
+public class AppendOnlyMessageStorage implements MessageStorage {
+
+    private static final Logger log = Logger.getLogger(AppendOnlyMessageStorage.class.getName());
+
+    private static final int BUFFER_SIZE = 64 * 1024;
+
+    private final File file;
+    private final long flushInterval;
+    private final OutputStream out;
+    private final ByteBuf record = Unpooled.buffer();
+    private final ScheduledExecutorService flushScheduler;
+
+    private long lastFlushTime;
+    private boolean dirty;
+
+    /**
+     * @param file - log file, created if it doesn't exist
+     * @param flushInterval - maximum time in milliseconds written records can stay in buffer
+     */
+    public AppendOnlyMessageStorage(File file, long flushInterval) throws IOException {
+        this.file = file;
+        this.flushInterval = flushInterval;
+        this.out = new BufferedOutputStream(new FileOutputStream(file, true), BUFFER_SIZE);
+        this.lastFlushTime = System.currentTimeMillis();
+        this.flushScheduler = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "tmg-storage-flush");
+            thread.setDaemon(true);
+            return thread;
+        });
+        flushScheduler.scheduleWithFixedDelay(this::flush, flushInterval, flushInterval, TimeUnit.MILLISECONDS);
+    }
+
+    public File getFile() {
+        return file;
+    }
+
+    @Override
+    public synchronized SaveResult save(IOMessage message) {
+        record.clear();
+        IOMessageJsonWriter.writeMessage(record, message);
+        record.writeByte('\n');
+        try {
+            record.readBytes(out, record.readableBytes());
+            dirty = true;
+            if (System.currentTimeMillis() - lastFlushTime >= flushInterval) {
+                flush();
+            }
+            return SaveResult.ACCEPTED;
+        } catch (IOException e) {
+            log.warning("IOException: Couldn't append message to " + file + ". " + e.getMessage());
+            return SaveResult.FAILED;
+        }
+    }
+
+    @Override
+    public synchronized void flush() {
+        lastFlushTime = System.currentTimeMillis();
+        if (!dirty) {
+            return;
+        }
+        try {
+            out.flush();
+            dirty = false;
+        } catch (IOException e) {
+            log.warning("IOException: Couldn't flush messages to " + file + ". " + e.getMessage());
+        }
+    }
+
+    @Override
+    public synchronized void close() {
+        flushScheduler.shutdown();
+        flush();
+        try {
+            out.close();
+        } catch (IOException e) {
+            log.warning("IOException: Couldn't close " + file + ". " + e.getMessage());
+        }
+    }
+}
@@ -0,0 +1,305 @@
+/*
+ * *******************************************************************************
+ *   Copyright (c) 2018 Edgeworx, Inc.
+ *
+ *   This program and the accompanying materials are made available under the
+ *   terms of the Eclipse Public License v. 2.0 which is available at
+ *   http://www.eclipse.org/legal/epl-2.0
+ *
+ *   SPDX-License-Identifier: EPL-2.0
+ * *******************************************************************************
+ */
+
+package org.eclipse.iofog.tmg.storage;
+
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.PooledByteBufAllocator;
+import io.netty.buffer.Unpooled;
+import org.eclipse.iofog.utils.IOMessageEncoder;
+import org.eclipse.iofog.utils.elements.IOMessage;
+import org.eclipse.iofog.utils.elements.IOMessageView;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.logging.Logger;
+
+/**
+ * Storage which hands received IOMessages over to a single writer thread through a bounded queue.
+ * Writer drains all queued messages at once and passes them to underlying storage as one batch,
+ * followed by one flush, so any number of producer threads share a single write per batch.
+ * Messages wait in queue in their binary form, copied from the received frame, and are decoded
+ * only by underlying storage which needs it.
+ * With {@link QueueFullPolicy#BLOCK} producers wait for the writer, so they must not save on socket event loops,
+ * where waiting would stall every socket of the loop: see {@link #isBlocking()}.
+ */
+public class AsyncMessageStorage implements MessageStorage {
+
+    private static final Logger log = Logger.getLogger(AsyncMessageStorage.class.getName());
+
+    private static final long METRICS_REPORT_INTERVAL = TimeUnit.MINUTES.toMillis(1);
+    private static final long BLOCK_TIMEOUT = TimeUnit.SECONDS.toMillis(1);
+    // marks end of queue for writer, never saved
+    private static final ByteBuf END_OF_QUEUE = Unpooled.buffer(0);
+
+    /**
+     * Policy applied to received IOMessage when queue is full.
+     */
+    public enum QueueFullPolicy {
+        /**
+         * Producer waits up to one second until writer frees space in queue, then message is rejected.
+         */
+        BLOCK,
+        /** Message is discarded but still reported as accepted. */
+        DROP,
+        /** Message is discarded and reported as not accepted. */
+        REJECT
+    }
+
+    private final MessageStorage storage;
+    private final BlockingQueue<ByteBuf> queue;
+    private final QueueFullPolicy policy;
+    private final Thread writer;
+    // producers enqueue under read lock, so no message is queued after close() has stopped accepting them
+    private final ReadWriteLock closeLock = new ReentrantReadWriteLock();
+
+    private final AtomicLong enqueued = new AtomicLong();
+    private final AtomicLong dropped = new AtomicLong();
+    private final AtomicLong rejected = new AtomicLong();
+    private volatile long written;
+    private volatile long batches;
+    private volatile int maxBatchSize;
+    private volatile boolean running = true;
+
+    /**
+     * @param storage - storage messages are written to
+     * @param queueSize - maximum number of messages waiting for writer
+     * @param policy - policy applied when queue is full
+     */
+    public AsyncMessageStorage(MessageStorage storage, int queueSize, QueueFullPolicy policy) {
+        this.storage = storage;
+        this.queue = new ArrayBlockingQueue<>(queueSize);
+        this.policy = policy;
+        this.writer = new Thread(this::writeBatches, "tmg-storage-writer");
+        writer.setDaemon(true);
+        writer.start();
+    }
+
+    public MessageStorage getStorage() {
+        return storage;
+    }
+
+    public int getQueueDepth() {
+        return queue.size();
+    }
+
+    public long getWrittenCount() {
+        return written;
+    }
+
+    public long getBatchCount() {
+        return batches;
+    }
+
+    public int getMaxBatchSize() {
+        return maxBatchSize;
+    }
+
+    public double getAverageBatchSize() {
+        long batchCount = batches;
+        return batchCount == 0 ? 0 : (double) written / batchCount;
+    }
+
+    public long getDroppedCount() {
+        return dropped.get();
+    }
+
+    public long getRejectedCount() {
+        return rejected.get();
+    }
+
+    /**
+     * @return true if save may wait for the writer, so it has to be called outside of event loops
+     */
+    public boolean isBlocking() {
+        return policy == QueueFullPolicy.BLOCK;
+    }
+
+    /**
+     * Method queues IOMessage for writer. Message bigger than underlying storage can save is rejected at once.
+     */
+    @Override
+    public SaveResult save(IOMessage message) {
+        int size = IOMessageEncoder.getEncodedSize(message);
+        if (size > storage.getMaxMessageSize()) {
+            rejected.incrementAndGet();
+            return SaveResult.TOO_LARGE;
+        }
+        ByteBuf buffer = PooledByteBufAllocator.DEFAULT.directBuffer(size);
+        IOMessageEncoder.encode(message, buffer);
+        return enqueue(buffer);
+    }
+
+    /**
+     * Method queues copy of binary IOMessage for writer. Message bigger than underlying storage can save is rejected at once.
+     */
+    @Override
+    public SaveResult save(IOMessageView view) {
+        int size = view.getEncodedSize();
+        if (size > storage.getMaxMessageSize()) {
+            rejected.incrementAndGet();
+            return SaveResult.TOO_LARGE;
+        }
+        ByteBuf buffer = PooledByteBufAllocator.DEFAULT.directBuffer(size);
+        view.encode(buffer);
+        return enqueue(buffer);
+    }
+
+    @Override
+    public int getMaxMessageSize() {
+        return storage.getMaxMessageSize();
+    }
+
+    /**
+     * Method waits until writer has written all messages queued before the call.
+     */
+    @Override
+    public void flush() {
+        long target = enqueued.get();
+        synchronized (this) {
+            while (written < target && writer.isAlive()) {
+                try {
+                    wait(100);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    return;
+                }
+            }
+        }
+    }
+
+    /**
+     * Method stops accepting messages, waits until writer has written all queued messages and closes underlying storage.
+     */
+    @Override
+    public void close() {
+        closeLock.writeLock().lock();
+        try {
+            if (!running) {
+                return;
+            }
+            running = false;
+        } finally {
+            closeLock.writeLock().unlock();
+        }
+        try {
+            while (writer.isAlive() && !queue.offer(END_OF_QUEUE, 100, TimeUnit.MILLISECONDS)) {
+                // writer frees space in queue
+            }
+            writer.join();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            log.warning("Interrupted while waiting for storage writer, " + queue.size() + " queued messages may be lost.");
+        }
+        storage.close();
+        log.info(getMetrics());
+    }
+
+    private SaveResult enqueue(ByteBuf buffer) {
+        closeLock.readLock().lock();
+        try {
+            if (!running) {
+                buffer.release();
+                rejected.incrementAndGet();
+                return SaveResult.FAILED;
+            }
+            if (queue.offer(buffer) || policy == QueueFullPolicy.BLOCK && offerBlocking(buffer)) {
+                enqueued.incrementAndGet();
+                return SaveResult.ACCEPTED;
+            }
+            buffer.release();
+            if (policy == QueueFullPolicy.DROP) {
+                dropped.incrementAndGet();
+                return SaveResult.ACCEPTED;
+            }
+            rejected.incrementAndGet();
+            return SaveResult.FULL;
+        } finally {
+            closeLock.readLock().unlock();
+        }
+    }
+
+    private boolean offerBlocking(ByteBuf buffer) {
+        try {
+            return queue.offer(buffer, BLOCK_TIMEOUT, TimeUnit.MILLISECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return false;
+        }
+    }
+
+    /**
+     * Method returns text report of queue and batch metrics.
+     *
+     * @return String
+     */
+    public String getMetrics() {
+        return String.format("Message storage queue: depth %d, written %d in %d batches (average %.1f, max %d), dropped %d, rejected %d",
+                             getQueueDepth(), written, batches, getAverageBatchSize(), maxBatchSize,
+                             dropped.get(), rejected.get());
+    }
+
+    private void writeBatches() {
+        List<ByteBuf> batch = new ArrayList<>();
+        long lastReportTime = System.currentTimeMillis();
+        boolean end = false;
+        while (!end) {
+            try {
+                batch.add(queue.take());
+            } catch (InterruptedException e) {
+                log.warning("Storage writer was interrupted, " + queue.size() + " queued messages are not written.");
+                break;
+            }
+            queue.drainTo(batch);
+            // nothing is queued after end of queue, so it can only be the last one
+            end = batch.get(batch.size() - 1) == END_OF_QUEUE;
+            if (end) {
+                batch.remove(batch.size() - 1);
+            }
+            if (!batch.isEmpty()) {
+                writeBatch(batch);
+            }
+            batch.clear();
+            if (System.currentTimeMillis() - lastReportTime >= METRICS_REPORT_INTERVAL) {
+                lastReportTime = System.currentTimeMillis();
+                log.info(getMetrics());
+            }
+        }
+    }
+
+    private void writeBatch(List<ByteBuf> batch) {
+        List<IOMessageView> views = new ArrayList<>(batch.size());
+        for (ByteBuf buffer : batch) {
+            views.add(new IOMessageView(buffer));
+        }
+        try {
+            storage.saveAll(views);
+            storage.flush();
+        } catch (RuntimeException e) {
+            log.warning("Couldn't write batch of " + batch.size() + " messages. " + e);
+        } finally {
+            batch.forEach(ByteBuf::release);
+        }
+        synchronized (this) {
+            written += batch.size();
+            batches++;
+            maxBatchSize = Math.max(maxBatchSize, batch.size());
+            notifyAll();
+        }
+    }
+}
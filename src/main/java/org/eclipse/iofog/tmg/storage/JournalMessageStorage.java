@@ -0,0 +1,147 @@
+/*
+ * *******************************************************************************
+ *   Copyright (c) 2018 Edgeworx, Inc.
+ *
+ *   This program and the accompanying materials are made available under the
+ *   terms of the Eclipse Public License v. 2.0 which is available at
+ *   http://www.eclipse.org/legal/epl-2.0
+ *
+ *   SPDX-License-Identifier: EPL-2.0
+ * *******************************************************************************
+ */
+
+package org.eclipse.iofog.tmg.storage;
+
+import org.eclipse.iofog.utils.IOMessageEncoder;
+import org.eclipse.iofog.utils.elements.IOMessage;
+import org.eclipse.iofog.utils.elements.IOMessageView;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.List;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Predicate;
+import java.util.logging.Logger;
+
+/**
+ * Storage which writes every received IOMessage in its binary form to journal of fixed-size
+ * memory-mapped segment files. Saving a message is a bounds check and a copy into mapped segment;
+ * when segment is full, next one is created and the oldest segments over retention limit are deleted.
+ */
+public class JournalMessageStorage implements MessageStorage {
+
+    private static final Logger log = Logger.getLogger(JournalMessageStorage.class.getName());
+
+    private static final int MIN_SEGMENT_SIZE = 64 * 1024;
+
+    private final MessageJournal journal;
+    private final int segmentSize;
+    private final int retention;
+    private final ScheduledExecutorService flushScheduler;
+
+    private JournalSegment segment;
+    private long nextSegmentId;
+
+    /**
+     * @param journal - journal to write segments to
+     * @param segmentSize - size of segment file in bytes
+     * @param retention - maximum number of segment files to keep, 0 keeps all of them
+     * @param flushInterval - interval in milliseconds at which mapped segment is forced to file
+     */
+    public JournalMessageStorage(MessageJournal journal, int segmentSize, int retention, long flushInterval) throws IOException {
+        this.journal = journal;
+        if (segmentSize < MIN_SEGMENT_SIZE) {
+            log.warning("Journal segment size " + segmentSize + " is too small. Switching to use minimal value = " + MIN_SEGMENT_SIZE + " bytes.");
+            segmentSize = MIN_SEGMENT_SIZE;
+        }
+        this.segmentSize = segmentSize;
+        this.retention = retention;
+        List<File> segmentFiles = journal.getSegmentFiles();
+        this.nextSegmentId = segmentFiles.isEmpty() ? 0 : journal.getSegmentId(segmentFiles.get(segmentFiles.size() - 1)) + 1;
+        rollSegment();
+        this.flushScheduler = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "tmg-storage-flush");
+            thread.setDaemon(true);
+            return thread;
+        });
+        flushScheduler.scheduleWithFixedDelay(this::flush, flushInterval, flushInterval, TimeUnit.MILLISECONDS);
+    }
+
+    public MessageJournal getJournal() {
+        return journal;
+    }
+
+    @Override
+    public synchronized SaveResult save(IOMessage message) {
+        int size = IOMessageEncoder.getEncodedSize(message);
+        return append(size, segment -> segment.append(message, size));
+    }
+
+    @Override
+    public synchronized SaveResult save(IOMessageView view) {
+        int size = view.getEncodedSize();
+        return append(size, segment -> segment.append(view, size));
+    }
+
+    @Override
+    public int getMaxMessageSize() {
+        return JournalSegment.getMaxMessageSize(segmentSize);
+    }
+
+    @Override
+    public synchronized void flush() {
+        if (segment != null) {
+            segment.force();
+        }
+    }
+
+    @Override
+    public synchronized void close() {
+        flushScheduler.shutdown();
+        if (segment != null) {
+            segment.force();
+            segment.release();
+            segment = null;
+        }
+    }
+
+    private SaveResult append(int size, Predicate<JournalSegment> append) {
+        if (segment == null) {
+            return SaveResult.FAILED;
+        }
+        if (size > getMaxMessageSize()) {
+            log.warning("Message of " + size + " bytes doesn't fit into journal segment of " + segmentSize + " bytes. Skipping it.");
+            return SaveResult.TOO_LARGE;
+        }
+        if (!append.test(segment)) {
+            try {
+                rollSegment();
+            } catch (IOException e) {
+                log.warning("IOException: Couldn't create journal segment. " + e.getMessage());
+                return SaveResult.FAILED;
+            }
+            return append.test(segment) ? SaveResult.ACCEPTED : SaveResult.FAILED;
+        }
+        return SaveResult.ACCEPTED;
+    }
+
+    private void rollSegment() throws IOException {
+        if (segment != null) {
+            segment.force();
+            segment.release();
+            segment = null;
+        }
+        File file = journal.getSegmentFile(nextSegmentId);
+        segment = JournalSegment.create(file, nextSegmentId++, segmentSize);
+        if (retention > 0) {
+            List<File> segmentFiles = journal.getSegmentFiles();
+            for (int i = 0; i < segmentFiles.size() - retention; i++) {
+                if (!segmentFiles.get(i).delete()) {
+                    log.warning("Couldn't delete old journal segment " + segmentFiles.get(i));
+                }
+            }
+        }
+    }
+}
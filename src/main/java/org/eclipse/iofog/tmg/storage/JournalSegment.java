@@ -0,0 +1,208 @@
+/*
+ * *******************************************************************************
+ *   Copyright (c) 2018 Edgeworx, Inc.
+ *
+ *   This program and the accompanying materials are made available under the
+ *   terms of the Eclipse Public License v. 2.0 which is available at
+ *   http://www.eclipse.org/legal/epl-2.0
+ *
+ *   SPDX-License-Identifier: EPL-2.0
+ * *******************************************************************************
+ */
+
+package org.eclipse.iofog.tmg.storage;
+
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.Unpooled;
+import org.eclipse.iofog.utils.IOMessageEncoder;
+import org.eclipse.iofog.utils.MappedBufferUtils;
+import org.eclipse.iofog.utils.elements.IOMessage;
+import org.eclipse.iofog.utils.elements.IOMessageView;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+
+/**
+ * Fixed-size memory-mapped segment file of message journal.
+ *
+ * Layout of segment:
+ * <pre>
+ * header (32 bytes): magic int, format version short, reserved short, segment id long,
+ *                    index capacity int, message count int, end of data int, reserved int
+ * index: index capacity ints, offset of every message in segment
+ * data: messages in IOMessage.toBytes() layout
+ * </pre>
+ * Message count is updated after message and its index entry are written, so a reader never sees
+ * partially written messages.
+ */
+class JournalSegment {
+
+    static final int MAGIC = 0x544D474A;
+    static final short FORMAT_VERSION = 1;
+    static final int HEADER_SIZE = 32;
+    static final int INDEX_ENTRY_SIZE = 4;
+    static final int BYTES_PER_INDEX_ENTRY = 256;
+
+    private static final int MAGIC_OFFSET = 0;
+    private static final int FORMAT_VERSION_OFFSET = 4;
+    private static final int SEGMENT_ID_OFFSET = 8;
+    private static final int INDEX_CAPACITY_OFFSET = 16;
+    private static final int COUNT_OFFSET = 20;
+    private static final int DATA_END_OFFSET = 24;
+
+    private final File file;
+    private final long id;
+    private final MappedByteBuffer mapped;
+    private final ByteBuf buffer;
+    private final int indexCapacity;
+    private int count;
+    private int dataEnd;
+
+    private JournalSegment(File file, MappedByteBuffer mapped) throws IOException {
+        this.file = file;
+        this.mapped = mapped;
+        this.buffer = Unpooled.wrappedBuffer(mapped);
+        if (buffer.capacity() < HEADER_SIZE || buffer.getInt(MAGIC_OFFSET) != MAGIC) {
+            release();
+            throw new IOException("Not a message journal segment");
+        }
+        if (buffer.getShort(FORMAT_VERSION_OFFSET) != FORMAT_VERSION) {
+            release();
+            throw new IOException("Unsupported format version " + buffer.getShort(FORMAT_VERSION_OFFSET));
+        }
+        this.id = buffer.getLong(SEGMENT_ID_OFFSET);
+        this.indexCapacity = buffer.getInt(INDEX_CAPACITY_OFFSET);
+        this.count = buffer.getInt(COUNT_OFFSET);
+        this.dataEnd = buffer.getInt(DATA_END_OFFSET);
+    }
+
+    /**
+     * Method creates new segment file of given size and maps it for writing.
+     *
+     * @param file - segment file
+     * @param id - id of segment
+     * @param size - size of segment file in bytes
+     * @return JournalSegment
+     */
+    static JournalSegment create(File file, long id, int size) throws IOException {
+        MappedByteBuffer mapped;
+        try (RandomAccessFile raf = new RandomAccessFile(file, "rw")) {
+            raf.setLength(size);
+            mapped = raf.getChannel().map(FileChannel.MapMode.READ_WRITE, 0, size);
+        }
+        int indexCapacity = (size - HEADER_SIZE) / BYTES_PER_INDEX_ENTRY;
+        mapped.putInt(MAGIC_OFFSET, MAGIC)
+              .putShort(FORMAT_VERSION_OFFSET, FORMAT_VERSION)
+              .putLong(SEGMENT_ID_OFFSET, id)
+              .putInt(INDEX_CAPACITY_OFFSET, indexCapacity)
+              .putInt(COUNT_OFFSET, 0)
+              .putInt(DATA_END_OFFSET, HEADER_SIZE + indexCapacity * INDEX_ENTRY_SIZE);
+        return new JournalSegment(file, mapped);
+    }
+
+    /**
+     * Method maps existing segment file for reading.
+     *
+     * @param file - segment file
+     * @return JournalSegment
+     */
+    static JournalSegment open(File file) throws IOException {
+        try (RandomAccessFile raf = new RandomAccessFile(file, "r")) {
+            return new JournalSegment(file, raf.getChannel().map(FileChannel.MapMode.READ_ONLY, 0, raf.length()));
+        }
+    }
+
+    /**
+     * Method returns maximum size of message which fits into empty segment of given size.
+     *
+     * @param size - size of segment file in bytes
+     * @return int
+     */
+    static int getMaxMessageSize(int size) {
+        return size - HEADER_SIZE - (size - HEADER_SIZE) / BYTES_PER_INDEX_ENTRY * INDEX_ENTRY_SIZE;
+    }
+
+    File getFile() {
+        return file;
+    }
+
+    long getId() {
+        return id;
+    }
+
+    int getCount() {
+        return count;
+    }
+
+    /**
+     * Method appends message to segment.
+     *
+     * @param message - IOMessage to be appended
+     * @param size - encoded size of message
+     * @return false if segment has no room for message
+     */
+    boolean append(IOMessage message, int size) {
+        if (count == indexCapacity || buffer.capacity() - dataEnd < size) {
+            return false;
+        }
+        buffer.writerIndex(dataEnd);
+        IOMessageEncoder.encode(message, buffer);
+        buffer.setInt(HEADER_SIZE + count * INDEX_ENTRY_SIZE, dataEnd);
+        dataEnd += size;
+        buffer.setInt(DATA_END_OFFSET, dataEnd);
+        buffer.setInt(COUNT_OFFSET, ++count);
+        return true;
+    }
+
+    /**
+     * Method appends binary form of message to segment without decoding it.
+     *
+     * @param view - view of IOMessage to be appended
+     * @param size - encoded size of message
+     * @return false if segment has no room for message
+     */
+    boolean append(IOMessageView view, int size) {
+        if (count == indexCapacity || buffer.capacity() - dataEnd < size) {
+            return false;
+        }
+        buffer.writerIndex(dataEnd);
+        view.encode(buffer);
+        buffer.setInt(HEADER_SIZE + count * INDEX_ENTRY_SIZE, dataEnd);
+        dataEnd += size;
+        buffer.setInt(DATA_END_OFFSET, dataEnd);
+        buffer.setInt(COUNT_OFFSET, ++count);
+        return true;
+    }
+
+    /**
+     * Method returns view of message stored in segment.
+     * View is valid until segment is released.
+     *
+     * @param index - index of message in segment
+     * @return IOMessageView
+     */
+    IOMessageView getMessage(int index) {
+        int offset = buffer.getInt(HEADER_SIZE + index * INDEX_ENTRY_SIZE);
+        int end = index + 1 < count ? buffer.getInt(HEADER_SIZE + (index + 1) * INDEX_ENTRY_SIZE) : dataEnd;
+        return new IOMessageView(buffer.slice(offset, end - offset));
+    }
+
+    /**
+     * Method forces written messages to be stored in segment file.
+     */
+    void force() {
+        mapped.force();
+    }
+
+    /**
+     * Method unmaps segment without waiting for garbage collection.
+     * If the running Java doesn't allow unmapping, segment stays mapped until it is garbage collected;
+     * journal references only its current segment, so at most rolled segments awaiting collection stay mapped.
+     */
+    void release() {
+        MappedBufferUtils.unmap(mapped);
+    }
+}
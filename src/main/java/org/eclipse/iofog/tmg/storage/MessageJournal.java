@@ -0,0 +1,109 @@
+/*
+ * *******************************************************************************
+ *   Copyright (c) 2018 Edgeworx, Inc.
+ *
+ *   This program and the accompanying materials are made available under the
+ *   terms of the Eclipse Public License v. 2.0 which is available at
+ *   http://www.eclipse.org/legal/epl-2.0
+ *
+ *   SPDX-License-Identifier: EPL-2.0
+ * *******************************************************************************
+ */
+
+package org.eclipse.iofog.tmg.storage;
+
+import org.eclipse.iofog.utils.elements.IOMessageView;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.function.Consumer;
+import java.util.logging.Logger;
+
+/**
+ * Message journal: set of segment files named "&lt;name&gt;-&lt;segment id&gt;.journal" in one folder.
+ * Messages are read back straight from mapped segments, without any parsing besides the binary header.
+ */
+public class MessageJournal {
+
+    private static final Logger log = Logger.getLogger(MessageJournal.class.getName());
+
+    private static final String SEGMENT_FILE_EXTENSION = ".journal";
+
+    private final File folder;
+    private final String name;
+
+    /**
+     * @param folder - folder of segment files
+     * @param name - common name of segment files
+     */
+    public MessageJournal(File folder, String name) {
+        this.folder = folder;
+        this.name = name;
+    }
+
+    /**
+     * Method returns segment files of journal in order of their ids.
+     *
+     * @return List<File>
+     */
+    public List<File> getSegmentFiles() {
+        File[] files = folder.listFiles((dir, filename) -> filename.startsWith(name + "-") && filename.endsWith(SEGMENT_FILE_EXTENSION)
+                                                          && getSegmentId(filename) >= 0);
+        if (files == null) {
+            return Collections.emptyList();
+        }
+        List<File> segmentFiles = new ArrayList<>(Arrays.asList(files));
+        segmentFiles.sort(Comparator.comparingLong(this::getSegmentId));
+        return segmentFiles;
+    }
+
+    /**
+     * Method visits all messages of journal in order they were saved.
+     * Views are backed by mapped segment and must not be used after consumer returns.
+     *
+     * @param consumer - consumer of messages
+     * @return number of visited messages
+     */
+    public int forEach(Consumer<IOMessageView> consumer) {
+        int count = 0;
+        for (File file : getSegmentFiles()) {
+            JournalSegment segment;
+            try {
+                segment = JournalSegment.open(file);
+            } catch (IOException e) {
+                log.warning("Skipping journal segment " + file + ". " + e.getMessage());
+                continue;
+            }
+            try {
+                for (int i = 0; i < segment.getCount(); i++) {
+                    consumer.accept(segment.getMessage(i));
+                    count++;
+                }
+            } finally {
+                segment.release();
+            }
+        }
+        return count;
+    }
+
+    File getSegmentFile(long id) {
+        return new File(folder, String.format("%s-%016d%s", name, id, SEGMENT_FILE_EXTENSION));
+    }
+
+    long getSegmentId(File file) {
+        return getSegmentId(file.getName());
+    }
+
+    private long getSegmentId(String filename) {
+        try {
+            return Long.parseLong(filename.substring(name.length() + 1, filename.length() - SEGMENT_FILE_EXTENSION.length()));
+        } catch (NumberFormatException | IndexOutOfBoundsException e) {
+            return -1;
+        }
+    }
+}
@@ -0,0 +1,89 @@
+/*
+ * *******************************************************************************
+ *   Copyright (c) 2018 Edgeworx, Inc.
+ *
+ *   This program and the accompanying materials are made available under the
+ *   terms of the Eclipse Public License v. 2.0 which is available at
+ *   http://www.eclipse.org/legal/epl-2.0
+ *
+ *   SPDX-License-Identifier: EPL-2.0
+ * *******************************************************************************
+ */
+
+package org.eclipse.iofog.tmg.storage;
+
+import org.eclipse.iofog.utils.elements.IOMessage;
+import org.eclipse.iofog.utils.elements.IOMessageView;
+
+import java.util.List;
+
+/**
+ * Interface of persistence for IOMessages received from Containers.
+ */
+public interface MessageStorage {
+
+    /**
+     * Result of saving received IOMessage.
+     */
+    enum SaveResult {
+        /** Message was saved, or accepted to be saved later. */
+        ACCEPTED,
+        /** Message was discarded because storage has no room for it now. */
+        FULL,
+        /** Message was discarded because it is bigger than storage can ever save. */
+        TOO_LARGE,
+        /** Message couldn't be saved because of error or closed storage. */
+        FAILED
+    }
+
+    /**
+     * Method persists received IOMessage.
+     *
+     * @param message - IOMessage to be saved
+     * @return result of saving
+     */
+    SaveResult save(IOMessage message);
+
+    /**
+     * Method persists received IOMessage given by view of its binary form.
+     * View is valid only during the call. Storages which keep binary form override it
+     * to copy the message as it is, others get the message decoded.
+     *
+     * @param view - view of IOMessage to be saved
+     * @return result of saving
+     */
+    default SaveResult save(IOMessageView view) {
+        return save(view.toMessage());
+    }
+
+    /**
+     * Method persists batch of received IOMessages given by views of their binary form.
+     * Storages which write whole file at once override it to write only once per batch.
+     *
+     * @param views - views of IOMessages to be saved
+     */
+    default void saveAll(List<IOMessageView> views) {
+        for (IOMessageView view : views) {
+            save(view);
+        }
+    }
+
+    /**
+     * Method returns size in bytes of the biggest binary IOMessage storage can save.
+     *
+     * @return int
+     */
+    default int getMaxMessageSize() {
+        return Integer.MAX_VALUE;
+    }
+
+    /**
+     * Method forces all buffered IOMessages to be written.
+     */
+    void flush();
+
+    /**
+     * Method flushes and releases all resources of storage.
+     */
+    void close();
+}
@@ -0,0 +1,354 @@
+/*
+ * *******************************************************************************
+ *   Copyright (c) 2018 Edgeworx, Inc.
+ *
+ *   This program and the accompanying materials are made available under the
+ *   terms of the Eclipse Public License v. 2.0 which is available at
+ *   http://www.eclipse.org/legal/epl-2.0
+ *
+ *   SPDX-License-Identifier: EPL-2.0
+ * *******************************************************************************
+ */
+
+package org.eclipse.iofog.tmg.storage;
+
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.PooledByteBufAllocator;
+import org.eclipse.iofog.utils.IOMessageEncoder;
+import org.eclipse.iofog.utils.elements.IOMessage;
+import org.eclipse.iofog.utils.elements.IOMessageView;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+/**
+ * In-memory store of received IOMessages indexed by publisher and timestamp.
+ * Every publisher has its own time-ordered index of messages kept in compact binary form in off-heap buffers,
+ * so query of one publisher's timeframe costs O(log n + k) and decodes only the matching messages.
+ * Store is bounded by number of messages, their total size and age; the oldest messages are evicted first.
+ * Index of publisher is dropped with its last message, so publishers don't accumulate over time.
+ */
+public class ReceivedMessageStore {
+
+    private final int maxCount;
+    private final long maxBytes;
+    private final long maxAge;
+
+    private final Map<String, PublisherIndex> publisherIndexes = new HashMap<>();
+    private final ArrayDeque<Record> records = new ArrayDeque<>();
+    private final ReadWriteLock lock = new ReentrantReadWriteLock();
+    private long sequence;
+    private long bytes;
+    // the latest timestamp evicted from indexes which were dropped
+    private long droppedEvictedUpTo = Long.MIN_VALUE;
+
+    private final AtomicLong evictedByCount = new AtomicLong();
+    private final AtomicLong evictedBySize = new AtomicLong();
+    private final AtomicLong evictedByAge = new AtomicLong();
+    private final AtomicLong rejectedBySize = new AtomicLong();
+
+    /**
+     * @param maxCount - maximum number of stored messages, 0 means no limit
+     * @param maxBytes - maximum total size of stored messages in bytes, 0 means no limit
+     * @param maxAge - maximum time in milliseconds messages are kept, 0 means no limit
+     */
+    public ReceivedMessageStore(int maxCount, long maxBytes, long maxAge) {
+        this.maxCount = maxCount;
+        this.maxBytes = maxBytes;
+        this.maxAge = maxAge;
+    }
+
+    /**
+     * Method adds received IOMessage to index of its publisher and evicts the oldest messages over limits.
+     *
+     * @param message - received IOMessage
+     */
+    public void add(IOMessage message) {
+        int size = IOMessageEncoder.getEncodedSize(message);
+        if (maxBytes > 0 && size > maxBytes) {
+            rejectedBySize.incrementAndGet();
+            return;
+        }
+        ByteBuf buffer = PooledByteBufAllocator.DEFAULT.directBuffer(size, size);
+        IOMessageEncoder.encode(message, buffer);
+        add(message.getPublisher(), message.getTimestamp(), buffer);
+    }
+
+    /**
+     * Method adds received IOMessage given by view of its binary form, which is copied without decoding.
+     *
+     * @param view - view of received IOMessage
+     */
+    public void add(IOMessageView view) {
+        int size = view.getEncodedSize();
+        if (maxBytes > 0 && size > maxBytes) {
+            rejectedBySize.incrementAndGet();
+            return;
+        }
+        ByteBuf buffer = PooledByteBufAllocator.DEFAULT.directBuffer(size, size);
+        view.encode(buffer);
+        add(view.getPublisher(), view.getTimestamp(), buffer);
+    }
+
+    private void add(String publisher, long timestamp, ByteBuf buffer) {
+        if (publisher == null) {
+            publisher = "";
+        }
+        int size = buffer.readableBytes();
+        long now = System.currentTimeMillis();
+
+        lock.writeLock().lock();
+        try {
+            PublisherIndex index = publisherIndexes.computeIfAbsent(publisher, PublisherIndex::new);
+            Record record = new Record(index, new RecordKey(timestamp, sequence++), buffer, now);
+            index.records.put(record.key, record);
+            records.addLast(record);
+            bytes += size;
+            evict(now);
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * Method returns IOMessages of given publishers with timestamps within timeframe (both bounds inclusive).
+     * Messages are grouped by publisher in requested order and sorted by timestamp within publisher.
+     *
+     * @param publishers - publishers of messages
+     * @param timeframeStart - start of timeframe
+     * @param timeframeEnd - end of timeframe
+     * @return List<IOMessage>
+     */
+    public List<IOMessage> query(Collection<String> publishers, long timeframeStart, long timeframeEnd) {
+        List<IOMessage> messages = new ArrayList<>();
+        if (timeframeStart > timeframeEnd) {
+            return messages;
+        }
+        expire();
+        RecordKey from = new RecordKey(timeframeStart, Long.MIN_VALUE);
+        RecordKey to = new RecordKey(timeframeEnd, Long.MAX_VALUE);
+        lock.readLock().lock();
+        try {
+            for (String publisher : publishers) {
+                PublisherIndex index = publisherIndexes.get(publisher);
+                if (index == null) {
+                    continue;
+                }
+                for (Record record : index.records.subMap(from, true, to, true).values()) {
+                    messages.add(new IOMessageView(record.buffer.duplicate()).toMessage());
+                }
+            }
+        } finally {
+            lock.readLock().unlock();
+        }
+        return messages;
+    }
+
+    /**
+     * Method checks if messages of publishers within timeframe might have been evicted,
+     * i.e. if result of the same query can be incomplete.
+     *
+     * @param publishers - publishers of messages
+     * @param timeframeStart - start of timeframe
+     * @return boolean
+     */
+    public boolean isTruncated(Collection<String> publishers, long timeframeStart) {
+        lock.readLock().lock();
+        try {
+            for (String publisher : publishers) {
+                PublisherIndex index = publisherIndexes.get(publisher);
+                long evictedUpTo = index != null ? index.evictedUpTo : droppedEvictedUpTo;
+                if (evictedUpTo >= timeframeStart) {
+                    return true;
+                }
+            }
+            return false;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Method returns number of stored IOMessages.
+     *
+     * @return int
+     */
+    public int size() {
+        lock.readLock().lock();
+        try {
+            return records.size();
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Method returns total size in bytes of stored IOMessages.
+     *
+     * @return long
+     */
+    public long getBytes() {
+        lock.readLock().lock();
+        try {
+            return bytes;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    public long getEvictedByCount() {
+        return evictedByCount.get();
+    }
+
+    public long getEvictedBySize() {
+        return evictedBySize.get();
+    }
+
+    public long getEvictedByAge() {
+        return evictedByAge.get();
+    }
+
+    public long getEvictedCount() {
+        return evictedByCount.get() + evictedBySize.get() + evictedByAge.get();
+    }
+
+    /**
+     * Method returns number of IOMessages which were not stored at all, because each of them alone exceeds size limit.
+     *
+     * @return long
+     */
+    public long getRejectedBySize() {
+        return rejectedBySize.get();
+    }
+
+    /**
+     * Method returns number of publishers with stored IOMessages.
+     *
+     * @return int
+     */
+    public int getPublisherCount() {
+        lock.readLock().lock();
+        try {
+            return publisherIndexes.size();
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Method evicts all stored IOMessages and releases their buffers.
+     */
+    public void clear() {
+        lock.writeLock().lock();
+        try {
+            for (Record record : records) {
+                record.buffer.release();
+            }
+            records.clear();
+            publisherIndexes.clear();
+            bytes = 0;
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    private void expire() {
+        if (maxAge <= 0) {
+            return;
+        }
+        long now = System.currentTimeMillis();
+        lock.readLock().lock();
+        try {
+            Record oldest = records.peekFirst();
+            if (oldest == null || now - oldest.arrivalTime <= maxAge) {
+                return;
+            }
+        } finally {
+            lock.readLock().unlock();
+        }
+        lock.writeLock().lock();
+        try {
+            evict(now);
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    private void evict(long now) {
+        while (!records.isEmpty()) {
+            if (maxCount > 0 && records.size() > maxCount) {
+                evictedByCount.incrementAndGet();
+            } else if (maxBytes > 0 && bytes > maxBytes) {
+                evictedBySize.incrementAndGet();
+            } else if (maxAge > 0 && now - records.peekFirst().arrivalTime > maxAge) {
+                evictedByAge.incrementAndGet();
+            } else {
+                return;
+            }
+            Record record = records.pollFirst();
+            PublisherIndex index = record.index;
+            index.records.remove(record.key);
+            index.evictedUpTo = Math.max(index.evictedUpTo, record.key.timestamp);
+            if (index.records.isEmpty()) {
+                publisherIndexes.remove(index.publisher);
+                droppedEvictedUpTo = Math.max(droppedEvictedUpTo, index.evictedUpTo);
+            }
+            bytes -= record.buffer.readableBytes();
+            record.buffer.release();
+        }
+    }
+
+    private static class PublisherIndex {
+
+        private final String publisher;
+        private final TreeMap<RecordKey, Record> records = new TreeMap<>();
+        private long evictedUpTo = Long.MIN_VALUE;
+
+        PublisherIndex(String publisher) {
+            this.publisher = publisher;
+        }
+    }
+
+    private static class Record {
+
+        private final PublisherIndex index;
+        private final RecordKey key;
+        private final ByteBuf buffer;
+        private final long arrivalTime;
+
+        Record(PublisherIndex index, RecordKey key, ByteBuf buffer, long arrivalTime) {
+            this.index = index;
+            this.key = key;
+            this.buffer = buffer;
+            this.arrivalTime = arrivalTime;
+        }
+    }
+
+    /**
+     * Key of record in publisher index: timestamp of message and order of arrival for messages with equal timestamps.
+     */
+    private static class RecordKey implements Comparable<RecordKey> {
+
+        private final long timestamp;
+        private final long sequence;
+
+        RecordKey(long timestamp, long sequence) {
+            this.timestamp = timestamp;
+            this.sequence = sequence;
+        }
+
+        @Override
+        public int compareTo(RecordKey other) {
+            int result = Long.compare(timestamp, other.timestamp);
+            return result != 0 ? result : Long.compare(sequence, other.sequence);
+        }
+    }
+}
@@ -0,0 +1,114 @@
+/*
+ * *******************************************************************************
+ *   Copyright (c) 2018 Edgeworx, Inc.
+ *
+ *   This program and the accompanying materials are made available under the
+ *   terms of the Eclipse Public License v. 2.0 which is available at
+ *   http://www.eclipse.org/legal/epl-2.0
+ *
+ *   SPDX-License-Identifier: EPL-2.0
+ * *******************************************************************************
+ */
+
+package org.eclipse.iofog.tmg.storage;
+
+import org.eclipse.iofog.utils.IOMessageConverter;
+import org.eclipse.iofog.utils.elements.IOMessage;
+
+import javax.json.Json;
+import javax.json.JsonException;
+import javax.json.JsonReader;
+import javax.xml.stream.XMLOutputFactory;
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamWriter;
+import java.io.*;
+import java.nio.charset.StandardCharsets;
+import java.util.logging.Logger;
+
+/**
+ * Exporter of append-only message log and message journal to legacy receivedmessages.xml format.
+ * Log is streamed record by record, so export doesn't need to keep received messages in memory.
+ */
+public class ReceivedMessagesExporter {
+
+    private static final Logger log = Logger.getLogger(ReceivedMessagesExporter.class.getName());
+
+    public static final String RECEIVED_MESSAGES_TAG_NAME = "receivedmessages";
+
+    private static final String MESSAGE_INDENT = "\n    ";
+
+    private static final XMLOutputFactory outputFactory = XMLOutputFactory.newInstance();
+
+    /**
+     * Method exports all records of message log to XML file.
+     *
+     * @param logFile - append-only message log
+     * @param xmlFile - XML file to be (re)written
+     * @return number of exported messages
+     */
+    public static int exportToXML(File logFile, File xmlFile) {
+        int count = 0;
+        try (BufferedReader reader = new BufferedReader(new InputStreamReader(new FileInputStream(logFile), StandardCharsets.UTF_8));
+             OutputStream out = new BufferedOutputStream(new FileOutputStream(xmlFile))) {
+            XMLStreamWriter writer = startDocument(out);
+            String line;
+            while ((line = reader.readLine()) != null) {
+                if (line.isEmpty()) {
+                    continue;
+                }
+                try (JsonReader jsonReader = Json.createReader(new StringReader(line))) {
+                    IOMessageConverter.writeMessage(writer, new IOMessage(jsonReader.readObject()), MESSAGE_INDENT);
+                    count++;
+                } catch (JsonException e) {
+                    log.warning("Skipping broken record of message log " + logFile + ". " + e.getMessage());
+                }
+            }
+            endDocument(writer);
+        } catch (FileNotFoundException e) {
+            log.warning("Can't find message log " + logFile + ". " + e.getMessage());
+        } catch (IOException | XMLStreamException e) {
+            log.warning("Couldn't export message log " + logFile + " to " + xmlFile + ". " + e.getMessage());
+        }
+        return count;
+    }
+
+    /**
+     * Method exports all messages of message journal to XML file.
+     *
+     * @param journal - message journal
+     * @param xmlFile - XML file to be (re)written
+     * @return number of exported messages
+     */
+    public static int exportToXML(MessageJournal journal, File xmlFile) {
+        try (OutputStream out = new BufferedOutputStream(new FileOutputStream(xmlFile))) {
+            XMLStreamWriter writer = startDocument(out);
+            int count = journal.forEach(view -> {
+                try {
+                    IOMessageConverter.writeMessage(writer, view.toMessage(), MESSAGE_INDENT);
+                } catch (XMLStreamException e) {
+                    throw new IllegalStateException(e);
+                }
+            });
+            endDocument(writer);
+            return count;
+        } catch (IOException | XMLStreamException | IllegalStateException e) {
+            log.warning("Couldn't export message journal to " + xmlFile + ". " + e.getMessage());
+            return 0;
+        }
+    }
+
+    private static XMLStreamWriter startDocument(OutputStream out) throws XMLStreamException {
+        XMLStreamWriter writer = outputFactory.createXMLStreamWriter(out, StandardCharsets.UTF_8.name());
+        writer.writeStartDocument(StandardCharsets.UTF_8.name(), "1.0");
+        writer.writeCharacters("\n");
+        writer.writeStartElement(RECEIVED_MESSAGES_TAG_NAME);
+        return writer;
+    }
+
+    private static void endDocument(XMLStreamWriter writer) throws XMLStreamException {
+        writer.writeCharacters("\n");
+        writer.writeEndElement();
+        writer.writeEndDocument();
+        writer.close();
+    }
+}
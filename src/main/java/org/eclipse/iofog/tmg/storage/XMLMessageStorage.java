@@ -0,0 +1,58 @@
+/*
+ * *******************************************************************************
+ *   Copyright (c) 2018 Edgeworx, Inc.
+ *
+ *   This program and the accompanying materials are made available under the
+ *   terms of the Eclipse Public License v. 2.0 which is available at
+ *   http://www.eclipse.org/legal/epl-2.0
+ *
+ *   SPDX-License-Identifier: EPL-2.0
+ * *******************************************************************************
+ */
+
+package org.eclipse.iofog.tmg.storage;
+
+import org.eclipse.iofog.utils.IOMessageConverter;
+import org.eclipse.iofog.utils.TMGFileUtils;
+import org.eclipse.iofog.utils.elements.IOMessage;
+import org.eclipse.iofog.utils.elements.IOMessageView;
+import org.w3c.dom.Document;
+
+import java.util.List;
+
+/**
+ * Legacy storage which keeps received IOMessages in XML document and rewrites the whole file on every message.
+ */
+public class XMLMessageStorage implements MessageStorage {
+
+    private final String filename;
+    private final Document document;
+
+    public XMLMessageStorage(String filename) {
+        this.filename = filename;
+        this.document = TMGFileUtils.getXMLDocument(filename);
+    }
+
+    @Override
+    public synchronized SaveResult save(IOMessage message) {
+        document.getDocumentElement().appendChild(IOMessageConverter.getElementFromMessage(message, document));
+        TMGFileUtils.saveFile(document, filename);
+        return SaveResult.ACCEPTED;
+    }
+
+    @Override
+    public synchronized void saveAll(List<IOMessageView> views) {
+        for (IOMessageView view : views) {
+            document.getDocumentElement().appendChild(IOMessageConverter.getElementFromMessage(view.toMessage(), document));
+        }
+        TMGFileUtils.saveFile(document, filename);
+    }
+
+    @Override
+    public void flush() {
+    }
+
+    @Override
+    public void close() {
+    }
+}
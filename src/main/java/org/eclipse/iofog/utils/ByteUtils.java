@@ -81,4 +81,32 @@ public class ByteUtils {
     public static int getLength(String s) {
         return s != null ? s.length() : 0;
     }
+
+    /**
+     * Method calculates length of string in UTF-8 encoding without encoding it.
+     *
+     * @param s - string to measure
+     * @return int
+     */
+    public static int getUtf8Length(CharSequence s) {
+        if (s == null) {
+            return 0;
+        }
+        int len = s.length();
+        int result = 0;
+        for (int i = 0; i < len; i++) {
+            char c = s.charAt(i);
+            if (c < 0x80) {
+                result++;
+            } else if (c < 0x800) {
+                result += 2;
+            } else if (Character.isHighSurrogate(c) && i + 1 < len && Character.isLowSurrogate(s.charAt(i + 1))) {
+                result += 4;
+                i++;
+            } else {
+                result += 3;
+            }
+        }
+        return result;
+    }
 }
@@ -19,6 +19,11 @@ import org.w3c.dom.Element;
 import org.w3c.dom.Node;
 import org.w3c.dom.NodeList;
 
+import javax.xml.stream.XMLStreamConstants;
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamReader;
+import javax.xml.stream.XMLStreamWriter;
+
 /**
  * Converter for IOMessage to XML representation and backwards.
  *
@@ -37,87 +42,113 @@ public class IOMessageConverter {
         NodeList properties = xmlMessage.getChildNodes();
         for (int i = 0; i < properties.getLength(); i++) {
             Node property = properties.item(i);
-            String nodeValue = property.getTextContent();
-            switch (property.getNodeName()) {
-                case IOMessage.ID_FIELD_NAME:
-                    message.setId(nodeValue);
-                    break;
-                case IOMessage.TAG_FIELD_NAME:
-                    message.setTag(nodeValue);
-                    break;
-                case IOMessage.GROUP_ID_FIELD_NAME:
-                    message.setGroupId(nodeValue);
-                    break;
-                case IOMessage.SEQUENCE_NUMBER_FIELD_NAME:
-                    if (nodeValue != null) {
-                        message.setSequenceNumber(Integer.parseInt(nodeValue));
-                    }
-                    break;
-                case IOMessage.SEQUENCE_TOTAL_FIELD_NAME:
-                    if (nodeValue != null) {
-                        message.setSequenceTotal(Integer.parseInt(nodeValue));
-                    }
-                    break;
-                case IOMessage.PRIORITY_FIELD_NAME:
-                    if (nodeValue != null) {
-                        message.setPriority((byte) Integer.parseInt(nodeValue));
-                    }
-                    break;
-                case IOMessage.TIMESTAMP_FIELD_NAME:
-                    if (nodeValue != null) {
-                        message.setTimestamp(Long.parseLong(nodeValue));
-                    }
-                    break;
-                case IOMessage.PUBLISHER_FIELD_NAME:
-                    message.setPublisher(nodeValue);
-                    break;
-                case IOMessage.AUTH_ID_FIELD_NAME:
-                    message.setAuthId(nodeValue);
-                    break;
-                case IOMessage.AUTH_GROUP_FIELD_NAME:
-                    message.setAuthGroup(nodeValue);
-                    break;
-                case IOMessage.CHAIN_POSITION_FIELD_NAME:
-                    if (nodeValue != null) {
-                        message.setChainPosition(Long.parseLong(nodeValue));
-                    }
-                    break;
-                case IOMessage.HASH_FIELD_NAME:
-                    message.setHash(nodeValue);
-                    break;
-                case IOMessage.PREVIOUS_HASH_FIELD_NAME:
-                    message.setPreviousHash(nodeValue);
-                    break;
-                case IOMessage.NONCE_FIELD_NAME:
-                    message.setNonce(nodeValue);
-                    break;
-                case IOMessage.DIFFICULTY_TARGET_FIELD_NAME:
-                    if (nodeValue != null) {
-                        message.setDifficultyTarget(Integer.parseInt(nodeValue));
-                    }
-                    break;
-                case IOMessage.INFO_TYPE_FIELD_NAME:
-                    message.setInfoType(nodeValue);
-                    break;
-                case IOMessage.INFO_FORMAT_FIELD_NAME:
-                    message.setInfoFormat(nodeValue);
-                    break;
-                case IOMessage.CONTEXT_DATA_FIELD_NAME:
-                    if (nodeValue != null) {
-                        message.setContextData(nodeValue.getBytes());
-                    }
-                    break;
-                case IOMessage.CONTENT_DATA_FIELD_NAME:
-                    if (nodeValue != null) {
-                        message.setContentData(nodeValue.getBytes());
-                    }
-                    break;
+            setMessageProperty(message, property.getNodeName(), property.getTextContent());
+        }
+        return message;
+    }
 
-            }
+    /**
+     * Method converts XML representation to IOMessage reading it from stream.
+     * Stream has to be positioned at start of iomessage element and is left at its end.
+     *
+     * @param reader - XML stream to read from
+     * @return IOMessage
+     */
+    public static IOMessage readMessage(XMLStreamReader reader) throws XMLStreamException, NumberFormatException {
+        IOMessage message = new IOMessage();
+        while (reader.nextTag() == XMLStreamConstants.START_ELEMENT) {
+            String name = reader.getLocalName();
+            setMessageProperty(message, name, reader.getElementText());
         }
         return message;
     }
 
+    /**
+     * Method sets field of IOMessage from text of XML element, unknown elements are ignored.
+     *
+     * @param message - IOMessage to be updated
+     * @param name - name of XML element
+     * @param value - text of XML element
+     */
+    public static void setMessageProperty(IOMessage message, String name, String value) throws NumberFormatException {
+        switch (name) {
+            case IOMessage.ID_FIELD_NAME:
+                message.setId(value);
+                break;
+            case IOMessage.TAG_FIELD_NAME:
+                message.setTag(value);
+                break;
+            case IOMessage.GROUP_ID_FIELD_NAME:
+                message.setGroupId(value);
+                break;
+            case IOMessage.SEQUENCE_NUMBER_FIELD_NAME:
+                if (value != null) {
+                    message.setSequenceNumber(Integer.parseInt(value));
+                }
+                break;
+            case IOMessage.SEQUENCE_TOTAL_FIELD_NAME:
+                if (value != null) {
+                    message.setSequenceTotal(Integer.parseInt(value));
+                }
+                break;
+            case IOMessage.PRIORITY_FIELD_NAME:
+                if (value != null) {
+                    message.setPriority((byte) Integer.parseInt(value));
+                }
+                break;
+            case IOMessage.TIMESTAMP_FIELD_NAME:
+                if (value != null) {
+                    message.setTimestamp(Long.parseLong(value));
+                }
+                break;
+            case IOMessage.PUBLISHER_FIELD_NAME:
+                message.setPublisher(value);
+                break;
+            case IOMessage.AUTH_ID_FIELD_NAME:
+                message.setAuthId(value);
+                break;
+            case IOMessage.AUTH_GROUP_FIELD_NAME:
+                message.setAuthGroup(value);
+                break;
+            case IOMessage.CHAIN_POSITION_FIELD_NAME:
+                if (value != null) {
+                    message.setChainPosition(Long.parseLong(value));
+                }
+                break;
+            case IOMessage.HASH_FIELD_NAME:
+                message.setHash(value);
+                break;
+            case IOMessage.PREVIOUS_HASH_FIELD_NAME:
+                message.setPreviousHash(value);
+                break;
+            case IOMessage.NONCE_FIELD_NAME:
+                message.setNonce(value);
+                break;
+            case IOMessage.DIFFICULTY_TARGET_FIELD_NAME:
+                if (value != null) {
+                    message.setDifficultyTarget(Integer.parseInt(value));
+                }
+                break;
+            case IOMessage.INFO_TYPE_FIELD_NAME:
+                message.setInfoType(value);
+                break;
+            case IOMessage.INFO_FORMAT_FIELD_NAME:
+                message.setInfoFormat(value);
+                break;
+            case IOMessage.CONTEXT_DATA_FIELD_NAME:
+                if (value != null) {
+                    message.setContextData(value.getBytes());
+                }
+                break;
+            case IOMessage.CONTENT_DATA_FIELD_NAME:
+                if (value != null) {
+                    message.setContentData(value.getBytes());
+                }
+                break;
+
+        }
+    }
+
     /**
      * Method converts IOMessage to XML representation.
      *
@@ -172,6 +203,59 @@ public class IOMessageConverter {
         return ioMessage;
     }
 
+    /**
+     * Method writes XML representation of IOMessage to stream, in the same form as {@link #getElementFromMessage}.
+     *
+     * @param writer - XML stream to write to
+     * @param message - IOMessage to be written
+     * @param indent - indentation of message element
+     */
+    public static void writeMessage(XMLStreamWriter writer, IOMessage message, String indent) throws XMLStreamException {
+        String propertyIndent = indent + "    ";
+        writer.writeCharacters(indent);
+        writer.writeStartElement(TMGMessageManager.IO_MESSAGE_TAG_NAME);
+        writeMessageProperty(writer, propertyIndent, IOMessage.ID_FIELD_NAME, message.getId());
+        writeMessageProperty(writer, propertyIndent, IOMessage.TAG_FIELD_NAME, message.getTag());
+        writeMessageProperty(writer, propertyIndent, IOMessage.GROUP_ID_FIELD_NAME, message.getGroupId());
+        writeMessageProperty(writer, propertyIndent,
+                             IOMessage.SEQUENCE_NUMBER_FIELD_NAME, String.valueOf(message.getSequenceNumber()));
+        writeMessageProperty(writer, propertyIndent,
+                             IOMessage.SEQUENCE_TOTAL_FIELD_NAME, String.valueOf(message.getSequenceTotal()));
+        writeMessageProperty(writer, propertyIndent, IOMessage.PRIORITY_FIELD_NAME, String.valueOf(message.getPriority()));
+        writeMessageProperty(writer, propertyIndent, IOMessage.TIMESTAMP_FIELD_NAME, String.valueOf(message.getTimestamp()));
+        writeMessageProperty(writer, propertyIndent, IOMessage.PUBLISHER_FIELD_NAME, message.getPublisher());
+        writeMessageProperty(writer, propertyIndent, IOMessage.AUTH_ID_FIELD_NAME, message.getAuthId());
+        writeMessageProperty(writer, propertyIndent, IOMessage.AUTH_GROUP_FIELD_NAME, message.getAuthGroup());
+        writeMessageProperty(writer, propertyIndent, IOMessage.VERSION_FIELD_NAME, String.valueOf(message.getVersion()));
+        writeMessageProperty(writer, propertyIndent,
+                             IOMessage.CHAIN_POSITION_FIELD_NAME, String.valueOf(message.getChainPosition()));
+        writeMessageProperty(writer, propertyIndent, IOMessage.HASH_FIELD_NAME, message.getHash());
+        writeMessageProperty(writer, propertyIndent, IOMessage.PREVIOUS_HASH_FIELD_NAME, message.getPreviousHash());
+        writeMessageProperty(writer, propertyIndent, IOMessage.NONCE_FIELD_NAME, message.getNonce());
+        writeMessageProperty(writer, propertyIndent,
+                             IOMessage.DIFFICULTY_TARGET_FIELD_NAME, String.valueOf(message.getDifficultyTarget()));
+        writeMessageProperty(writer, propertyIndent, IOMessage.INFO_TYPE_FIELD_NAME, message.getInfoType());
+        writeMessageProperty(writer, propertyIndent, IOMessage.INFO_FORMAT_FIELD_NAME, message.getInfoFormat());
+        writeMessageProperty(writer, propertyIndent, IOMessage.CONTEXT_DATA_FIELD_NAME,
+                             message.getContextData() == null ? "" : new String(message.getContextData()));
+        writeMessageProperty(writer, propertyIndent, IOMessage.CONTENT_DATA_FIELD_NAME,
+                             message.getContentData() == null ? "" : new String(message.getContentData()));
+        writer.writeCharacters(indent);
+        writer.writeEndElement();
+    }
+
+    private static void writeMessageProperty(XMLStreamWriter writer, String indent, String tagName, String value)
+            throws XMLStreamException {
+        writer.writeCharacters(indent);
+        if (value == null || value.isEmpty()) {
+            writer.writeEmptyElement(tagName);
+        } else {
+            writer.writeStartElement(tagName);
+            writer.writeCharacters(value);
+            writer.writeEndElement();
+        }
+    }
+
     private static void appendMessageProperty(Element ioMessage, Document document, String tagName, String value) {
         Element element = document.createElement(tagName);
         element.appendChild(document.createTextNode(value));
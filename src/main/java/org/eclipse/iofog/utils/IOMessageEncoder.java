@@ -0,0 +1,228 @@
+/*
+ * *******************************************************************************
+ *   Copyright (c) 2018 Edgeworx, Inc.
+ *
+ *   This program and the accompanying materials are made available under the
+ *   terms of the Eclipse Public License v. 2.0 which is available at
+ *   http://www.eclipse.org/legal/epl-2.0
+ *
+ *   SPDX-License-Identifier: EPL-2.0
+ * *******************************************************************************
+ */
+
+package org.eclipse.iofog.utils;
+
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.ByteBufAllocator;
+import org.eclipse.iofog.utils.elements.IOMessage;
+import org.eclipse.iofog.ws.manager.WebSocketManager;
+
+/**
+ * Encoder of IOMessage to binary (version 4) representation.
+ * Sizes of header and data are calculated up front, so message is written only once directly to the target buffer.
+ */
+public class IOMessageEncoder {
+
+    public static final int HEADER_SIZE = 33;
+    public static final int FRAME_PREFIX_SIZE = 5;
+
+    /**
+     * Method calculates size of data part of binary representation of IOMessage.
+     *
+     * @param message - IOMessage to measure
+     * @return int
+     */
+    public static int getDataSize(IOMessage message) {
+        int size = ByteUtils.getUtf8Length(message.getId())
+                + ByteUtils.getUtf8Length(message.getTag())
+                + ByteUtils.getUtf8Length(message.getGroupId())
+                + ByteUtils.getUtf8Length(message.getPublisher())
+                + ByteUtils.getUtf8Length(message.getAuthId())
+                + ByteUtils.getUtf8Length(message.getAuthGroup())
+                + ByteUtils.getUtf8Length(message.getHash())
+                + ByteUtils.getUtf8Length(message.getPreviousHash())
+                + ByteUtils.getUtf8Length(message.getNonce())
+                + ByteUtils.getUtf8Length(message.getInfoType())
+                + ByteUtils.getUtf8Length(message.getInfoFormat());
+        size += message.getSequenceNumber() == 0 ? 0 : Integer.BYTES;
+        size += message.getSequenceTotal() == 0 ? 0 : Integer.BYTES;
+        size += message.getPriority() == 0 ? 0 : Byte.BYTES;
+        size += message.getTimestamp() == 0 ? 0 : Long.BYTES;
+        size += message.getChainPosition() == 0 ? 0 : Long.BYTES;
+        size += message.getDifficultyTarget() == 0 ? 0 : Integer.BYTES;
+        size += message.getContextData() == null ? 0 : message.getContextData().length;
+        size += message.getContentData() == null ? 0 : message.getContentData().length;
+        return size;
+    }
+
+    /**
+     * Method calculates full size of binary representation of IOMessage (header and data).
+     *
+     * @param message - IOMessage to measure
+     * @return int
+     */
+    public static int getEncodedSize(IOMessage message) {
+        return HEADER_SIZE + getDataSize(message);
+    }
+
+    /**
+     * Method writes binary representation of IOMessage (header, then data) to buffer.
+     *
+     * @param message - IOMessage to be encoded
+     * @param out - buffer to write to
+     */
+    public static void encode(IOMessage message, ByteBuf out) {
+        byte[] contentData = message.getContentData();
+        encode(message, contentData == null ? 0 : contentData.length, out);
+        if (contentData != null) {
+            out.writeBytes(contentData);
+        }
+    }
+
+    /**
+     * Method writes header and data of IOMessage except content data, header gets given length of content data.
+     */
+    private static void encode(IOMessage message, int contentLength, ByteBuf out) {
+        int idLen = ByteUtils.getUtf8Length(message.getId());
+        int tagLen = ByteUtils.getUtf8Length(message.getTag());
+        int groupIdLen = ByteUtils.getUtf8Length(message.getGroupId());
+        int publisherLen = ByteUtils.getUtf8Length(message.getPublisher());
+        int authIdLen = ByteUtils.getUtf8Length(message.getAuthId());
+        int authGroupLen = ByteUtils.getUtf8Length(message.getAuthGroup());
+        int hashLen = ByteUtils.getUtf8Length(message.getHash());
+        int previousHashLen = ByteUtils.getUtf8Length(message.getPreviousHash());
+        int nonceLen = ByteUtils.getUtf8Length(message.getNonce());
+        int infoTypeLen = ByteUtils.getUtf8Length(message.getInfoType());
+        int infoFormatLen = ByteUtils.getUtf8Length(message.getInfoFormat());
+        byte[] contextData = message.getContextData();
+
+        out.writeShort(message.getVersion());
+        out.writeByte(idLen);
+        out.writeShort(tagLen);
+        out.writeByte(groupIdLen);
+        out.writeByte(message.getSequenceNumber() == 0 ? 0 : Integer.BYTES);
+        out.writeByte(message.getSequenceTotal() == 0 ? 0 : Integer.BYTES);
+        out.writeByte(message.getPriority() == 0 ? 0 : Byte.BYTES);
+        out.writeByte(message.getTimestamp() == 0 ? 0 : Long.BYTES);
+        out.writeByte(publisherLen);
+        out.writeShort(authIdLen);
+        out.writeShort(authGroupLen);
+        out.writeByte(message.getChainPosition() == 0 ? 0 : Long.BYTES);
+        out.writeShort(hashLen);
+        out.writeShort(previousHashLen);
+        out.writeShort(nonceLen);
+        out.writeByte(message.getDifficultyTarget() == 0 ? 0 : Integer.BYTES);
+        out.writeByte(infoTypeLen);
+        out.writeByte(infoFormatLen);
+        out.writeInt(contextData == null ? 0 : contextData.length);
+        out.writeInt(contentLength);
+
+        writeUtf8(out, message.getId(), idLen);
+        writeUtf8(out, message.getTag(), tagLen);
+        writeUtf8(out, message.getGroupId(), groupIdLen);
+        if (message.getSequenceNumber() != 0) {
+            out.writeInt(message.getSequenceNumber());
+        }
+        if (message.getSequenceTotal() != 0) {
+            out.writeInt(message.getSequenceTotal());
+        }
+        if (message.getPriority() != 0) {
+            out.writeByte(message.getPriority());
+        }
+        if (message.getTimestamp() != 0) {
+            out.writeLong(message.getTimestamp());
+        }
+        writeUtf8(out, message.getPublisher(), publisherLen);
+        writeUtf8(out, message.getAuthId(), authIdLen);
+        writeUtf8(out, message.getAuthGroup(), authGroupLen);
+        if (message.getChainPosition() != 0) {
+            out.writeLong(message.getChainPosition());
+        }
+        writeUtf8(out, message.getHash(), hashLen);
+        writeUtf8(out, message.getPreviousHash(), previousHashLen);
+        writeUtf8(out, message.getNonce(), nonceLen);
+        if (message.getDifficultyTarget() != 0) {
+            out.writeInt(message.getDifficultyTarget());
+        }
+        writeUtf8(out, message.getInfoType(), infoTypeLen);
+        writeUtf8(out, message.getInfoFormat(), infoFormatLen);
+        if (contextData != null) {
+            out.writeBytes(contextData);
+        }
+    }
+
+    /**
+     * Method builds ready to send message frame content: OPCODE_MSG, length of message and message itself.
+     *
+     * @param message - IOMessage to be encoded
+     * @param alloc - allocator of channel the frame will be sent to
+     * @return ByteBuf
+     */
+    public static ByteBuf encodeFrame(IOMessage message, ByteBufAllocator alloc) {
+        ByteBuf out = alloc.buffer(FRAME_PREFIX_SIZE + getEncodedSize(message));
+        encodeFrame(message, out);
+        return out;
+    }
+
+    /**
+     * Method writes message frame content (OPCODE_MSG, length of message and message itself) to buffer.
+     *
+     * @param message - IOMessage to be encoded
+     * @param out - buffer to write to
+     */
+    public static void encodeFrame(IOMessage message, ByteBuf out) {
+        out.writeByte(WebSocketManager.OPCODE_MSG);
+        out.writeInt(getEncodedSize(message));
+        encode(message, out);
+    }
+
+    /**
+     * Method writes message frame content with content data taken from buffer instead of IOMessage,
+     * so generated content doesn't have to be copied to an array first. Content data of IOMessage itself is ignored.
+     *
+     * @param message - IOMessage to be encoded
+     * @param contentData - buffer holding content data
+     * @param contentIndex - index of content data in the buffer
+     * @param contentLength - length of content data
+     * @param out - buffer to write to
+     */
+    public static void encodeFrame(IOMessage message, ByteBuf contentData, int contentIndex, int contentLength, ByteBuf out) {
+        byte[] messageContentData = message.getContentData();
+        out.writeByte(WebSocketManager.OPCODE_MSG);
+        out.writeInt(getEncodedSize(message) - (messageContentData == null ? 0 : messageContentData.length) + contentLength);
+        encode(message, contentLength, out);
+        out.writeBytes(contentData, contentIndex, contentLength);
+    }
+
+    private static void writeUtf8(ByteBuf out, String s, int utf8Length) {
+        if (utf8Length == 0) {
+            return;
+        }
+        if (utf8Length == s.length()) {
+            for (int i = 0; i < utf8Length; i++) {
+                out.writeByte(s.charAt(i));
+            }
+            return;
+        }
+        int len = s.length();
+        for (int i = 0; i < len; i++) {
+            char c = s.charAt(i);
+            if (c < 0x80) {
+                out.writeByte(c);
+            } else if (c < 0x800) {
+                out.writeByte(0xc0 | (c >> 6));
+                out.writeByte(0x80 | (c & 0x3f));
+            } else if (Character.isHighSurrogate(c) && i + 1 < len && Character.isLowSurrogate(s.charAt(i + 1))) {
+                int codePoint = Character.toCodePoint(c, s.charAt(++i));
+                out.writeByte(0xf0 | (codePoint >> 18));
+                out.writeByte(0x80 | ((codePoint >> 12) & 0x3f));
+                out.writeByte(0x80 | ((codePoint >> 6) & 0x3f));
+                out.writeByte(0x80 | (codePoint & 0x3f));
+            } else {
+                out.writeByte(0xe0 | (c >> 12));
+                out.writeByte(0x80 | ((c >> 6) & 0x3f));
+                out.writeByte(0x80 | (c & 0x3f));
+            }
+        }
+    }
+}
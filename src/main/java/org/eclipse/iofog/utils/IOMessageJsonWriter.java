@@ -0,0 +1,148 @@
+/*
+ * *******************************************************************************
+ *   Copyright (c) 2018 Edgeworx, Inc.
+ *
+ *   This program and the accompanying materials are made available under the
+ *   terms of the Eclipse Public License v. 2.0 which is available at
+ *   http://www.eclipse.org/legal/epl-2.0
+ *
+ *   SPDX-License-Identifier: EPL-2.0
+ * *******************************************************************************
+ */
+
+package org.eclipse.iofog.utils;
+
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.ByteBufOutputStream;
+import io.netty.util.CharsetUtil;
+import org.eclipse.iofog.utils.elements.IOMessage;
+
+import javax.json.Json;
+import javax.json.stream.JsonGenerator;
+import javax.json.stream.JsonGeneratorFactory;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Streaming writer of JSON responses with IOMessages.
+ * Response is generated directly to the output buffer, base64 payloads are encoded in place without
+ * intermediate arrays or strings, so extra memory doesn't depend on number and size of messages.
+ */
+public class IOMessageJsonWriter {
+
+    private static final JsonGeneratorFactory generatorFactory = Json.createGeneratorFactory(Collections.emptyMap());
+
+    private static final byte[] CONTEXT_DATA_START = (",\"" + IOMessage.CONTEXT_DATA_FIELD_NAME + "\":\"").getBytes(CharsetUtil.US_ASCII);
+    private static final byte[] CONTENT_DATA_START = ("\",\"" + IOMessage.CONTENT_DATA_FIELD_NAME + "\":\"").getBytes(CharsetUtil.US_ASCII);
+    private static final byte[] BASE64_ALPHABET = "ABCDEFGHIJKLMNOPQRSTUVWXYZabcdefghijklmnopqrstuvwxyz0123456789+/".getBytes(CharsetUtil.US_ASCII);
+
+    /**
+     * Method writes response with list of IOMessages.
+     *
+     * @param out - buffer to write to
+     * @param messages - IOMessages to be written
+     */
+    public static void writeMessagesResponse(ByteBuf out, List<IOMessage> messages) {
+        writeMessagesResponse(out, messages, false, 0, 0);
+    }
+
+    /**
+     * Method writes response with list of IOMessages and bounds of their timeframe.
+     *
+     * @param out - buffer to write to
+     * @param messages - IOMessages to be written
+     * @param timeframeStart - start of timeframe
+     * @param timeframeEnd - end of timeframe
+     */
+    public static void writeMessagesResponse(ByteBuf out, List<IOMessage> messages, long timeframeStart, long timeframeEnd) {
+        writeMessagesResponse(out, messages, true, timeframeStart, timeframeEnd);
+    }
+
+    /**
+     * Method writes single IOMessage in the same form as {@link IOMessage#toJSON()}.
+     *
+     * @param out - buffer to write to
+     * @param message - IOMessage to be written
+     */
+    public static void writeMessage(ByteBuf out, IOMessage message) {
+        JsonGenerator generator = generatorFactory.createGenerator(new ByteBufOutputStream(out), CharsetUtil.UTF_8);
+        writeMessage(generator, out, message);
+        generator.close();
+    }
+
+    private static void writeMessagesResponse(ByteBuf out, List<IOMessage> messages, boolean withTimeframe,
+                                              long timeframeStart, long timeframeEnd) {
+        JsonGenerator generator = generatorFactory.createGenerator(new ByteBufOutputStream(out), CharsetUtil.UTF_8);
+        generator.writeStartObject()
+                 .write(IOFogResponseUtils.STATUS_FIELD_NAME, "okay")
+                 .write(IOFogResponseUtils.COUNT_FIELD_NAME, messages.size())
+                 .writeStartArray(IOFogResponseUtils.MESSAGES_FIELD_NAME);
+        for (IOMessage message : messages) {
+            writeMessage(generator, out, message);
+        }
+        generator.writeEnd();
+        if (withTimeframe) {
+            generator.write(IOFogResponseUtils.TIMEFRAME_START_FIELD_NAME, timeframeStart)
+                     .write(IOFogResponseUtils.TIMEFRAME_END_FIELD_NAME, timeframeEnd);
+        }
+        generator.writeEnd();
+        generator.close();
+    }
+
+    /**
+     * Method writes IOMessage in the same form as {@link IOMessage#toJSON()}.
+     * Base64 payloads are the last fields of message and never need escaping, so generator is flushed
+     * and they are written straight to the buffer; generator then only closes the object.
+     */
+    private static void writeMessage(JsonGenerator generator, ByteBuf out, IOMessage message) {
+        generator.writeStartObject()
+                 .write(IOMessage.ID_FIELD_NAME, message.getId())
+                 .write(IOMessage.TAG_FIELD_NAME, message.getTag())
+                 .write(IOMessage.GROUP_ID_FIELD_NAME, message.getGroupId())
+                 .write(IOMessage.SEQUENCE_NUMBER_FIELD_NAME, message.getSequenceNumber())
+                 .write(IOMessage.SEQUENCE_TOTAL_FIELD_NAME, message.getSequenceTotal())
+                 .write(IOMessage.PRIORITY_FIELD_NAME, message.getPriority())
+                 .write(IOMessage.TIMESTAMP_FIELD_NAME, message.getTimestamp())
+                 .write(IOMessage.PUBLISHER_FIELD_NAME, message.getPublisher())
+                 .write(IOMessage.AUTH_ID_FIELD_NAME, message.getAuthId())
+                 .write(IOMessage.AUTH_GROUP_FIELD_NAME, message.getAuthGroup())
+                 .write(IOMessage.VERSION_FIELD_NAME, message.getVersion())
+                 .write(IOMessage.CHAIN_POSITION_FIELD_NAME, message.getChainPosition())
+                 .write(IOMessage.HASH_FIELD_NAME, message.getHash())
+                 .write(IOMessage.PREVIOUS_HASH_FIELD_NAME, message.getPreviousHash())
+                 .write(IOMessage.NONCE_FIELD_NAME, message.getNonce())
+                 .write(IOMessage.DIFFICULTY_TARGET_FIELD_NAME, message.getDifficultyTarget())
+                 .write(IOMessage.INFO_TYPE_FIELD_NAME, message.getInfoType())
+                 .write(IOMessage.INFO_FORMAT_FIELD_NAME, message.getInfoFormat());
+        generator.flush();
+        out.writeBytes(CONTEXT_DATA_START);
+        writeBase64(out, message.getContextData());
+        out.writeBytes(CONTENT_DATA_START);
+        writeBase64(out, message.getContentData());
+        out.writeByte('"');
+        generator.writeEnd();
+    }
+
+    private static void writeBase64(ByteBuf out, byte[] data) {
+        if (data == null) {
+            return;
+        }
+        out.ensureWritable((data.length + 2) / 3 * 4);
+        int i = 0;
+        for (; i + 2 < data.length; i += 3) {
+            int bits = (data[i] & 0xff) << 16 | (data[i + 1] & 0xff) << 8 | (data[i + 2] & 0xff);
+            out.writeByte(BASE64_ALPHABET[bits >>> 18]);
+            out.writeByte(BASE64_ALPHABET[(bits >>> 12) & 0x3f]);
+            out.writeByte(BASE64_ALPHABET[(bits >>> 6) & 0x3f]);
+            out.writeByte(BASE64_ALPHABET[bits & 0x3f]);
+        }
+        int remaining = data.length - i;
+        if (remaining > 0) {
+            int bits = (data[i] & 0xff) << 16 | (remaining == 2 ? (data[i + 1] & 0xff) << 8 : 0);
+            out.writeByte(BASE64_ALPHABET[bits >>> 18]);
+            out.writeByte(BASE64_ALPHABET[(bits >>> 12) & 0x3f]);
+            out.writeByte(remaining == 2 ? BASE64_ALPHABET[(bits >>> 6) & 0x3f] : '=');
+            out.writeByte('=');
+        }
+    }
+}
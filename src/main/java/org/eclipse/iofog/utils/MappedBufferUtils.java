@@ -0,0 +1,74 @@
+/*
+ * *******************************************************************************
+ *   Copyright (c) 2018 Edgeworx, Inc.
+ *
+ *   This program and the accompanying materials are made available under the
+ *   terms of the Eclipse Public License v. 2.0 which is available at
+ *   http://www.eclipse.org/legal/epl-2.0
+ *
+ *   SPDX-License-Identifier: EPL-2.0
+ * *******************************************************************************
+ */
+
+package org.eclipse.iofog.utils;
+
+import java.lang.reflect.Field;
+import java.lang.reflect.Method;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.util.logging.Logger;
+
+/**
+ * Utils class for unmapping memory-mapped files without waiting for garbage collection.
+ * Java has no public API for it: Java 9 and newer unmap through Unsafe.invokeCleaner,
+ * Java 8 through cleaner of the buffer. If neither is available, mapping stays until the buffer is collected.
+ */
+public class MappedBufferUtils {
+
+    private static final Logger log = Logger.getLogger(MappedBufferUtils.class.getName());
+
+    private static final Unmapper UNMAPPER = createUnmapper();
+
+    private interface Unmapper {
+        void unmap(ByteBuffer buffer) throws Exception;
+    }
+
+    /**
+     * Method unmaps memory-mapped buffer. Buffer and all buffers sharing its memory must not be used afterwards.
+     *
+     * @param buffer - buffer to be unmapped
+     * @return false if buffer couldn't be unmapped and stays mapped until it is garbage collected
+     */
+    public static boolean unmap(MappedByteBuffer buffer) {
+        if (UNMAPPER == null) {
+            return false;
+        }
+        try {
+            UNMAPPER.unmap(buffer);
+            return true;
+        } catch (Exception e) {
+            log.warning("Couldn't unmap buffer, it stays mapped until garbage collection. " + e);
+            return false;
+        }
+    }
+
+    private static Unmapper createUnmapper() {
+        try {
+            Class<?> unsafeClass = Class.forName("sun.misc.Unsafe");
+            try {
+                Method invokeCleaner = unsafeClass.getMethod("invokeCleaner", ByteBuffer.class);
+                Field theUnsafe = unsafeClass.getDeclaredField("theUnsafe");
+                theUnsafe.setAccessible(true);
+                Object unsafe = theUnsafe.get(null);
+                return buffer -> invokeCleaner.invoke(unsafe, buffer);
+            } catch (NoSuchMethodException e) {
+                Method cleaner = Class.forName("sun.nio.ch.DirectBuffer").getMethod("cleaner");
+                Method clean = Class.forName("sun.misc.Cleaner").getMethod("clean");
+                return buffer -> clean.invoke(cleaner.invoke(buffer));
+            }
+        } catch (Exception e) {
+            log.warning("Unmapping of memory-mapped files isn't supported, mapped files are released by garbage collection. " + e);
+            return null;
+        }
+    }
+}
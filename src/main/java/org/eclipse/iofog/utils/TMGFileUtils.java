@@ -40,6 +40,17 @@ public class TMGFileUtils {
 
     private static DocumentBuilderFactory dbf = DocumentBuilderFactory.newInstance();
 
+    /**
+     * Method returns file from TMG files folder.
+     *
+     * @param filename - name of the file
+     *
+     * @return File
+     */
+    public static File getFile(String filename){
+        return new File(FILE_PATH + filename);
+    }
+
     /**
      * Method opens file based on its name.
      *
@@ -12,12 +12,13 @@
 
 package org.eclipse.iofog.utils.elements;
 
+import io.netty.buffer.Unpooled;
 import org.eclipse.iofog.utils.ByteUtils;
+import org.eclipse.iofog.utils.IOMessageEncoder;
 import org.eclipse.iofog.utils.IOMessageUtils;
 
 import javax.json.Json;
 import javax.json.JsonObject;
-import java.io.ByteArrayOutputStream;
 import java.util.Arrays;
 
 /**
@@ -322,141 +323,9 @@ public class IOMessage {
     }
 
     public byte[] toBytes() {
-        try (ByteArrayOutputStream headerBytes = new ByteArrayOutputStream();
-             ByteArrayOutputStream dataBytes = new ByteArrayOutputStream();
-             ByteArrayOutputStream result = new ByteArrayOutputStream()) {
-
-
-            headerBytes.write(ByteUtils.shortToBytes(VERSION));
-            int len = ByteUtils.getLength(id);
-            headerBytes.write((byte) len);
-            if (len > 0) {
-                dataBytes.write(ByteUtils.stringToBytes(getId()));
-            }
-
-            len = ByteUtils.getLength(tag);
-            headerBytes.write(ByteUtils.shortToBytes((short) len));
-            if (len > 0) {
-                dataBytes.write(ByteUtils.stringToBytes(getTag()));
-            }
-
-            len = ByteUtils.getLength(groupId);
-            headerBytes.write((byte) len);
-            if (len > 0) {
-                dataBytes.write(ByteUtils.stringToBytes(groupId));
-            }
-
-            if (getSequenceNumber() == 0) {
-                headerBytes.write(0);
-            } else {
-                dataBytes.write(ByteUtils.integerToBytes(sequenceNumber));
-                headerBytes.write(4);
-            }
-
-            if (getSequenceTotal() == 0) {
-                headerBytes.write(0);
-            } else {
-                dataBytes.write(ByteUtils.integerToBytes(sequenceTotal));
-                headerBytes.write(4);
-            }
-
-            if (getPriority() == 0) {
-                headerBytes.write(0);
-            } else {
-                headerBytes.write(1);
-                dataBytes.write(getPriority());
-            }
-
-            if (getTimestamp() == 0) {
-                headerBytes.write(0);
-            } else {
-                headerBytes.write(8);
-                dataBytes.write(ByteUtils.longToBytes(timestamp));
-            }
-
-            len = ByteUtils.getLength(getPublisher());
-            headerBytes.write((byte) (len & 0xff));
-            if (len > 0) {
-                dataBytes.write(ByteUtils.stringToBytes(publisher));
-            }
-
-            len = ByteUtils.getLength(getAuthId());
-            headerBytes.write(ByteUtils.shortToBytes((short) len));
-            if (len > 0) {
-                dataBytes.write(ByteUtils.stringToBytes(authId));
-            }
-
-            len = ByteUtils.getLength(authGroup);
-            headerBytes.write(ByteUtils.shortToBytes((short) len));
-            if (len > 0) {
-                dataBytes.write(ByteUtils.stringToBytes(authGroup));
-            }
-
-            if (getChainPosition() == 0) {
-                headerBytes.write(0);
-            } else {
-                headerBytes.write(8);
-                dataBytes.write(ByteUtils.longToBytes(chainPosition));
-            }
-
-            len = ByteUtils.getLength(hash);
-            headerBytes.write(ByteUtils.shortToBytes((short) len));
-            if (len > 0) {
-                dataBytes.write(ByteUtils.stringToBytes(hash));
-            }
-
-            len = ByteUtils.getLength(previousHash);
-            headerBytes.write(ByteUtils.shortToBytes((short) len));
-            if (len > 0) {
-                dataBytes.write(ByteUtils.stringToBytes(previousHash));
-            }
-
-            len = ByteUtils.getLength(getNonce());
-            headerBytes.write(ByteUtils.shortToBytes((short) len));
-            if (len > 0) {
-                dataBytes.write(ByteUtils.stringToBytes(nonce));
-            }
-
-            if (getDifficultyTarget() == 0) {
-                headerBytes.write(0);
-            } else {
-                headerBytes.write(4);
-                dataBytes.write(ByteUtils.integerToBytes(difficultyTarget));
-            }
-
-            len = ByteUtils.getLength(getInfoType());
-            headerBytes.write((byte) len);
-            if (len > 0) {
-                dataBytes.write(ByteUtils.stringToBytes(infoType));
-            }
-
-            len = ByteUtils.getLength(infoFormat);
-            headerBytes.write((byte) len);
-            if (len > 0) {
-                dataBytes.write(ByteUtils.stringToBytes(infoFormat));
-            }
-
-            if (getContextData() == null) {
-                headerBytes.write(ByteUtils.integerToBytes(0));
-            } else {
-                headerBytes.write(ByteUtils.integerToBytes(contextData.length));
-                dataBytes.write(contextData);
-            }
-
-            if (getContentData() == null) {
-                headerBytes.write(ByteUtils.integerToBytes(0));
-            } else {
-                headerBytes.write(ByteUtils.integerToBytes(contentData.length));
-                dataBytes.write(contentData);
-            }
-
-            headerBytes.writeTo(result);
-            dataBytes.writeTo(result);
-            return result.toByteArray();
-        } catch (Exception e) {
-            e.printStackTrace();
-        }
-        return new byte[]{};
+        byte[] result = new byte[IOMessageEncoder.getEncodedSize(this)];
+        IOMessageEncoder.encode(this, Unpooled.wrappedBuffer(result).writerIndex(0));
+        return result;
     }
 
     private void convertBytesToMessage(byte[] header, byte[] data, int pos) {
@@ -0,0 +1,369 @@
+/*
+ * *******************************************************************************
+ *   Copyright (c) 2018 Edgeworx, Inc.
+ *
+ *   This program and the accompanying materials are made available under the
+ *   terms of the Eclipse Public License v. 2.0 which is available at
+ *   http://www.eclipse.org/legal/epl-2.0
+ *
+ *   SPDX-License-Identifier: EPL-2.0
+ * *******************************************************************************
+ */
+
+package org.eclipse.iofog.utils.elements;
+
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.ByteBufUtil;
+import io.netty.util.CharsetUtil;
+import org.eclipse.iofog.utils.ByteUtils;
+import org.eclipse.iofog.utils.IOMessageEncoder;
+
+/**
+ * Read-only view of binary (version 4) IOMessage that sits on top of the received buffer.
+ * Only offsets of fields are calculated on creation, values are decoded when they are read.
+ * Id and timestamp can be replaced without touching the buffer, e.g. when received message gets its own id and timestamp;
+ * {@link #encode(ByteBuf)} then writes the message with replaced fields and copies all other fields as they are.
+ * View doesn't retain the buffer, so it must not be used after the buffer is released.
+ */
+public class IOMessageView {
+
+    private static final short VERSION = 4;
+
+    private static final int ID = 0;
+    private static final int TAG = 1;
+    private static final int GROUP_ID = 2;
+    private static final int SEQUENCE_NUMBER = 3;
+    private static final int SEQUENCE_TOTAL = 4;
+    private static final int PRIORITY = 5;
+    private static final int TIMESTAMP = 6;
+    private static final int PUBLISHER = 7;
+    private static final int AUTH_ID = 8;
+    private static final int AUTH_GROUP = 9;
+    private static final int CHAIN_POSITION = 10;
+    private static final int HASH = 11;
+    private static final int PREVIOUS_HASH = 12;
+    private static final int NONCE = 13;
+    private static final int DIFFICULTY_TARGET = 14;
+    private static final int INFO_TYPE = 15;
+    private static final int INFO_FORMAT = 16;
+    private static final int CONTEXT_DATA = 17;
+    private static final int CONTENT_DATA = 18;
+    private static final int FIELDS_COUNT = 19;
+
+    private final ByteBuf buffer;
+    private final int base;
+    private final short version;
+    private final int[] offsets = new int[FIELDS_COUNT + 1];
+
+    private String id;
+    private String tag;
+    private String groupId;
+    private String publisher;
+    private String authId;
+    private String authGroup;
+    private String hash;
+    private String previousHash;
+    private String nonce;
+    private String infoType;
+    private String infoFormat;
+    private String replacedId;
+    private boolean timestampReplaced;
+    private long replacedTimestamp;
+
+    /**
+     * Creates view over binary IOMessage starting at reader index of buffer.
+     *
+     * @param buffer - buffer containing header and data of IOMessage
+     */
+    public IOMessageView(ByteBuf buffer) {
+        this.buffer = buffer;
+        this.base = buffer.readerIndex();
+        this.version = buffer.getShort(base);
+        if (version != VERSION) {
+            return;
+        }
+        int pos = base + IOMessageEncoder.HEADER_SIZE;
+        offsets[ID] = pos;
+        offsets[TAG] = pos += buffer.getUnsignedByte(base + 2);
+        offsets[GROUP_ID] = pos += buffer.getUnsignedShort(base + 3);
+        offsets[SEQUENCE_NUMBER] = pos += buffer.getUnsignedByte(base + 5);
+        offsets[SEQUENCE_TOTAL] = pos += buffer.getUnsignedByte(base + 6);
+        offsets[PRIORITY] = pos += buffer.getUnsignedByte(base + 7);
+        offsets[TIMESTAMP] = pos += buffer.getUnsignedByte(base + 8);
+        offsets[PUBLISHER] = pos += buffer.getUnsignedByte(base + 9);
+        offsets[AUTH_ID] = pos += buffer.getUnsignedByte(base + 10);
+        offsets[AUTH_GROUP] = pos += buffer.getUnsignedShort(base + 11);
+        offsets[CHAIN_POSITION] = pos += buffer.getUnsignedShort(base + 13);
+        offsets[HASH] = pos += buffer.getUnsignedByte(base + 15);
+        offsets[PREVIOUS_HASH] = pos += buffer.getUnsignedShort(base + 16);
+        offsets[NONCE] = pos += buffer.getUnsignedShort(base + 18);
+        offsets[DIFFICULTY_TARGET] = pos += buffer.getUnsignedShort(base + 20);
+        offsets[INFO_TYPE] = pos += buffer.getUnsignedByte(base + 22);
+        offsets[INFO_FORMAT] = pos += buffer.getUnsignedByte(base + 23);
+        offsets[CONTEXT_DATA] = pos += buffer.getUnsignedByte(base + 24);
+        offsets[CONTENT_DATA] = pos += buffer.getInt(base + 25);
+        offsets[FIELDS_COUNT] = pos + buffer.getInt(base + 29);
+    }
+
+    public boolean isSupportedVersion() {
+        return version == VERSION;
+    }
+
+    public short getVersion() {
+        return version;
+    }
+
+    /**
+     * Method returns full length of IOMessage (header and data) in buffer.
+     *
+     * @return int
+     */
+    public int getLength() {
+        return isSupportedVersion() ? offsets[FIELDS_COUNT] - base : 0;
+    }
+
+    public String getId() {
+        if (replacedId != null) {
+            return replacedId;
+        }
+        if (id == null) {
+            id = getString(ID);
+        }
+        return id;
+    }
+
+    public String getTag() {
+        if (tag == null) {
+            tag = getString(TAG);
+        }
+        return tag;
+    }
+
+    public String getGroupId() {
+        if (groupId == null) {
+            groupId = getString(GROUP_ID);
+        }
+        return groupId;
+    }
+
+    public int getSequenceNumber() {
+        return size(SEQUENCE_NUMBER) > 0 ? buffer.getInt(offsets[SEQUENCE_NUMBER]) : 0;
+    }
+
+    public int getSequenceTotal() {
+        return size(SEQUENCE_TOTAL) > 0 ? buffer.getInt(offsets[SEQUENCE_TOTAL]) : 0;
+    }
+
+    public byte getPriority() {
+        return size(PRIORITY) > 0 ? buffer.getByte(offsets[PRIORITY]) : 0;
+    }
+
+    /**
+     * Method replaces id of message, buffer is left unchanged.
+     *
+     * @param id - new id
+     */
+    public void setId(String id) {
+        this.replacedId = id;
+    }
+
+    public long getTimestamp() {
+        if (timestampReplaced) {
+            return replacedTimestamp;
+        }
+        return size(TIMESTAMP) > 0 ? buffer.getLong(offsets[TIMESTAMP]) : 0;
+    }
+
+    /**
+     * Method replaces timestamp of message, buffer is left unchanged.
+     *
+     * @param timestamp - new timestamp
+     */
+    public void setTimestamp(long timestamp) {
+        this.timestampReplaced = true;
+        this.replacedTimestamp = timestamp;
+    }
+
+    public String getPublisher() {
+        if (publisher == null) {
+            publisher = getString(PUBLISHER);
+        }
+        return publisher;
+    }
+
+    public String getAuthId() {
+        if (authId == null) {
+            authId = getString(AUTH_ID);
+        }
+        return authId;
+    }
+
+    public String getAuthGroup() {
+        if (authGroup == null) {
+            authGroup = getString(AUTH_GROUP);
+        }
+        return authGroup;
+    }
+
+    public long getChainPosition() {
+        return size(CHAIN_POSITION) > 0 ? buffer.getLong(offsets[CHAIN_POSITION]) : 0;
+    }
+
+    public String getHash() {
+        if (hash == null) {
+            hash = getString(HASH);
+        }
+        return hash;
+    }
+
+    public String getPreviousHash() {
+        if (previousHash == null) {
+            previousHash = getString(PREVIOUS_HASH);
+        }
+        return previousHash;
+    }
+
+    public String getNonce() {
+        if (nonce == null) {
+            nonce = getString(NONCE);
+        }
+        return nonce;
+    }
+
+    public int getDifficultyTarget() {
+        return size(DIFFICULTY_TARGET) > 0 ? buffer.getInt(offsets[DIFFICULTY_TARGET]) : 0;
+    }
+
+    public String getInfoType() {
+        if (infoType == null) {
+            infoType = getString(INFO_TYPE);
+        }
+        return infoType;
+    }
+
+    public String getInfoFormat() {
+        if (infoFormat == null) {
+            infoFormat = getString(INFO_FORMAT);
+        }
+        return infoFormat;
+    }
+
+    /**
+     * Method returns context data as a slice of underlying buffer (no copy).
+     *
+     * @return ByteBuf
+     */
+    public ByteBuf getContextData() {
+        return slice(CONTEXT_DATA);
+    }
+
+    /**
+     * Method returns content data as a slice of underlying buffer (no copy).
+     *
+     * @return ByteBuf
+     */
+    public ByteBuf getContentData() {
+        return slice(CONTENT_DATA);
+    }
+
+    /**
+     * Method calculates size of binary representation of message written by {@link #encode(ByteBuf)}.
+     *
+     * @return int
+     */
+    public int getEncodedSize() {
+        checkVersion();
+        return getLength() - size(ID) - size(TIMESTAMP) + ByteUtils.getUtf8Length(getId()) + (getTimestamp() == 0 ? 0 : Long.BYTES);
+    }
+
+    /**
+     * Method writes binary representation of message to buffer. Header is copied with length of id and timestamp
+     * updated, all fields except replaced id and timestamp are copied from underlying buffer without decoding.
+     *
+     * @param out - buffer to write to
+     */
+    public void encode(ByteBuf out) {
+        checkVersion();
+        long timestamp = getTimestamp();
+        int header = out.writerIndex();
+        out.writeBytes(buffer, base, IOMessageEncoder.HEADER_SIZE);
+        if (replacedId != null) {
+            out.setByte(header + 2, ByteBufUtil.writeUtf8(out, replacedId));
+        } else {
+            out.writeBytes(buffer, offsets[ID], size(ID));
+        }
+        out.setByte(header + 9, timestamp == 0 ? 0 : Long.BYTES);
+        out.writeBytes(buffer, offsets[TAG], offsets[TIMESTAMP] - offsets[TAG]);
+        if (timestamp != 0) {
+            out.writeLong(timestamp);
+        }
+        out.writeBytes(buffer, offsets[PUBLISHER], offsets[FIELDS_COUNT] - offsets[PUBLISHER]);
+    }
+
+    /**
+     * Method copies all fields of view to new IOMessage.
+     *
+     * @return IOMessage
+     */
+    public IOMessage toMessage() {
+        checkVersion();
+        IOMessage message = new IOMessage();
+        message.setId(getId());
+        message.setTag(getTag());
+        message.setGroupId(getGroupId());
+        message.setSequenceNumber(getSequenceNumber());
+        message.setSequenceTotal(getSequenceTotal());
+        message.setPriority(getPriority());
+        message.setTimestamp(getTimestamp());
+        message.setPublisher(getPublisher());
+        message.setAuthId(getAuthId());
+        message.setAuthGroup(getAuthGroup());
+        message.setChainPosition(getChainPosition());
+        message.setHash(getHash());
+        message.setPreviousHash(getPreviousHash());
+        message.setNonce(getNonce());
+        message.setDifficultyTarget(getDifficultyTarget());
+        message.setInfoType(getInfoType());
+        message.setInfoFormat(getInfoFormat());
+        if (size(CONTEXT_DATA) > 0) {
+            message.setContextData(copy(CONTEXT_DATA));
+        }
+        if (size(CONTENT_DATA) > 0) {
+            message.setContentData(copy(CONTENT_DATA));
+        }
+        return message;
+    }
+
+    private void checkVersion() {
+        if (!isSupportedVersion()) {
+            throw new UnsupportedOperationException("IOMessage of version " + version + " can't be read, only version " + VERSION + " is supported.");
+        }
+    }
+
+    private int size(int field) {
+        return isSupportedVersion() ? offsets[field + 1] - offsets[field] : 0;
+    }
+
+    private String getString(int field) {
+        int size = size(field);
+        return size > 0 ? buffer.toString(offsets[field], size, CharsetUtil.UTF_8) : "";
+    }
+
+    private ByteBuf slice(int field) {
+        return buffer.slice(isSupportedVersion() ? offsets[field] : base, size(field));
+    }
+
+    private byte[] copy(int field) {
+        byte[] data = new byte[size(field)];
+        buffer.getBytes(offsets[field], data);
+        return data;
+    }
+
+    @Override
+    public String toString() {
+        if (!isSupportedVersion()) {
+            return "IOMessageView{ version: " + version + " }";
+        }
+        return "IOMessageView{ " + toMessage().toJSON().toString() + " }";
+    }
+}
@@ -0,0 +1,172 @@
+/*
+ * *******************************************************************************
+ *   Copyright (c) 2018 Edgeworx, Inc.
+ *
+ *   This program and the accompanying materials are made available under the
+ *   terms of the Eclipse Public License v. 2.0 which is available at
+ *   http://www.eclipse.org/legal/epl-2.0
+ *
+ *   SPDX-License-Identifier: EPL-2.0
+ * *******************************************************************************
+ */
+
+package org.eclipse.iofog.ws.manager;
+
+import io.netty.buffer.ByteBuf;
+import io.netty.channel.ChannelHandlerContext;
+import io.netty.handler.codec.http.websocketx.BinaryWebSocketFrame;
+import io.netty.util.HashedWheelTimer;
+import io.netty.util.Timeout;
+
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Logger;
+
+/**
+ * Window of messages sent to message socket and not acknowledged yet.
+ * Every message is tracked by its sequence number within the socket and a retransmit deadline.
+ * OPCODE_ACK doesn't carry the message it acknowledges, so it clears the oldest message of the window.
+ * Messages which aren't acknowledged before their deadline are sent again by a timer wheel shared by all sockets,
+ * the socket is closed when a message runs out of retransmissions.
+ */
+class InFlightWindow {
+
+    private static final Logger log = Logger.getLogger(InFlightWindow.class.getName());
+
+    private static final HashedWheelTimer mTimer = new HashedWheelTimer(runnable -> {
+        Thread thread = new Thread(runnable, "tmg-retransmit");
+        thread.setDaemon(true);
+        return thread;
+    }, 10, TimeUnit.MILLISECONDS, 512);
+
+    private final ChannelHandlerContext mCtx;
+    private final int mCapacity;
+    private final long mRetransmitTimeout;
+    private final int mMaxRetransmits;
+    private final Runnable mOnExhausted;
+    private final Deque<Entry> mEntries = new ArrayDeque<>();
+
+    private long mSequence;
+    private long mAcked;
+    private long mRetransmits;
+    private int mMaxOccupancy;
+    private boolean mClosed;
+
+    /**
+     * @param pCtx - context of message socket
+     * @param pCapacity - maximum number of unacknowledged messages
+     * @param pRetransmitTimeout - time in milliseconds a message waits for acknowledgement before it is sent again
+     * @param pMaxRetransmits - number of retransmissions of a message before socket is given up
+     * @param pOnExhausted - action run when a message runs out of retransmissions
+     */
+    InFlightWindow(ChannelHandlerContext pCtx, int pCapacity, long pRetransmitTimeout, int pMaxRetransmits, Runnable pOnExhausted) {
+        mCtx = pCtx;
+        mCapacity = pCapacity;
+        mRetransmitTimeout = pRetransmitTimeout;
+        mMaxRetransmits = pMaxRetransmits;
+        mOnExhausted = pOnExhausted;
+    }
+
+    synchronized boolean hasRoom() {
+        return !mClosed && mEntries.size() < mCapacity;
+    }
+
+    /**
+     * Method tracks sent message. Window keeps its own reference to the frame.
+     *
+     * @param pFrame - encoded frame content
+     * @return false if window is full and message shouldn't be sent
+     */
+    synchronized boolean add(ByteBuf pFrame) {
+        if (!hasRoom()) {
+            return false;
+        }
+        Entry entry = new Entry(++mSequence, pFrame.duplicate().retain());
+        mEntries.addLast(entry);
+        mMaxOccupancy = Math.max(mMaxOccupancy, mEntries.size());
+        schedule(entry);
+        return true;
+    }
+
+    /**
+     * Method clears oldest message of the window.
+     */
+    synchronized void ack() {
+        Entry entry = mEntries.pollFirst();
+        if (entry != null) {
+            entry.mTimeout.cancel();
+            entry.mFrame.release();
+            mAcked++;
+        }
+    }
+
+    /**
+     * @return frame of oldest unacknowledged message, or null if window is empty
+     */
+    synchronized ByteBuf peekOldest() {
+        Entry entry = mEntries.peekFirst();
+        return entry == null ? null : entry.mFrame;
+    }
+
+    /**
+     * Method stops retransmissions and releases tracked frames.
+     */
+    synchronized void close() {
+        mClosed = true;
+        for (Entry entry : mEntries) {
+            entry.mTimeout.cancel();
+            entry.mFrame.release();
+        }
+        mEntries.clear();
+    }
+
+    synchronized int getOccupancy() {
+        return mEntries.size();
+    }
+
+    synchronized long getRetransmits() {
+        return mRetransmits;
+    }
+
+    @Override
+    public synchronized String toString() {
+        return "in-flight " + mEntries.size() + "/" + mCapacity + " (max " + mMaxOccupancy + "), acknowledged " + mAcked
+                + " of " + mSequence + ", retransmitted " + mRetransmits;
+    }
+
+    private void schedule(Entry pEntry) {
+        pEntry.mTimeout = mTimer.newTimeout(timeout -> expire(pEntry), mRetransmitTimeout, TimeUnit.MILLISECONDS);
+    }
+
+    private void expire(Entry pEntry) {
+        synchronized (this) {
+            if (mClosed || !mEntries.contains(pEntry)) {
+                return;
+            }
+            if (pEntry.mRetransmits < mMaxRetransmits) {
+                pEntry.mRetransmits++;
+                mRetransmits++;
+                mCtx.channel().writeAndFlush(new BinaryWebSocketFrame(pEntry.mFrame.duplicate().retain()));
+                schedule(pEntry);
+                return;
+            }
+            close();
+        }
+        log.warning("Message " + pEntry.mSequence + " wasn't acknowledged after " + mMaxRetransmits + " retransmissions. Closing message socket.");
+        mOnExhausted.run();
+    }
+
+    private static class Entry {
+
+        private final long mSequence;
+        private final ByteBuf mFrame;
+        private int mRetransmits;
+        private Timeout mTimeout;
+
+        Entry(long pSequence, ByteBuf pFrame) {
+            mSequence = pSequence;
+            mFrame = pFrame;
+        }
+    }
+}
@@ -0,0 +1,274 @@
+/*
+ * *******************************************************************************
+ *   Copyright (c) 2018 Edgeworx, Inc.
+ *
+ *   This program and the accompanying materials are made available under the
+ *   terms of the Eclipse Public License v. 2.0 which is available at
+ *   http://www.eclipse.org/legal/epl-2.0
+ *
+ *   SPDX-License-Identifier: EPL-2.0
+ * *******************************************************************************
+ */
+
+package org.eclipse.iofog.ws.manager;
+
+import io.netty.buffer.ByteBuf;
+import io.netty.channel.ChannelHandlerContext;
+import io.netty.handler.codec.CorruptedFrameException;
+import io.netty.handler.codec.MessageToMessageCodec;
+import io.netty.handler.codec.http.HttpHeaders;
+import io.netty.handler.codec.http.websocketx.BinaryWebSocketFrame;
+import io.netty.handler.codec.http.websocketx.ContinuationWebSocketFrame;
+import io.netty.handler.codec.http.websocketx.TextWebSocketFrame;
+import io.netty.handler.codec.http.websocketx.WebSocketFrame;
+
+import java.util.List;
+import java.util.zip.DataFormatException;
+import java.util.zip.Deflater;
+import java.util.zip.Inflater;
+
+/**
+ * Permessage-deflate extension (RFC 7692) of one socket, placed between WebSocket codec and handler of the socket.
+ * Outgoing text and binary messages of at least threshold size are compressed and marked with RSV1,
+ * smaller messages are sent as they are. Incoming binary messages marked with RSV1 are decompressed.
+ * Incoming compressed text messages aren't supported: WebSocket codec of Netty 4.0 validates UTF-8 of text frames
+ * before they reach this handler, so it rejects them as protocol violation. Sockets of TMG only receive binary messages.
+ * Java deflater always uses 32 KiB window, so offers limiting server window are declined.
+ * Size and time spent compressing and decompressing are counted for statistics of the socket.
+ */
+class PerMessageDeflateHandler extends MessageToMessageCodec<WebSocketFrame, WebSocketFrame> {
+
+    static final String EXTENSION_NAME = "permessage-deflate";
+    static final String EXTENSIONS_HEADER = "Sec-WebSocket-Extensions";
+
+    private static final String SERVER_NO_CONTEXT_TAKEOVER = "server_no_context_takeover";
+    private static final String CLIENT_NO_CONTEXT_TAKEOVER = "client_no_context_takeover";
+    private static final String SERVER_MAX_WINDOW_BITS = "server_max_window_bits";
+    private static final String CLIENT_MAX_WINDOW_BITS = "client_max_window_bits";
+    private static final int MAX_WINDOW_BITS = 15;
+
+    private static final int RSV1 = 0x4;
+    private static final byte[] TAIL = {0x00, 0x00, (byte) 0xff, (byte) 0xff};
+    private static final int CHUNK_SIZE = 4096;
+    private static final int MAX_INFLATED_SIZE = 16 * 1024 * 1024;
+
+    private final int mLevel;
+    private final int mThreshold;
+    private final boolean mServerNoContextTakeover;
+    private final Deflater mDeflater;
+    private final Inflater mInflater = new Inflater(true);
+    // deflater and inflater keep reference to their input, so input and output chunks can't share an array
+    private final byte[] mInput = new byte[CHUNK_SIZE];
+    private final byte[] mOutput = new byte[CHUNK_SIZE];
+    private boolean mInflatingFragments;
+
+    private long mMessages;
+    private long mDeflatedMessages;
+    private long mDeflateIn;
+    private long mDeflateOut;
+    private long mDeflateNanos;
+    private long mInflatedMessages;
+    private long mInflateIn;
+    private long mInflateOut;
+    private long mInflateNanos;
+
+    /**
+     * @param pLevel - deflate level, 1 (fastest) to 9 (best compression)
+     * @param pThreshold - minimal size in bytes of compressed message
+     * @param pServerNoContextTakeover - true if every message is compressed without reference to previous ones
+     */
+    PerMessageDeflateHandler(int pLevel, int pThreshold, boolean pServerNoContextTakeover) {
+        mLevel = pLevel;
+        mThreshold = pThreshold;
+        mServerNoContextTakeover = pServerNoContextTakeover;
+        mDeflater = new Deflater(pLevel, true);
+    }
+
+    /**
+     * Method picks the first permessage-deflate offer of client which can be accepted.
+     *
+     * @param pRequestHeaders - headers of handshake request
+     * @return value of extensions header of handshake response, or null if compression isn't offered or no offer can be accepted
+     */
+    static String negotiate(HttpHeaders pRequestHeaders) {
+        String extensions = pRequestHeaders.get(EXTENSIONS_HEADER);
+        if (extensions == null) {
+            return null;
+        }
+        for (String offer : extensions.split(",")) {
+            String[] params = offer.split(";");
+            if (!EXTENSION_NAME.equalsIgnoreCase(params[0].trim())) {
+                continue;
+            }
+            StringBuilder response = new StringBuilder(EXTENSION_NAME);
+            boolean accepted = true;
+            for (int i = 1; i < params.length && accepted; i++) {
+                String[] param = params[i].split("=", 2);
+                String name = param[0].trim().toLowerCase();
+                String value = param.length > 1 ? param[1].trim().replace("\"", "") : null;
+                switch (name) {
+                    case SERVER_NO_CONTEXT_TAKEOVER:
+                    case CLIENT_NO_CONTEXT_TAKEOVER:
+                        response.append("; ").append(name);
+                        break;
+                    case SERVER_MAX_WINDOW_BITS:
+                        accepted = value != null && value.equals(String.valueOf(MAX_WINDOW_BITS));
+                        break;
+                    case CLIENT_MAX_WINDOW_BITS:
+                        // inflater takes any window size of client, there's nothing to answer
+                        break;
+                    default:
+                        accepted = false;
+                }
+            }
+            if (accepted) {
+                return response.toString();
+            }
+        }
+        return null;
+    }
+
+    /**
+     * @param pResponseExtension - value of extensions header of handshake response
+     * @return true if server has to compress every message without reference to previous ones
+     */
+    static boolean isServerNoContextTakeover(String pResponseExtension) {
+        return pResponseExtension.contains(SERVER_NO_CONTEXT_TAKEOVER);
+    }
+
+    @Override
+    protected void encode(ChannelHandlerContext ctx, WebSocketFrame frame, List<Object> out) {
+        boolean message = frame instanceof BinaryWebSocketFrame || frame instanceof TextWebSocketFrame;
+        if (message) {
+            mMessages++;
+        }
+        if (!message || !frame.isFinalFragment() || frame.rsv() != 0 || frame.content().readableBytes() < mThreshold) {
+            out.add(frame.retain());
+            return;
+        }
+        long start = System.nanoTime();
+        ByteBuf content = frame.content();
+        ByteBuf compressed = ctx.alloc().buffer(content.readableBytes() / 2 + TAIL.length);
+        int index = content.readerIndex();
+        int end = content.writerIndex();
+        while (index < end) {
+            int length = Math.min(CHUNK_SIZE, end - index);
+            content.getBytes(index, mInput, 0, length);
+            mDeflater.setInput(mInput, 0, length);
+            while (!mDeflater.needsInput()) {
+                deflate(compressed, Deflater.NO_FLUSH);
+            }
+            index += length;
+        }
+        while (deflate(compressed, Deflater.SYNC_FLUSH) == CHUNK_SIZE) {
+            // output filled the whole chunk, flush isn't complete yet
+        }
+        // sync flush ends with empty stored block 00 00 ff ff, which is left out of the message
+        compressed.writerIndex(compressed.writerIndex() - TAIL.length);
+        if (mServerNoContextTakeover) {
+            mDeflater.reset();
+        }
+        mDeflatedMessages++;
+        mDeflateIn += content.readableBytes();
+        mDeflateOut += compressed.readableBytes();
+        mDeflateNanos += System.nanoTime() - start;
+        out.add(newFrame(frame, compressed, frame.rsv() | RSV1));
+    }
+
+    @Override
+    protected void decode(ChannelHandlerContext ctx, WebSocketFrame frame, List<Object> out) throws Exception {
+        boolean compressed;
+        if (frame instanceof ContinuationWebSocketFrame) {
+            compressed = mInflatingFragments;
+        } else {
+            compressed = (frame.rsv() & RSV1) != 0 && (frame instanceof BinaryWebSocketFrame || frame instanceof TextWebSocketFrame);
+            if (compressed && frame instanceof TextWebSocketFrame) {
+                // codec has validated compressed bytes as UTF-8, only frames which happened to pass get here
+                throw new CorruptedFrameException("Compressed text messages aren't supported.");
+            }
+        }
+        if (!compressed) {
+            out.add(frame.retain());
+            return;
+        }
+        long start = System.nanoTime();
+        ByteBuf content = frame.content();
+        ByteBuf decompressed = ctx.alloc().buffer(content.readableBytes() * 2);
+        try {
+            int index = content.readerIndex();
+            int end = content.writerIndex();
+            while (index < end) {
+                int length = Math.min(CHUNK_SIZE, end - index);
+                content.getBytes(index, mInput, 0, length);
+                inflate(mInput, length, decompressed);
+                index += length;
+            }
+            mInflatingFragments = !frame.isFinalFragment();
+            if (frame.isFinalFragment()) {
+                inflate(TAIL, TAIL.length, decompressed);
+            }
+        } catch (DataFormatException | RuntimeException e) {
+            decompressed.release();
+            throw new CorruptedFrameException("Invalid compressed message. " + e.getMessage());
+        }
+        mInflatedMessages++;
+        mInflateIn += content.readableBytes();
+        mInflateOut += decompressed.readableBytes();
+        mInflateNanos += System.nanoTime() - start;
+        out.add(newFrame(frame, decompressed, frame.rsv() & ~RSV1));
+    }
+
+    @Override
+    public void handlerRemoved(ChannelHandlerContext ctx) throws Exception {
+        mDeflater.end();
+        mInflater.end();
+        super.handlerRemoved(ctx);
+    }
+
+    @Override
+    public String toString() {
+        return String.format("compressed %d of %d messages (level %d, threshold %d bytes), %s; decompressed %d messages, %s",
+                             mDeflatedMessages, mMessages, mLevel, mThreshold, ratio(mDeflateIn, mDeflateOut, mDeflateNanos, mDeflatedMessages),
+                             mInflatedMessages, ratio(mInflateOut, mInflateIn, mInflateNanos, mInflatedMessages));
+    }
+
+    private int deflate(ByteBuf pOut, int pFlush) {
+        int length = mDeflater.deflate(mOutput, 0, CHUNK_SIZE, pFlush);
+        pOut.writeBytes(mOutput, 0, length);
+        return length;
+    }
+
+    private void inflate(byte[] pInput, int pLength, ByteBuf pOut) throws DataFormatException {
+        mInflater.setInput(pInput, 0, pLength);
+        while (!mInflater.needsInput() && !mInflater.finished()) {
+            int length = mInflater.inflate(mOutput);
+            if (length == 0 && mInflater.needsDictionary()) {
+                throw new DataFormatException("preset dictionary isn't supported");
+            }
+            pOut.writeBytes(mOutput, 0, length);
+            if (pOut.readableBytes() > MAX_INFLATED_SIZE) {
+                throw new DataFormatException("message exceeds " + MAX_INFLATED_SIZE + " bytes");
+            }
+        }
+        if (mInflater.finished()) {
+            // client closed the deflate stream (BFINAL), next message starts a new one
+            mInflater.reset();
+        }
+    }
+
+    private static String ratio(long pUncompressed, long pCompressed, long pNanos, long pMessages) {
+        return String.format("%d -> %d bytes (ratio %.2f), cpu %.3f ms (%.1f us/message)",
+                             pUncompressed, pCompressed, pCompressed == 0 ? 0 : (double) pUncompressed / pCompressed,
+                             pNanos / 1e6, pMessages == 0 ? 0 : pNanos / 1e3 / pMessages);
+    }
+
+    private static WebSocketFrame newFrame(WebSocketFrame pFrame, ByteBuf pContent, int pRsv) {
+        if (pFrame instanceof TextWebSocketFrame) {
+            return new TextWebSocketFrame(pFrame.isFinalFragment(), pRsv, pContent);
+        }
+        if (pFrame instanceof ContinuationWebSocketFrame) {
+            return new ContinuationWebSocketFrame(pFrame.isFinalFragment(), pRsv, pContent);
+        }
+        return new BinaryWebSocketFrame(pFrame.isFinalFragment(), pRsv, pContent);
+    }
+}
@@ -0,0 +1,76 @@
+/*
+ * *******************************************************************************
+ *   Copyright (c) 2018 Edgeworx, Inc.
+ *
+ *   This program and the accompanying materials are made available under the
+ *   terms of the Eclipse Public License v. 2.0 which is available at
+ *   http://www.eclipse.org/legal/epl-2.0
+ *
+ *   SPDX-License-Identifier: EPL-2.0
+ * *******************************************************************************
+ */
+
+package org.eclipse.iofog.ws.manager;
+
+import io.netty.buffer.ByteBuf;
+import io.netty.channel.ChannelHandler.Sharable;
+import io.netty.channel.ChannelHandlerContext;
+import io.netty.handler.codec.MessageToMessageDecoder;
+import io.netty.handler.codec.http.websocketx.BinaryWebSocketFrame;
+import io.netty.handler.codec.http.websocketx.CloseWebSocketFrame;
+import io.netty.handler.codec.http.websocketx.PingWebSocketFrame;
+import io.netty.handler.codec.http.websocketx.PongWebSocketFrame;
+import io.netty.handler.codec.http.websocketx.WebSocketFrame;
+import org.eclipse.iofog.ws.manager.WebSocketFrameEvent.Type;
+
+import java.util.List;
+
+/**
+ * Inbound handler classifying every frame of a socket once, by frame type and first opcode byte,
+ * into a {@link WebSocketFrameEvent}. Opcode is peeked without moving reader index and the frame isn't copied.
+ * Handler keeps no state, one instance is shared by all sockets.
+ */
+@Sharable
+class WebSocketFrameClassifier extends MessageToMessageDecoder<WebSocketFrame> {
+
+    static final WebSocketFrameClassifier INSTANCE = new WebSocketFrameClassifier();
+
+    private WebSocketFrameClassifier() {
+    }
+
+    @Override
+    protected void decode(ChannelHandlerContext ctx, WebSocketFrame frame, List<Object> out) {
+        out.add(new WebSocketFrameEvent(classify(frame), frame.retain()));
+    }
+
+    static Type classify(WebSocketFrame pFrame) {
+        if (pFrame instanceof CloseWebSocketFrame) {
+            return Type.CLOSE;
+        }
+        ByteBuf content = pFrame.content();
+        if (!content.isReadable()) {
+            return Type.UNKNOWN;
+        }
+        byte opcode = content.getByte(content.readerIndex());
+        if (pFrame instanceof BinaryWebSocketFrame) {
+            if (opcode == WebSocketManager.OPCODE_ACK && content.readableBytes() == 1) {
+                return Type.ACK;
+            }
+            if (opcode == WebSocketManager.OPCODE_MSG) {
+                return Type.MESSAGE;
+            }
+            if (opcode == WebSocketManager.OPCODE_RECEIPT) {
+                return Type.RECEIPT;
+            }
+        } else if (pFrame instanceof PingWebSocketFrame) {
+            if (opcode == WebSocketManager.OPCODE_PING && content.readableBytes() == 1) {
+                return Type.PING;
+            }
+        } else if (pFrame instanceof PongWebSocketFrame) {
+            if (opcode == WebSocketManager.OPCODE_PONG && content.readableBytes() == 1) {
+                return Type.PONG;
+            }
+        }
+        return Type.UNKNOWN;
+    }
+}
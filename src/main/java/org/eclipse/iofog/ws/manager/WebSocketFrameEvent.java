@@ -0,0 +1,52 @@
+/*
+ * *******************************************************************************
+ *   Copyright (c) 2018 Edgeworx, Inc.
+ *
+ *   This program and the accompanying materials are made available under the
+ *   terms of the Eclipse Public License v. 2.0 which is available at
+ *   http://www.eclipse.org/legal/epl-2.0
+ *
+ *   SPDX-License-Identifier: EPL-2.0
+ * *******************************************************************************
+ */
+
+package org.eclipse.iofog.ws.manager;
+
+import io.netty.handler.codec.http.websocketx.WebSocketFrame;
+
+/**
+ * Frame read from control or message socket, classified once by {@link WebSocketFrameClassifier}.
+ * Event holds a reference to the frame, which is released by {@link #release()} after the event is handled.
+ */
+public final class WebSocketFrameEvent {
+
+    /**
+     * Type of frame given by frame type and its first opcode byte.
+     */
+    public enum Type {
+        ACK, RECEIPT, MESSAGE, PING, PONG, CLOSE, UNKNOWN
+    }
+
+    private final Type type;
+    private final WebSocketFrame frame;
+
+    WebSocketFrameEvent(Type type, WebSocketFrame frame) {
+        this.type = type;
+        this.frame = frame;
+    }
+
+    public Type getType() {
+        return type;
+    }
+
+    /**
+     * @return frame with reader index at its first opcode byte
+     */
+    public WebSocketFrame getFrame() {
+        return frame;
+    }
+
+    public void release() {
+        frame.release();
+    }
+}
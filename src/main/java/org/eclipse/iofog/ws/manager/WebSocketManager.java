@@ -13,29 +13,45 @@
 package org.eclipse.iofog.ws.manager;
 
 import io.netty.buffer.ByteBuf;
+import io.netty.channel.Channel;
 import io.netty.channel.ChannelHandlerContext;
+import io.netty.handler.codec.http.DefaultHttpHeaders;
 import io.netty.handler.codec.http.FullHttpRequest;
+import io.netty.handler.codec.http.HttpHeaders;
 import io.netty.handler.codec.http.websocketx.*;
+import io.netty.handler.timeout.IdleState;
+import io.netty.handler.timeout.IdleStateEvent;
+import io.netty.handler.timeout.IdleStateHandler;
+import io.netty.util.AttributeKey;
 import org.eclipse.iofog.utils.ByteUtils;
+import org.eclipse.iofog.utils.IOMessageEncoder;
+import org.eclipse.iofog.utils.elements.IOMessage;
+import org.eclipse.iofog.ws.manager.WebSocketSessionRegistry.SocketType;
 import org.eclipse.iofog.ws.manager.listener.WebSocketManagerListener;
 
-import java.util.Collections;
-import java.util.HashSet;
+import java.util.EnumMap;
+import java.util.List;
 import java.util.Map;
-import java.util.Set;
 import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.Executors;
 import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadLocalRandom;
 import java.util.concurrent.TimeUnit;
+import java.util.function.BiConsumer;
+import java.util.logging.Logger;
+import java.util.zip.Deflater;
 
 import static io.netty.handler.codec.http.HttpHeaders.Names.HOST;
 
 
 /**
  * Manager for all WebSocket communications between Container and ioFog.
+ * One manager serves sockets of all ioContainers, so its watcher thread is shared by all connections.
  */
 public class WebSocketManager {
 
+    private static final Logger log = Logger.getLogger(WebSocketManager.class.getName());
+
     public static final Byte OPCODE_PING = 0x9;
     public static final Byte OPCODE_PONG = 0xA;
     public static final Byte OPCODE_ACK = 0xB;
@@ -43,36 +59,120 @@ public class WebSocketManager {
     public static final Byte OPCODE_MSG = 0xD;
     public static final Byte OPCODE_RECEIPT = 0xE;
 
-    private Map<String, ChannelHandlerContext> mControlWebsocketMap;
-    private Map<String, ChannelHandlerContext> mMessageWebsocketMap;
-    private Map<ChannelHandlerContext, AckMarker> mMessageSendContextMap;
+    private static final String HEARTBEAT_HANDLER_NAME = "tmgHeartbeat";
+    private static final String DEFLATE_HANDLER_NAME = "tmgDeflate";
+    private static final String CLASSIFIER_HANDLER_NAME = "tmgFrameClassifier";
+    private static final AttributeKey<InFlightWindow> MESSAGE_WINDOW_KEY = AttributeKey.valueOf("tmgMessageWindow");
+    // window of sockets which aren't open message sockets, it has no room so frames written to them are dropped
+    private static final InFlightWindow NO_WINDOW = new InFlightWindow(null, 0, 0, 0, null);
+
+    private final WebSocketSessionRegistry mSessions = new WebSocketSessionRegistry();
     private Map<ChannelHandlerContext, Integer> mControlSignalSendContextMap;
-    private Set<ChannelHandlerContext> mPingSendMap;
+    private final Map<WebSocketFrameEvent.Type, BiConsumer<ChannelHandlerContext, WebSocketFrame>> mFrameHandlers =
+            new EnumMap<>(WebSocketFrameEvent.Type.class);
 
     private WebSocketManagerListener wsListener;
 
-    private ScheduledExecutorService mScheduler;
+    private final ScheduledExecutorService mScheduler = Executors.newSingleThreadScheduledExecutor(runnable -> {
+        Thread thread = new Thread(runnable, "tmg-ws-watcher");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    private final int mWindowSize;
+    private final long mRetransmitTimeout;
+    private final int mMaxRetransmits;
+    private final long mHeartbeatInterval;
+    private volatile int mControlCompressionLevel;
+    private volatile int mControlCompressionThreshold;
+    private volatile int mMessageCompressionLevel;
+    private volatile int mMessageCompressionThreshold;
 
     public WebSocketManager(WebSocketManagerListener wsListener){
-        mControlWebsocketMap = new ConcurrentHashMap<>();
-        mMessageWebsocketMap = new ConcurrentHashMap<>();
-        mMessageSendContextMap = new ConcurrentHashMap<>();
+        this(wsListener, 64, 5000, 10, 10000);
+    }
+
+    /**
+     * @param wsListener - listener of data frames
+     * @param pWindowSize - maximum number of unacknowledged messages of message socket
+     * @param pRetransmitTimeout - time in milliseconds a message waits for acknowledgement before it is sent again
+     * @param pMaxRetransmits - number of retransmissions of a message before message socket is closed
+     * @param pHeartbeatInterval - time in milliseconds a socket may stay silent before it is pinged, 0 disables heartbeat
+     */
+    public WebSocketManager(WebSocketManagerListener wsListener, int pWindowSize, long pRetransmitTimeout, int pMaxRetransmits,
+                            long pHeartbeatInterval){
+        mWindowSize = pWindowSize;
+        mRetransmitTimeout = pRetransmitTimeout;
+        mMaxRetransmits = pMaxRetransmits;
+        mHeartbeatInterval = pHeartbeatInterval;
         mControlSignalSendContextMap = new ConcurrentHashMap<>();
-        mPingSendMap = Collections.synchronizedSet(new HashSet<>());
+
+        // pong needs no handling, any frame read from the socket resets its heartbeat
+        mFrameHandlers.put(WebSocketFrameEvent.Type.CLOSE, this::handleClose);
+        mFrameHandlers.put(WebSocketFrameEvent.Type.PING, this::handlePing);
+        mFrameHandlers.put(WebSocketFrameEvent.Type.ACK, this::invalidateAck);
+        mFrameHandlers.put(WebSocketFrameEvent.Type.MESSAGE, this::handleData);
 
         // comment next batch of code if the code us running in deep debug mode : START
-        mScheduler = Executors.newScheduledThreadPool(4);
-        mScheduler.scheduleWithFixedDelay(new MessageWatcher(mMessageSendContextMap, this), 0, 5, TimeUnit.SECONDS);
         mScheduler.scheduleWithFixedDelay(new ControlWatcher(mControlSignalSendContextMap, this), 0, 5, TimeUnit.SECONDS);
-        mScheduler.scheduleWithFixedDelay(new PingWatcher(mPingSendMap, mControlWebsocketMap, this), 0, 10, TimeUnit.SECONDS);
-        mScheduler.scheduleWithFixedDelay(new PingWatcher(mPingSendMap, mMessageWebsocketMap, this), 0, 10, TimeUnit.SECONDS);
         // comment next batch of code if the code us running in deep debug mode : END
 
         this.wsListener = wsListener;
     }
 
+    /**
+     * Method enables permessage-deflate compression of control sockets which offer it.
+     *
+     * @param pLevel - deflate level 1-9, 0 disables compression
+     * @param pThreshold - minimal size in bytes of compressed message
+     */
+    public void setControlCompression(int pLevel, int pThreshold){
+        mControlCompressionLevel = pLevel;
+        mControlCompressionThreshold = pThreshold;
+    }
+
+    /**
+     * Method enables permessage-deflate compression of message sockets which offer it.
+     *
+     * @param pLevel - deflate level 1-9, 0 disables compression
+     * @param pThreshold - minimal size in bytes of compressed message
+     */
+    public void setMessageCompression(int pLevel, int pThreshold){
+        mMessageCompressionLevel = pLevel;
+        mMessageCompressionThreshold = pThreshold;
+    }
+
+    /**
+     * Method forgets closed socket: unregisters it, stops watching it and releases in-flight window of message socket.
+     * Statistics of message window and compression of the socket are logged.
+     *
+     * @param pCtx - context of closed socket
+     */
+    public void removeSocket(ChannelHandlerContext pCtx){
+        SocketType type = mSessions.getSocketType(pCtx);
+        mSessions.remove(pCtx);
+        mControlSignalSendContextMap.remove(pCtx);
+        InFlightWindow window = pCtx.channel().attr(MESSAGE_WINDOW_KEY).getAndSet(null);
+        if(window != null){
+            window.close();
+        }
+        if(window != null || getCompression(pCtx) != null){
+            log.info((type == SocketType.CONTROL ? "Control" : "Message") + " socket of container " + mSessions.getContainerId(pCtx)
+                     + " closed, " + getSocketStats(pCtx, window));
+        }
+    }
+
+    public void sendMessage(String publisherId, IOMessage pMessage){
+        ChannelHandlerContext ctx = getMessageContext(publisherId);
+        if (ctx != null){
+            sendMessage(ctx, pMessage);
+        }else{
+            new IllegalArgumentException("Context not found.");
+        }
+    }
+
     public void sendMessage(String publisherId, byte[] pData){
-        ChannelHandlerContext ctx = mMessageWebsocketMap.get(publisherId);
+        ChannelHandlerContext ctx = getMessageContext(publisherId);
         if (ctx != null){
             sendMessage(ctx, pData);
         }else{
@@ -80,36 +180,136 @@ public class WebSocketManager {
         }
     }
 
+    public void sendMessageFrame(String publisherId, ByteBuf pFrame){
+        ChannelHandlerContext ctx = getMessageContext(publisherId);
+        if (ctx != null){
+            sendMessageFrame(ctx, pFrame);
+        }else{
+            pFrame.release();
+            new IllegalArgumentException("Context not found.");
+        }
+    }
+
+    public void sendMessage(ChannelHandlerContext pCtx, IOMessage pMessage){
+        sendMessageFrame(pCtx, IOMessageEncoder.encodeFrame(pMessage, pCtx.alloc()));
+    }
+
     public void sendMessage(ChannelHandlerContext pCtx, byte[] pData){
-        byte[] header = new byte[5];
-        byte[] bLenArr = ByteUtils.integerToBytes(pData.length);
-        header[0] = OPCODE_MSG;
-        header[1] = bLenArr[0];
-        header[2] = bLenArr[1];
-        header[3] = bLenArr[2];
-        header[4] = bLenArr[3];
-
-        byte[] msg = new byte[header.length + pData.length];
-        int i = 0;
-        for(byte b : header){
-            msg[i] = b;
-            i++;
+        ByteBuf frame = pCtx.alloc().buffer(IOMessageEncoder.FRAME_PREFIX_SIZE + pData.length);
+        frame.writeByte(OPCODE_MSG);
+        frame.writeInt(pData.length);
+        frame.writeBytes(pData);
+        sendMessageFrame(pCtx, frame);
+    }
+
+    /**
+     * Method sends already encoded message frame content (OPCODE_MSG, length and message).
+     * Frame is kept in in-flight window of the socket until it is acknowledged, so ownership of the buffer is taken.
+     *
+     * @param pCtx - context of message socket
+     * @param pFrame - encoded frame content
+     * @return false if in-flight window is full and frame is dropped
+     */
+    public boolean sendMessageFrame(ChannelHandlerContext pCtx, ByteBuf pFrame){
+        boolean sent = writeMessageFrame(pCtx, pFrame);
+        pCtx.channel().flush();
+        return sent;
+    }
+
+    /**
+     * Method writes already encoded message frame content without flushing the channel,
+     * so a batch of messages can be flushed at once. Ownership of the buffer is taken.
+     *
+     * @param pCtx - context of message socket
+     * @param pFrame - encoded frame content
+     * @return false if in-flight window is full and frame is dropped
+     */
+    public boolean writeMessageFrame(ChannelHandlerContext pCtx, ByteBuf pFrame){
+        if(!getMessageWindow(pCtx).add(pFrame)){
+            pFrame.release();
+            return false;
         }
-        for(byte b : pData){
-            msg[i] = b;
-            i++;
+        pCtx.channel().write(new BinaryWebSocketFrame(pFrame));
+        return true;
+    }
+
+    /**
+     * @param pCtx - context of message socket
+     * @return true if in-flight window of the socket can take another message
+     */
+    public boolean hasMessageWindowRoom(ChannelHandlerContext pCtx){
+        return getMessageWindow(pCtx).hasRoom();
+    }
+
+    /**
+     * @param pCtx - context of message socket
+     * @return occupancy, acknowledgement and retransmission counts of in-flight window of the socket,
+     *         and compression ratio and time if the socket is compressed
+     */
+    public String getMessageSocketStats(ChannelHandlerContext pCtx){
+        return getSocketStats(pCtx, getMessageWindow(pCtx));
+    }
+
+    private String getSocketStats(ChannelHandlerContext pCtx, InFlightWindow pWindow){
+        PerMessageDeflateHandler compression = getCompression(pCtx);
+        if(pWindow == null){
+            return compression == null ? "" : compression.toString();
         }
-        sendBinaryFrame(pCtx, msg);
+        return compression == null ? pWindow.toString() : pWindow + ", " + compression;
+    }
+
+    private static PerMessageDeflateHandler getCompression(ChannelHandlerContext pCtx){
+        return (PerMessageDeflateHandler) pCtx.pipeline().get(DEFLATE_HANDLER_NAME);
+    }
 
-        AckMarker marker = mMessageSendContextMap.get(pCtx);
-        if(marker == null){
-            marker = new AckMarker(10, pData);
-            mMessageSendContextMap.put(pCtx, marker);
+    private InFlightWindow getMessageWindow(ChannelHandlerContext pCtx){
+        InFlightWindow window = pCtx.channel().attr(MESSAGE_WINDOW_KEY).get();
+        return window == null ? NO_WINDOW : window;
+    }
+
+    /**
+     * Method sends the same encoded message frames to all open message sockets.
+     * Every socket gets retained duplicates of the frames, which are written and flushed by one task on the event loop
+     * of the socket. Sockets which aren't writable skip the frames. Ownership of the frames stays with the caller.
+     *
+     * @param pFrames - encoded frame contents (OPCODE_MSG, length and message)
+     * @return number of sockets the frames are sent to
+     */
+    public int broadcastMessageFrames(List<ByteBuf> pFrames){
+        if(pFrames.isEmpty()){
+            return 0;
+        }
+        int sockets = 0;
+        for(Channel channel : mSessions.getMessageChannels()){
+            ChannelHandlerContext ctx = mSessions.getContext(channel);
+            if(ctx == null || !channel.isWritable() || !hasMessageWindowRoom(ctx)){
+                continue;
+            }
+            ByteBuf[] duplicates = new ByteBuf[pFrames.size()];
+            for(int i = 0; i < duplicates.length; i++){
+                duplicates[i] = pFrames.get(i).duplicate().retain();
+            }
+            channel.eventLoop().execute(() -> {
+                for(ByteBuf duplicate : duplicates){
+                    // frames which don't fit into in-flight window are dropped for the socket
+                    writeMessageFrame(ctx, duplicate);
+                }
+                channel.flush();
+            });
+            sockets++;
         }
+        return sockets;
+    }
+
+    /**
+     * @return number of open message sockets of all ioContainers
+     */
+    public int getMessageSocketCount(){
+        return mSessions.getMessageChannels().size();
     }
 
     public void sendControl(String publisherId){
-        ChannelHandlerContext ctx = mControlWebsocketMap.get(publisherId);
+        ChannelHandlerContext ctx = mSessions.get(SocketType.CONTROL, publisherId);
         if (ctx != null){
             sendControl(ctx);
         }
@@ -124,10 +324,7 @@ public class WebSocketManager {
         buffer1.writeByte(OPCODE_CONTROL_SIGNAL);
         buffer1.writeByte(Byte.SIZE);
         pCtx.channel().writeAndFlush(new BinaryWebSocketFrame(buffer1));
-        Integer cnt = mControlSignalSendContextMap.get(pCtx);
-        if(cnt == null){
-            mControlSignalSendContextMap.put(pCtx, 10);
-        }
+        mControlSignalSendContextMap.putIfAbsent(pCtx, 10);
     }
 
     public void sendReceipt(ChannelHandlerContext pCtx, String pMessageId, Long pMessageTimestamp){
@@ -156,13 +353,11 @@ public class WebSocketManager {
         pCtx.channel().writeAndFlush(new PingWebSocketFrame(buffer1));
     }
 
-    private void sendBinaryFrame(ChannelHandlerContext pCtx, byte[] pData){
+    private void sendBinaryFrame(ChannelHandlerContext pCtx, ByteBuf pData){
         if(!isCtxActual(pCtx)){
             new IllegalArgumentException("Context not found.");
         }
-        ByteBuf buffer1 = pCtx.alloc().buffer();
-        buffer1.writeBytes(pData);
-        pCtx.channel().writeAndFlush(new BinaryWebSocketFrame(buffer1));
+        pCtx.channel().writeAndFlush(new BinaryWebSocketFrame(pData));
     }
 
     public void sendFrame(ChannelHandlerContext pCtx,WebSocketFrame pFrame){
@@ -175,154 +370,155 @@ public class WebSocketManager {
         invalidateCtx(pCtx);
     }
 
-    public void eatFrame(ChannelHandlerContext pCtx, WebSocketFrame pFrame){
-        boolean handled = false;
-        if(!handled){
-            handled = handleClose(pCtx, pFrame);
-        }
-        if(!handled){
-            handled = handlePing(pCtx, pFrame);
-        }
-        if(!handled){
-            handled = handleAck(pCtx, pFrame);
-        }
-        if(!handled){
-            handled = handlePong(pCtx, pFrame);
-        }
-        if(!handled) {
-            handleData(pCtx, pFrame);
+    /**
+     * Method handles frame classified by {@link WebSocketFrameClassifier} with the handler of its type.
+     * Frames without handler (receipts, unknown frames) are ignored. Event is released by the caller.
+     *
+     * @param pCtx - context of socket
+     * @param pEvent - classified frame
+     */
+    public void dispatch(ChannelHandlerContext pCtx, WebSocketFrameEvent pEvent){
+        BiConsumer<ChannelHandlerContext, WebSocketFrame> handler = mFrameHandlers.get(pEvent.getType());
+        if(handler != null){
+            handler.accept(pCtx, pEvent.getFrame());
         }
     }
 
     private void handleData(ChannelHandlerContext pCtx, WebSocketFrame pFrame){
-        if (pFrame instanceof BinaryWebSocketFrame) {
-            wsListener.handle(this, (BinaryWebSocketFrame)pFrame, pCtx);
-        }
+        wsListener.handle(this, (BinaryWebSocketFrame)pFrame, pCtx);
     }
 
-
-    private boolean handleAck(ChannelHandlerContext pCtx, WebSocketFrame pFrame){
-        if (pFrame instanceof BinaryWebSocketFrame) {
-            ByteBuf buffer2 = pFrame.content();
-            if (buffer2.readableBytes() == 1) {
-                Byte opcode = buffer2.readByte();
-                if(opcode == OPCODE_ACK.intValue()){
-                    //System.out.println("GOT OPCODE_ACK via SOCKET");
-                    invalidateAck(pCtx);
-                    return true;
-                }
-            }
-        }
-        return false;
+    private void handleClose(ChannelHandlerContext pCtx, WebSocketFrame pFrame){
+        pCtx.channel().close();
+        invalidateCtx(pCtx);
     }
 
-    private boolean handleClose(ChannelHandlerContext pCtx, WebSocketFrame pFrame){
-        if (pFrame instanceof CloseWebSocketFrame) {
-            pCtx.channel().close();
-            invalidateCtx(pCtx);
-            return true;
-        }
-        return false;
-    }
-
-    private boolean handlePong(ChannelHandlerContext pCtx, WebSocketFrame pFrame){
-        if (pFrame instanceof PongWebSocketFrame) {
-            ByteBuf buffer = pFrame.content();
-            if (buffer.readableBytes() == 1) {
-                Byte opcode = buffer.readByte();
-                if (opcode == OPCODE_PONG.intValue()) {
-                    if (isCtxActual(pCtx)) {
-                        mPingSendMap.remove(pCtx);
-                        return true;
-                    }
-                }
-            }
-        }
-        return false;
-    }
-    private boolean handlePing(ChannelHandlerContext pCtx, WebSocketFrame pFrame) {
-        if (pFrame instanceof PingWebSocketFrame) {
-            ByteBuf buffer = pFrame.content();
-            if (buffer.readableBytes() == 1) {
-                Byte opcode = buffer.readByte();
-                if (opcode == OPCODE_PING.intValue()) {
-                    if (isCtxActual(pCtx)) {
-                        ByteBuf buffer1 = pCtx.alloc().buffer();
-                        buffer1.writeByte(OPCODE_PONG.intValue());
-                        sendFrame(pCtx, new PongWebSocketFrame(buffer1));
-                        return true;
-                    }
-                }
-            }
+    private void handlePing(ChannelHandlerContext pCtx, WebSocketFrame pFrame) {
+        if (isCtxActual(pCtx)) {
+            ByteBuf buffer1 = pCtx.alloc().buffer();
+            buffer1.writeByte(OPCODE_PONG.intValue());
+            sendFrame(pCtx, new PongWebSocketFrame(buffer1));
         }
-        return false;
     }
 
-    private void invalidateAck(ChannelHandlerContext pCtx){
-        mControlWebsocketMap.remove(pCtx);
-        mMessageSendContextMap.remove(pCtx);
+    private void invalidateAck(ChannelHandlerContext pCtx, WebSocketFrame pFrame){
+        if(mSessions.getSocketType(pCtx) == SocketType.CONTROL){
+            mControlSignalSendContextMap.remove(pCtx);
+        }else{
+            getMessageWindow(pCtx).ack();
+        }
     }
 
     private void invalidateCtx(ChannelHandlerContext pCtx){
-        removeCtxFromMap(pCtx, mControlWebsocketMap);
-        removeCtxFromMap(pCtx, mMessageWebsocketMap);
-    }
-
-    private static void removeCtxFromMap(ChannelHandlerContext pCtx, Map<String, ChannelHandlerContext> pCtxMap){
-
-        for(String id : pCtxMap.keySet()){
-            ChannelHandlerContext curCtx = pCtxMap.get(id);
-            if(curCtx.equals(pCtxMap)){
-                pCtxMap.remove(id);
-            }
-        }
+        mSessions.remove(pCtx);
     }
 
     private boolean isCtxActual(ChannelHandlerContext pCtx){
-        return isControlCtx(pCtx) || isMessageCtx(pCtx);
-    }
-
-    private boolean isControlCtx(ChannelHandlerContext pCtx){
-        return isCtxInMap(pCtx, mControlWebsocketMap);
+        return mSessions.contains(pCtx);
+    }
+
+    /**
+     * Method handles idle state of socket reported by its heartbeat handler.
+     * Socket is pinged when nothing has been read from it for heartbeat interval,
+     * and closed when it stays silent for another interval after the ping.
+     *
+     * @param pCtx - context of socket
+     * @param pEvent - idle state event
+     */
+    public void handleIdle(ChannelHandlerContext pCtx, IdleStateEvent pEvent){
+        if(pEvent.state() != IdleState.READER_IDLE){
+            return;
+        }
+        if(pEvent.isFirst()){
+            sendPing(pCtx);
+        }else{
+            log.info("Socket of container " + mSessions.getContainerId(pCtx) + " didn't answer ping. Closing socket.");
+            closeSocket(pCtx);
+        }
     }
 
-    private boolean isMessageCtx(ChannelHandlerContext pCtx){
-        return isCtxInMap(pCtx, mMessageWebsocketMap);
+    /**
+     * Method adds frame classifier in front of the handler of socket, after compression handler,
+     * so the handler receives {@link WebSocketFrameEvent}s instead of frames.
+     */
+    private static void startClassifier(ChannelHandlerContext pCtx){
+        if(pCtx.pipeline().get(CLASSIFIER_HANDLER_NAME) == null){
+            pCtx.pipeline().addBefore(pCtx.name(), CLASSIFIER_HANDLER_NAME, WebSocketFrameClassifier.INSTANCE);
+        }
     }
 
-    private static boolean isCtxInMap(ChannelHandlerContext pCtx, Map<String, ChannelHandlerContext> pCtxMap){
-        return pCtxMap.values().contains(pCtx);
+    /**
+     * Method adds heartbeat handler in front of the handler of socket. Idle time of every socket is picked
+     * between half and full heartbeat interval, so pings of sockets opened at once are spread across the interval.
+     */
+    private void startHeartbeat(ChannelHandlerContext pCtx){
+        if(mHeartbeatInterval <= 0 || pCtx.pipeline().get(HEARTBEAT_HANDLER_NAME) != null){
+            return;
+        }
+        long idleTime = mHeartbeatInterval / 2 + ThreadLocalRandom.current().nextLong(mHeartbeatInterval / 2 + 1);
+        pCtx.pipeline().addBefore(pCtx.name(), HEARTBEAT_HANDLER_NAME, new IdleStateHandler(idleTime, 0, 0, TimeUnit.MILLISECONDS));
     }
 
     public void initMessageSocket(ChannelHandlerContext pCtx, String pContainerId, boolean pSsl, String pUrl, FullHttpRequest pReq){
-        initSocket(pCtx, pContainerId, pSsl, pUrl, pReq, mMessageWebsocketMap);
+        pCtx.channel().attr(MESSAGE_WINDOW_KEY).set(new InFlightWindow(pCtx, mWindowSize, mRetransmitTimeout, mMaxRetransmits,
+                                                                       () -> closeSocket(pCtx)));
+        initSocket(pCtx, pSsl, pUrl, pReq, mMessageCompressionLevel, mMessageCompressionThreshold);
+        mSessions.add(SocketType.MESSAGE, pContainerId, pCtx);
+        startClassifier(pCtx);
+        startHeartbeat(pCtx);
     }
 
     public void initControlSocket(ChannelHandlerContext pCtx, String pContainerId, boolean pSsl, String pUrl, FullHttpRequest pReq){
-        initSocket(pCtx, pContainerId, pSsl, pUrl, pReq, mControlWebsocketMap);
+        initSocket(pCtx, pSsl, pUrl, pReq, mControlCompressionLevel, mControlCompressionThreshold);
+        mSessions.add(SocketType.CONTROL, pContainerId, pCtx);
+        startClassifier(pCtx);
+        startHeartbeat(pCtx);
     }
 
     public void addControlContext(ChannelHandlerContext pCtx, String containerId) {
-        mControlWebsocketMap.put(containerId, pCtx);
+        mSessions.add(SocketType.CONTROL, containerId, pCtx);
     }
 
     public void addMessageContext(ChannelHandlerContext pCtx, String containerId) {
-        mMessageWebsocketMap.put(containerId, pCtx);
+        mSessions.add(SocketType.MESSAGE, containerId, pCtx);
     }
 
-    public byte[] getMessage(ChannelHandlerContext pCtx) {
-        return mMessageSendContextMap.get(pCtx).getData();
+    public ChannelHandlerContext getMessageContext(String containerId) {
+        return mSessions.get(SocketType.MESSAGE, containerId);
     }
 
-    private static void initSocket(ChannelHandlerContext pCtx, String pContainerId, boolean pSsl, String pUrl, FullHttpRequest pReq, Map<String, ChannelHandlerContext> pSocketMap){
+    public byte[] getMessage(ChannelHandlerContext pCtx) {
+        ByteBuf frame = getMessageWindow(pCtx).peekOldest();
+        byte[] data = new byte[frame.readableBytes() - IOMessageEncoder.FRAME_PREFIX_SIZE];
+        frame.getBytes(frame.readerIndex() + IOMessageEncoder.FRAME_PREFIX_SIZE, data);
+        return data;
+    }
+
+    /**
+     * Method completes WebSocket handshake. Permessage-deflate is accepted if compression level is set and client offers it,
+     * then compression handler is added in front of the handler of socket.
+     */
+    private static void initSocket(ChannelHandlerContext pCtx, boolean pSsl, String pUrl, FullHttpRequest pReq,
+                                   int pCompressionLevel, int pCompressionThreshold){
         WebSocketServerHandshakerFactory wsFactory = new WebSocketServerHandshakerFactory(buildWebSocketLocation(pSsl, pUrl, pReq), null, true);
         WebSocketServerHandshaker handshaker = wsFactory.newHandshaker(pReq);
         if (handshaker == null) {
             WebSocketServerHandshakerFactory.sendUnsupportedVersionResponse(pCtx.channel());
-        } else {
+            return;
+        }
+        String extension = pCompressionLevel > 0 ? PerMessageDeflateHandler.negotiate(pReq.headers()) : null;
+        if (extension == null) {
             handshaker.handshake(pCtx.channel(), pReq);
+            return;
+        }
+        HttpHeaders responseHeaders = new DefaultHttpHeaders();
+        responseHeaders.set(PerMessageDeflateHandler.EXTENSIONS_HEADER, extension);
+        handshaker.handshake(pCtx.channel(), pReq, responseHeaders, pCtx.channel().newPromise());
+        if (pCtx.pipeline().get(DEFLATE_HANDLER_NAME) == null) {
+            pCtx.pipeline().addBefore(pCtx.name(), DEFLATE_HANDLER_NAME, new PerMessageDeflateHandler(
+                    Math.min(pCompressionLevel, Deflater.BEST_COMPRESSION), pCompressionThreshold,
+                    PerMessageDeflateHandler.isServerNoContextTakeover(extension)));
         }
-        pSocketMap.put(pContainerId, pCtx);
     }
 
 
@@ -336,53 +532,6 @@ public class WebSocketManager {
         }
     }
 
-    private static class AckMarker{
-        private int mSendCnt;
-        private byte[] mData;
-
-        public AckMarker(int pSendCnt, byte[] pData){
-            mSendCnt = pSendCnt;
-            mData = pData;
-        }
-
-        public int getSendCnt(){
-            return mSendCnt;
-        }
-
-        public byte[] getData(){
-            return mData;
-        }
-
-        public void trying(){
-            mSendCnt--;
-        }
-    }
-
-    private class MessageWatcher implements Runnable{
-
-        private Map<ChannelHandlerContext, AckMarker> mMessageSendContextMap;
-        private WebSocketManager mSocketManager;
-
-        public MessageWatcher(Map<ChannelHandlerContext, AckMarker> pMessageSendContextMap, WebSocketManager pSocketManager){
-            mMessageSendContextMap = pMessageSendContextMap;
-            mSocketManager = pSocketManager;
-        }
-        @Override
-        public void run() {
-            for(ChannelHandlerContext ctx: mMessageSendContextMap.keySet()){
-                AckMarker marker = mMessageSendContextMap.get(ctx);
-                if(marker.getSendCnt() > 0){
-                    marker.trying();
-                    mSocketManager.sendMessage(ctx, marker.getData());
-                }
-                else{
-                    mMessageSendContextMap.remove(ctx);
-                    mSocketManager.closeSocket(ctx);
-                }
-            }
-        }
-    }
-
     private class ControlWatcher implements Runnable{
 
         private Map<ChannelHandlerContext, Integer> mControlSignalSendContextMap;
@@ -393,47 +542,31 @@ public class WebSocketManager {
             mSocketManager = pSocketManager;
         }
 
+        /**
+         * Method retransmits unacknowledged control signals and closes sockets which ran out of retries.
+         * Entries are acknowledged concurrently, so every entry is updated atomically and skipped once it's gone.
+         * Errors are caught, an exception thrown out of the task would cancel it for all containers.
+         */
         @Override
         public void run() {
             for(ChannelHandlerContext ctx : mControlSignalSendContextMap.keySet()){
-                int cnt = mControlSignalSendContextMap.get(ctx);
-                if(cnt > 0){
-                    cnt--;
-                    mControlSignalSendContextMap.put(ctx, cnt);
-                    mSocketManager.sendControl(ctx);
-                }
-                else{
-                    mControlSignalSendContextMap.remove(ctx);
-                    mSocketManager.closeSocket(ctx);
+                try {
+                    // null if signal was acknowledged, true to retransmit, false when retries ran out
+                    Boolean[] retry = new Boolean[1];
+                    mControlSignalSendContextMap.computeIfPresent(ctx, (context, cnt) -> {
+                        retry[0] = cnt > 0;
+                        return retry[0] ? cnt - 1 : null;
+                    });
+                    if(Boolean.TRUE.equals(retry[0])){
+                        mSocketManager.sendControl(ctx);
+                    }
+                    else if(Boolean.FALSE.equals(retry[0])){
+                        mSocketManager.closeSocket(ctx);
+                    }
+                } catch (RuntimeException e) {
+                    log.warning("Error retransmitting control signal to container " + mSessions.getContainerId(ctx) + ". " + e);
                 }
             }
         }
     }
-
-    private class PingWatcher implements Runnable{
-
-        private WebSocketManager mSocketManager;
-        private Set<ChannelHandlerContext> mPingSendMap;
-        private Map<String, ChannelHandlerContext> mWebsocketMap;
-
-        public PingWatcher(Set<ChannelHandlerContext> pPingSendMap, Map<String, ChannelHandlerContext> pWebsocketMap, WebSocketManager pSocketManager){
-            mSocketManager = pSocketManager;
-            mPingSendMap = pPingSendMap;
-            mWebsocketMap = pWebsocketMap;
-        }
-
-        @Override
-        public void run() {
-            for(ChannelHandlerContext ctx : mPingSendMap){
-                mSocketManager.closeSocket(ctx);
-                mPingSendMap.remove(ctx);
-            }
-
-            for(String id : mWebsocketMap.keySet()){
-                ChannelHandlerContext ctx = mWebsocketMap.get(id);
-                mPingSendMap.add(ctx);
-                mSocketManager.sendPing(ctx);
-            }
-        }
-    }
 }
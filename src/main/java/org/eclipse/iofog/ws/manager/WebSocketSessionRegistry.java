@@ -0,0 +1,134 @@
+/*
+ * *******************************************************************************
+ *   Copyright (c) 2018 Edgeworx, Inc.
+ *
+ *   This program and the accompanying materials are made available under the
+ *   terms of the Eclipse Public License v. 2.0 which is available at
+ *   http://www.eclipse.org/legal/epl-2.0
+ *
+ *   SPDX-License-Identifier: EPL-2.0
+ * *******************************************************************************
+ */
+
+package org.eclipse.iofog.ws.manager;
+
+import io.netty.channel.Channel;
+import io.netty.channel.ChannelHandlerContext;
+import io.netty.channel.group.ChannelGroup;
+import io.netty.channel.group.DefaultChannelGroup;
+import io.netty.util.AttributeKey;
+import io.netty.util.concurrent.GlobalEventExecutor;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Registry of open control and message sockets of all ioContainers.
+ * Sockets are found by container id in one map per socket type, reverse lookup (container id and socket type of a socket)
+ * is kept in attributes of its channel, so adding, removing and finding a socket doesn't depend on number of sockets.
+ * Container has at most one socket of each type, a new socket replaces the old one, which stays open until it is closed.
+ */
+class WebSocketSessionRegistry {
+
+    enum SocketType {
+        CONTROL, MESSAGE
+    }
+
+    private static final AttributeKey<String> CONTAINER_ID_KEY = AttributeKey.valueOf("tmgContainerId");
+    private static final AttributeKey<SocketType> SOCKET_TYPE_KEY = AttributeKey.valueOf("tmgSocketType");
+    private static final AttributeKey<ChannelHandlerContext> CONTEXT_KEY = AttributeKey.valueOf("tmgSocketContext");
+
+    private final Map<String, ChannelHandlerContext> mControlSockets = new ConcurrentHashMap<>();
+    private final Map<String, ChannelHandlerContext> mMessageSockets = new ConcurrentHashMap<>();
+    private final ChannelGroup mMessageChannels = new DefaultChannelGroup("tmg-message-sockets", GlobalEventExecutor.INSTANCE);
+
+    /**
+     * Method registers socket of ioContainer.
+     *
+     * @param pType - type of socket
+     * @param pContainerId - id of ioContainer
+     * @param pCtx - context of socket
+     */
+    void add(SocketType pType, String pContainerId, ChannelHandlerContext pCtx) {
+        Channel channel = pCtx.channel();
+        channel.attr(CONTAINER_ID_KEY).set(pContainerId);
+        channel.attr(SOCKET_TYPE_KEY).set(pType);
+        channel.attr(CONTEXT_KEY).set(pCtx);
+        getSockets(pType).put(pContainerId, pCtx);
+        if (pType == SocketType.MESSAGE) {
+            mMessageChannels.add(channel);
+        }
+    }
+
+    /**
+     * Method unregisters socket, unless container has already replaced it with a new one.
+     *
+     * @param pCtx - context of socket
+     * @return true if socket was registered
+     */
+    boolean remove(ChannelHandlerContext pCtx) {
+        SocketType type = getSocketType(pCtx);
+        String containerId = getContainerId(pCtx);
+        if (type == null || containerId == null) {
+            return false;
+        }
+        if (type == SocketType.MESSAGE) {
+            mMessageChannels.remove(pCtx.channel());
+        }
+        return getSockets(type).remove(containerId, pCtx);
+    }
+
+    /**
+     * @param pType - type of socket
+     * @param pContainerId - id of ioContainer
+     * @return context of current socket of ioContainer, or null if it isn't open
+     */
+    ChannelHandlerContext get(SocketType pType, String pContainerId) {
+        return getSockets(pType).get(pContainerId);
+    }
+
+    /**
+     * @param pCtx - context of socket
+     * @return true if socket is current socket of its ioContainer
+     */
+    boolean contains(ChannelHandlerContext pCtx) {
+        SocketType type = getSocketType(pCtx);
+        String containerId = getContainerId(pCtx);
+        return type != null && containerId != null && getSockets(type).get(containerId) == pCtx;
+    }
+
+    /**
+     * @param pCtx - context of socket
+     * @return id of ioContainer of socket, or null if socket wasn't registered
+     */
+    String getContainerId(ChannelHandlerContext pCtx) {
+        return pCtx.channel().attr(CONTAINER_ID_KEY).get();
+    }
+
+    /**
+     * @param pCtx - context of socket
+     * @return type of socket, or null if socket wasn't registered
+     */
+    SocketType getSocketType(ChannelHandlerContext pCtx) {
+        return pCtx.channel().attr(SOCKET_TYPE_KEY).get();
+    }
+
+    /**
+     * @param pChannel - channel of socket
+     * @return context of socket, or null if socket wasn't registered
+     */
+    ChannelHandlerContext getContext(Channel pChannel) {
+        return pChannel.attr(CONTEXT_KEY).get();
+    }
+
+    /**
+     * @return channels of open message sockets, closed channels leave the group by themselves
+     */
+    ChannelGroup getMessageChannels() {
+        return mMessageChannels;
+    }
+
+    private Map<String, ChannelHandlerContext> getSockets(SocketType pType) {
+        return pType == SocketType.CONTROL ? mControlSockets : mMessageSockets;
+    }
+}
@@ -14,17 +14,16 @@ package org.eclipse.iofog.ws.manager.handler;
 
 import io.netty.buffer.ByteBuf;
 import io.netty.handler.codec.http.*;
-import io.netty.util.internal.StringUtil;
 import org.eclipse.iofog.tmg.manager.TMGMessageManager;
 import org.eclipse.iofog.utils.IOFogResponseUtils;
+import org.eclipse.iofog.utils.IOMessageJsonWriter;
 import org.eclipse.iofog.utils.IOMessageUtils;
 import org.eclipse.iofog.utils.elements.IOMessage;
 import org.eclipse.iofog.utils.elements.LocalAPIURLType;
 
-import javax.json.*;
-import java.io.StringReader;
+import javax.json.Json;
+import javax.json.JsonObject;
 import java.util.Collections;
-import java.util.HashSet;
 import java.util.List;
 import java.util.Set;
 import java.util.concurrent.Callable;
@@ -37,10 +36,10 @@ import static io.netty.handler.codec.http.HttpVersion.HTTP_1_1;
  */
 class HttpRequestHandler implements Callable {
 
-    private static final String ID_PARAM_NAME = "id";
-    private static final String TIMEFRAME_START_PARAM_NAME = "timeframestart";
-    private static final String TIMEFRAME_END_PARAM_NAME = "timeframeend";
-    private static final String PUBLISHERS_PARAM_NAME = "publishers";
+    private static final byte[] NEXT_MESSAGE_RESPONSE_START = ("{\"" + IOFogResponseUtils.STATUS_FIELD_NAME + "\":\"okay\",\""
+                                                               + IOFogResponseUtils.COUNT_FIELD_NAME + "\":1,\""
+                                                               + IOFogResponseUtils.MESSAGES_FIELD_NAME + "\":[").getBytes();
+    private static final byte[] NEXT_MESSAGE_RESPONSE_END = "]}".getBytes();
 
     private final FullHttpRequest req;
     private ByteBuf bytesData;
@@ -64,99 +63,31 @@ class HttpRequestHandler implements Callable {
             return sendErrorResponse(Collections.singleton(" # Error: Incorrect HTTP headers."));
         }
 
-        ByteBuf msgBytes = req.content();
-        String requestBody = msgBytes.toString(io.netty.util.CharsetUtil.US_ASCII);
-        JsonReader reader = Json.createReader(new StringReader(requestBody));
-        JsonObject jsonObject = reader.readObject();
+        LocalAPIRequest request = LocalAPIRequestParser.parse(req.content(), urlType);
+        if (request.hasErrors()) {
+            return sendErrorResponse(request.getErrors());
+        }
 
         switch (urlType) {
             case GET_CONFIG_REST_LOCAL_API:
-                return handleGetConfigRequest(jsonObject);
+                return handleGetConfigRequest();
             case GET_NEXT_MSG_REST_LOCAL_API:
-                return handleNextMessageRequest(jsonObject);
+                return handleNextMessageRequest();
             case POST_MSG_REST_LOCAL_API:
-                return handleNewMessageRequest(jsonObject);
+                return handleNewMessageRequest(request);
             case GET_MSGS_QUERY_REST_LOCAL_API:
-                return handleMessagesQueryRequest(jsonObject);
+                return handleMessagesQueryRequest(request);
         }
         return sendErrorResponse(Collections.singleton("# Error: Unhandled request call."));
     }
 
-    private void checkField(JsonObject jsonObject, String fieldName, Set<String> errors) {
-        if (!jsonObject.containsKey(fieldName)) {
-            errors.add(" # Error: Missing input field '" + fieldName + "'.");
-        }
-    }
-
-    private void parseLongField(JsonObject jsonObject, String fieldName, Set<String> errors) {
-        try {
-            if (jsonObject.containsKey(fieldName)) {
-                Long.parseLong(jsonObject.getJsonNumber(fieldName).toString());
-            }
-        } catch (Exception e) {
-            errors.add(" # Error: Invalid value of '" + fieldName + "'.");
-        }
-    }
-
-    private void parseIntField(JsonObject jsonObject, String fieldName, Set<String> errors) {
-        parseFieldWithPattern(jsonObject, fieldName, errors, "[0-9]+");
-    }
-
-    private void parseFieldWithPattern(JsonObject jsonObject, String fieldName, Set<String> errors, String pattern) {
-        if (jsonObject.containsKey(fieldName)) {
-            String number = jsonObject.getJsonNumber(fieldName).toString();
-            if (!(number.matches(pattern))) {
-                errors.add(" # Error: Invalid  value for field '" + fieldName + "'.");
-            }
-        }
-    }
-
-    private void parseStringField(JsonObject jsonObject, String fieldName, Set<String> errors) {
-        if (jsonObject.containsKey(fieldName) && StringUtil.isNullOrEmpty(jsonObject.getString(fieldName))) {
-            errors.add(" # Error: Missing input field value for '" + fieldName + "'.");
-        }
-    }
-
-    private void validateMessage(JsonObject jsonObject, Set<String> errors) {
-        checkField(jsonObject, IOMessage.PUBLISHER_FIELD_NAME, errors);
-        checkField(jsonObject, IOMessage.VERSION_FIELD_NAME, errors);
-        checkField(jsonObject, IOMessage.INFO_TYPE_FIELD_NAME, errors);
-        checkField(jsonObject, IOMessage.INFO_FORMAT_FIELD_NAME, errors);
-        checkField(jsonObject, IOMessage.CONTENT_DATA_FIELD_NAME, errors);
-
-        parseStringField(jsonObject, IOMessage.PUBLISHER_FIELD_NAME, errors);
-        parseStringField(jsonObject, IOMessage.INFO_TYPE_FIELD_NAME, errors);
-        parseStringField(jsonObject, IOMessage.INFO_FORMAT_FIELD_NAME, errors);
-
-        parseIntField(jsonObject, IOMessage.VERSION_FIELD_NAME, errors);
-        parseIntField(jsonObject, IOMessage.SEQUENCE_NUMBER_FIELD_NAME, errors);
-        parseIntField(jsonObject, IOMessage.SEQUENCE_TOTAL_FIELD_NAME, errors);
-        parseIntField(jsonObject, IOMessage.PRIORITY_FIELD_NAME, errors);
-        parseIntField(jsonObject, IOMessage.CHAIN_POSITION_FIELD_NAME, errors);
-
-        parseFieldWithPattern(jsonObject, IOMessage.DIFFICULTY_TARGET_FIELD_NAME, errors, "[0-9]*.?[0-9]*");
-    }
-
-    private void validateMessageID(JsonObject jsonObject, Set<String> errors) {
-        checkField(jsonObject, ID_PARAM_NAME, errors);
-        if (jsonObject.containsKey(ID_PARAM_NAME) && jsonObject.getString(ID_PARAM_NAME) == null) {
-            errors.add(" # Error: Missing input field '" + ID_PARAM_NAME + "' value.");
-        }
-    }
-
-    private void validateMessageQuery(JsonObject jsonObject, Set<String> errors) {
-        validateMessageID(jsonObject, errors);
-        checkField(jsonObject, PUBLISHERS_PARAM_NAME, errors);
-        checkField(jsonObject, TIMEFRAME_START_PARAM_NAME, errors);
-        checkField(jsonObject, TIMEFRAME_END_PARAM_NAME, errors);
-
-        parseLongField(jsonObject, TIMEFRAME_START_PARAM_NAME, errors);
-        parseLongField(jsonObject, TIMEFRAME_END_PARAM_NAME, errors);
+    private FullHttpResponse sendErrorResponse(Set<String> errors) {
+        return sendErrorResponse(HttpResponseStatus.BAD_REQUEST, errors);
     }
 
-    private FullHttpResponse sendErrorResponse(Set<String> errors) {
+    private FullHttpResponse sendErrorResponse(HttpResponseStatus status, Set<String> errors) {
         errors.forEach(error -> bytesData.writeBytes(error.getBytes()));
-        return new DefaultFullHttpResponse(HTTP_1_1, HttpResponseStatus.BAD_REQUEST, bytesData);
+        return new DefaultFullHttpResponse(HTTP_1_1, status, bytesData);
     }
 
     private FullHttpResponse sendResponse() {
@@ -165,53 +96,38 @@ class HttpRequestHandler implements Callable {
         return res;
     }
 
-    private JsonObject buildMessagesResponse(List<IOMessage> messages, boolean isQueryRequest) {
-        JsonArrayBuilder messagesBuilder = Json.createArrayBuilder();
-        messages.forEach(message -> messagesBuilder.add(message.toJSON()));
-        JsonObjectBuilder jsonBuilder = Json.createObjectBuilder()
-                                            .add(IOFogResponseUtils.STATUS_FIELD_NAME, "okay")
-                                            .add(IOFogResponseUtils.COUNT_FIELD_NAME, messages.size())
-                                            .add(IOFogResponseUtils.MESSAGES_FIELD_NAME, messagesBuilder);
-        if (isQueryRequest) {
-            jsonBuilder.add(IOFogResponseUtils.TIMEFRAME_START_FIELD_NAME, System.currentTimeMillis())
-                       .add(IOFogResponseUtils.TIMEFRAME_END_FIELD_NAME, System.currentTimeMillis());
-        }
-        return jsonBuilder.build();
-    }
-
-    private FullHttpResponse handleGetConfigRequest(JsonObject jsonObject) {
-        Set<String> errors = new HashSet<>();
-        validateMessageID(jsonObject, errors);
-        if (!errors.isEmpty()) {
-            return sendErrorResponse(errors);
-        }
+    private FullHttpResponse handleGetConfigRequest() {
         bytesData.writeBytes(TMGMessageManager.getContainerConfig().toString().getBytes());
         System.out.println("Sending config");
         return sendResponse();
     }
 
-    private FullHttpResponse handleNextMessageRequest(JsonObject jsonObject) {
-        Set<String> errors = new HashSet<>();
-        validateMessageID(jsonObject, errors);
-        if (!errors.isEmpty()) {
-            return sendErrorResponse(errors);
+    private FullHttpResponse handleNextMessageRequest() {
+        bytesData.writeBytes(NEXT_MESSAGE_RESPONSE_START);
+        if (!TMGMessageManager.writeNextMessageJson(bytesData)) {
+            bytesData.clear();
+            return sendErrorResponse(HttpResponseStatus.SERVICE_UNAVAILABLE,
+                                     Collections.singleton(" # Error: Next message isn't ready yet, try again."));
         }
-        bytesData.writeBytes(buildMessagesResponse(Collections.singletonList(TMGMessageManager.getRandomMessage()), false)
-                                     .toString()
-                                     .getBytes());
+        bytesData.writeBytes(NEXT_MESSAGE_RESPONSE_END);
         return sendResponse();
     }
 
-    private FullHttpResponse handleNewMessageRequest(JsonObject jsonObject) {
-        Set<String> errors = new HashSet<>();
-        validateMessage(jsonObject, errors);
-        if (!errors.isEmpty()) {
-            return sendErrorResponse(errors);
-        }
-        IOMessage newMessage = new IOMessage(jsonObject);
+    private FullHttpResponse handleNewMessageRequest(LocalAPIRequest request) {
+        IOMessage newMessage = request.getMessage();
         newMessage.setId(IOMessageUtils.generateID());
         newMessage.setTimestamp(System.currentTimeMillis());
-        TMGMessageManager.saveMessage(newMessage);
+        switch (TMGMessageManager.saveMessage(newMessage)) {
+            case FULL:
+                return sendErrorResponse(HttpResponseStatus.SERVICE_UNAVAILABLE,
+                                         Collections.singleton(" # Error: Message storage is full, message was not saved."));
+            case TOO_LARGE:
+                return sendErrorResponse(HttpResponseStatus.REQUEST_ENTITY_TOO_LARGE,
+                                         Collections.singleton(" # Error: Message is too big for message storage, message was not saved."));
+            case FAILED:
+                return sendErrorResponse(HttpResponseStatus.INTERNAL_SERVER_ERROR,
+                                         Collections.singleton(" # Error: Message storage failed, message was not saved."));
+        }
 
         JsonObject messageReceipt = Json.createObjectBuilder()
                                         .add(IOFogResponseUtils.ID_FIELD_NAME, newMessage.getId())
@@ -221,13 +137,10 @@ class HttpRequestHandler implements Callable {
         return sendResponse();
     }
 
-    private Object handleMessagesQueryRequest(JsonObject jsonObject) {
-        Set<String> errors = new HashSet<>();
-        validateMessageQuery(jsonObject, errors);
-        if (!errors.isEmpty()) {
-            return sendErrorResponse(errors);
-        }
-        bytesData.writeBytes(buildMessagesResponse(TMGMessageManager.getAllMessages(), true).toString().getBytes());
+    private Object handleMessagesQueryRequest(LocalAPIRequest request) {
+        List<IOMessage> messages = TMGMessageManager.queryReceivedMessages(request.getPublishers(),
+                                                                           request.getTimeframeStart(), request.getTimeframeEnd());
+        IOMessageJsonWriter.writeMessagesResponse(bytesData, messages, request.getTimeframeStart(), request.getTimeframeEnd());
         return sendResponse();
     }
 }
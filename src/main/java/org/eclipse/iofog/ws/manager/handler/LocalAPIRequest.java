@@ -0,0 +1,82 @@
+/*
+ * *******************************************************************************
+ *   Copyright (c) 2018 Edgeworx, Inc.
+ *
+ *   This program and the accompanying materials are made available under the
+ *   terms of the Eclipse Public License v. 2.0 which is available at
+ *   http://www.eclipse.org/legal/epl-2.0
+ *
+ *   SPDX-License-Identifier: EPL-2.0
+ * *******************************************************************************
+ */
+
+package org.eclipse.iofog.ws.manager.handler;
+
+import org.eclipse.iofog.utils.elements.IOMessage;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * Values of REST request body collected by {@link LocalAPIRequestParser} together with validation errors.
+ */
+class LocalAPIRequest {
+
+    private final Set<String> errors = new HashSet<>();
+    private final IOMessage message = new IOMessage();
+    private final List<String> publishers = new ArrayList<>();
+    private String id;
+    private long timeframeStart;
+    private long timeframeEnd;
+
+    Set<String> getErrors() {
+        return errors;
+    }
+
+    boolean hasErrors() {
+        return !errors.isEmpty();
+    }
+
+    void addError(String error) {
+        errors.add(error);
+    }
+
+    /**
+     * Method returns IOMessage built from fields of /v2/messages/new request.
+     *
+     * @return IOMessage
+     */
+    IOMessage getMessage() {
+        return message;
+    }
+
+    List<String> getPublishers() {
+        return publishers;
+    }
+
+    String getId() {
+        return id;
+    }
+
+    void setId(String id) {
+        this.id = id;
+    }
+
+    long getTimeframeStart() {
+        return timeframeStart;
+    }
+
+    void setTimeframeStart(long timeframeStart) {
+        this.timeframeStart = timeframeStart;
+    }
+
+    long getTimeframeEnd() {
+        return timeframeEnd;
+    }
+
+    void setTimeframeEnd(long timeframeEnd) {
+        this.timeframeEnd = timeframeEnd;
+    }
+}
@@ -0,0 +1,315 @@
+/*
+ * *******************************************************************************
+ *   Copyright (c) 2018 Edgeworx, Inc.
+ *
+ *   This program and the accompanying materials are made available under the
+ *   terms of the Eclipse Public License v. 2.0 which is available at
+ *   http://www.eclipse.org/legal/epl-2.0
+ *
+ *   SPDX-License-Identifier: EPL-2.0
+ * *******************************************************************************
+ */
+
+package org.eclipse.iofog.ws.manager.handler;
+
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.ByteBufInputStream;
+import io.netty.util.CharsetUtil;
+import org.eclipse.iofog.utils.IOMessageUtils;
+import org.eclipse.iofog.utils.elements.IOMessage;
+import org.eclipse.iofog.utils.elements.LocalAPIURLType;
+
+import javax.json.Json;
+import javax.json.JsonException;
+import javax.json.stream.JsonParser;
+import javax.json.stream.JsonParser.Event;
+import javax.json.stream.JsonParserFactory;
+import java.math.BigDecimal;
+import java.util.Collections;
+import java.util.EnumMap;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.function.BiConsumer;
+import java.util.regex.Pattern;
+
+/**
+ * Single-pass parser and validator of REST request bodies.
+ * Body is read as a stream of JSON events, every field is checked against precompiled schema of the endpoint
+ * and its value is stored in {@link LocalAPIRequest} right away.
+ */
+class LocalAPIRequestParser {
+
+    private static final String ID_PARAM_NAME = "id";
+    private static final String TIMEFRAME_START_PARAM_NAME = "timeframestart";
+    private static final String TIMEFRAME_END_PARAM_NAME = "timeframeend";
+    private static final String PUBLISHERS_PARAM_NAME = "publishers";
+
+    private static final Pattern UNSIGNED_INT_PATTERN = Pattern.compile("[0-9]+");
+    private static final Pattern DECIMAL_PATTERN = Pattern.compile("[0-9]*.?[0-9]*");
+
+    private static final JsonParserFactory parserFactory = Json.createParserFactory(Collections.emptyMap());
+    private static final Map<LocalAPIURLType, Schema> schemas = new EnumMap<>(LocalAPIURLType.class);
+
+    static {
+        Schema idSchema = new Schema()
+                .field(ID_PARAM_NAME, FieldType.ID, true, LocalAPIRequest::setId);
+
+        Schema messageSchema = new Schema()
+                .field(IOMessage.ID_FIELD_NAME, FieldType.STRING, false,
+                       (request, value) -> request.getMessage().setId(value))
+                .field(IOMessage.TAG_FIELD_NAME, FieldType.STRING, false,
+                       (request, value) -> request.getMessage().setTag(value))
+                .field(IOMessage.GROUP_ID_FIELD_NAME, FieldType.STRING, false,
+                       (request, value) -> request.getMessage().setGroupId(value))
+                .field(IOMessage.SEQUENCE_NUMBER_FIELD_NAME, FieldType.UNSIGNED_INT, false,
+                       (request, value) -> request.getMessage().setSequenceNumber(Integer.parseInt(value)))
+                .field(IOMessage.SEQUENCE_TOTAL_FIELD_NAME, FieldType.UNSIGNED_INT, false,
+                       (request, value) -> request.getMessage().setSequenceTotal(Integer.parseInt(value)))
+                .field(IOMessage.PRIORITY_FIELD_NAME, FieldType.UNSIGNED_INT, false,
+                       (request, value) -> request.getMessage().setPriority((byte) Integer.parseInt(value)))
+                .field(IOMessage.TIMESTAMP_FIELD_NAME, FieldType.NUMBER, false,
+                       (request, value) -> request.getMessage().setTimestamp(new BigDecimal(value).longValue()))
+                .field(IOMessage.PUBLISHER_FIELD_NAME, FieldType.NON_EMPTY_STRING, true,
+                       (request, value) -> request.getMessage().setPublisher(value))
+                .field(IOMessage.AUTH_ID_FIELD_NAME, FieldType.STRING, false,
+                       (request, value) -> request.getMessage().setAuthId(value))
+                .field(IOMessage.AUTH_GROUP_FIELD_NAME, FieldType.STRING, false,
+                       (request, value) -> request.getMessage().setAuthGroup(value))
+                .field(IOMessage.VERSION_FIELD_NAME, FieldType.UNSIGNED_INT, true,
+                       (request, value) -> { })
+                .field(IOMessage.CHAIN_POSITION_FIELD_NAME, FieldType.UNSIGNED_INT, false,
+                       (request, value) -> request.getMessage().setChainPosition(Long.parseLong(value)))
+                .field(IOMessage.HASH_FIELD_NAME, FieldType.STRING, false,
+                       (request, value) -> request.getMessage().setHash(value))
+                .field(IOMessage.PREVIOUS_HASH_FIELD_NAME, FieldType.STRING, false,
+                       (request, value) -> request.getMessage().setPreviousHash(value))
+                .field(IOMessage.NONCE_FIELD_NAME, FieldType.STRING, false,
+                       (request, value) -> request.getMessage().setNonce(value))
+                .field(IOMessage.DIFFICULTY_TARGET_FIELD_NAME, FieldType.DECIMAL, false,
+                       (request, value) -> request.getMessage().setDifficultyTarget(new BigDecimal(value).intValue()))
+                .field(IOMessage.INFO_TYPE_FIELD_NAME, FieldType.NON_EMPTY_STRING, true,
+                       (request, value) -> request.getMessage().setInfoType(value))
+                .field(IOMessage.INFO_FORMAT_FIELD_NAME, FieldType.NON_EMPTY_STRING, true,
+                       (request, value) -> request.getMessage().setInfoFormat(value))
+                .field(IOMessage.CONTEXT_DATA_FIELD_NAME, FieldType.STRING, false,
+                       (request, value) -> request.getMessage().setContextData(decodeBase64(value)))
+                .field(IOMessage.CONTENT_DATA_FIELD_NAME, FieldType.STRING, true,
+                       (request, value) -> request.getMessage().setContentData(decodeBase64(value)));
+
+        Schema querySchema = new Schema()
+                .field(ID_PARAM_NAME, FieldType.ID, true, LocalAPIRequest::setId)
+                .field(PUBLISHERS_PARAM_NAME, FieldType.STRING_ARRAY, true,
+                       (request, value) -> request.getPublishers().add(value))
+                .field(TIMEFRAME_START_PARAM_NAME, FieldType.LONG, true,
+                       (request, value) -> request.setTimeframeStart(Long.parseLong(value)))
+                .field(TIMEFRAME_END_PARAM_NAME, FieldType.LONG, true,
+                       (request, value) -> request.setTimeframeEnd(Long.parseLong(value)));
+
+        schemas.put(LocalAPIURLType.GET_CONFIG_REST_LOCAL_API, idSchema);
+        schemas.put(LocalAPIURLType.GET_NEXT_MSG_REST_LOCAL_API, idSchema);
+        schemas.put(LocalAPIURLType.POST_MSG_REST_LOCAL_API, messageSchema);
+        schemas.put(LocalAPIURLType.GET_MSGS_QUERY_REST_LOCAL_API, querySchema);
+    }
+
+    /**
+     * Method parses and validates request body according to schema of endpoint.
+     *
+     * @param body - request body
+     * @param urlType - endpoint the request was sent to
+     * @return LocalAPIRequest
+     */
+    static LocalAPIRequest parse(ByteBuf body, LocalAPIURLType urlType) {
+        LocalAPIRequest request = new LocalAPIRequest();
+        Schema schema = schemas.get(urlType);
+        if (schema == null) {
+            request.addError("# Error: Unhandled request call.");
+            return request;
+        }
+
+        boolean[] present = new boolean[schema.size()];
+        try (JsonParser parser = parserFactory.createParser(new ByteBufInputStream(body.duplicate()), CharsetUtil.UTF_8)) {
+            if (!parser.hasNext() || parser.next() != Event.START_OBJECT) {
+                request.addError(" # Error: Request body is not a JSON object.");
+                return request;
+            }
+            Event event = parser.next();
+            while (event == Event.KEY_NAME) {
+                Field field = schema.get(parser.getString());
+                Event valueEvent = parser.next();
+                if (field == null) {
+                    skipValue(parser, valueEvent);
+                } else {
+                    present[field.index] = true;
+                    field.read(request, parser, valueEvent);
+                }
+                event = parser.next();
+            }
+        } catch (JsonException e) {
+            request.addError(" # Error: Invalid JSON in request body. " + e.getMessage());
+            return request;
+        }
+
+        for (Field field : schema.fields.values()) {
+            if (field.required && !present[field.index]) {
+                request.addError(" # Error: Missing input field '" + field.name + "'.");
+            }
+        }
+        return request;
+    }
+
+    private static byte[] decodeBase64(String value) {
+        return IOMessageUtils.decodeBase64(value.getBytes());
+    }
+
+    private static void skipValue(JsonParser parser, Event valueEvent) {
+        if (valueEvent != Event.START_OBJECT && valueEvent != Event.START_ARRAY) {
+            return;
+        }
+        int depth = 1;
+        while (depth > 0) {
+            Event event = parser.next();
+            if (event == Event.START_OBJECT || event == Event.START_ARRAY) {
+                depth++;
+            } else if (event == Event.END_OBJECT || event == Event.END_ARRAY) {
+                depth--;
+            }
+        }
+    }
+
+    private enum FieldType {
+        ID,
+        STRING,
+        NON_EMPTY_STRING,
+        UNSIGNED_INT,
+        DECIMAL,
+        NUMBER,
+        LONG,
+        STRING_ARRAY
+    }
+
+    private static class Field {
+        private final String name;
+        private final FieldType type;
+        private final boolean required;
+        private final int index;
+        private final BiConsumer<LocalAPIRequest, String> setter;
+
+        Field(String name, FieldType type, boolean required, int index, BiConsumer<LocalAPIRequest, String> setter) {
+            this.name = name;
+            this.type = type;
+            this.required = required;
+            this.index = index;
+            this.setter = setter;
+        }
+
+        void read(LocalAPIRequest request, JsonParser parser, Event valueEvent) {
+            switch (type) {
+                case ID:
+                    if (valueEvent == Event.VALUE_NULL) {
+                        request.addError(" # Error: Missing input field '" + name + "' value.");
+                        return;
+                    }
+                    readString(request, parser, valueEvent);
+                    break;
+                case STRING:
+                    readString(request, parser, valueEvent);
+                    break;
+                case NON_EMPTY_STRING:
+                    if (valueEvent == Event.VALUE_STRING && parser.getString().isEmpty()) {
+                        request.addError(" # Error: Missing input field value for '" + name + "'.");
+                        return;
+                    }
+                    readString(request, parser, valueEvent);
+                    break;
+                case UNSIGNED_INT:
+                    readNumber(request, parser, valueEvent, UNSIGNED_INT_PATTERN);
+                    break;
+                case DECIMAL:
+                    readNumber(request, parser, valueEvent, DECIMAL_PATTERN);
+                    break;
+                case NUMBER:
+                case LONG:
+                    readNumber(request, parser, valueEvent, null);
+                    break;
+                case STRING_ARRAY:
+                    readStringArray(request, parser, valueEvent);
+                    break;
+            }
+        }
+
+        private void readString(LocalAPIRequest request, JsonParser parser, Event valueEvent) {
+            if (valueEvent != Event.VALUE_STRING) {
+                invalidValue(request, parser, valueEvent);
+                return;
+            }
+            set(request, parser.getString());
+        }
+
+        private void readNumber(LocalAPIRequest request, JsonParser parser, Event valueEvent, Pattern pattern) {
+            if (valueEvent != Event.VALUE_NUMBER) {
+                invalidValue(request, parser, valueEvent);
+                return;
+            }
+            String number = parser.getString();
+            if (pattern != null && !pattern.matcher(number).matches()) {
+                invalidValue(request, parser, valueEvent);
+                return;
+            }
+            set(request, number);
+        }
+
+        private void readStringArray(LocalAPIRequest request, JsonParser parser, Event valueEvent) {
+            if (valueEvent != Event.START_ARRAY) {
+                invalidValue(request, parser, valueEvent);
+                return;
+            }
+            Event event = parser.next();
+            while (event != Event.END_ARRAY) {
+                if (event == Event.VALUE_STRING) {
+                    set(request, parser.getString());
+                } else {
+                    invalidValue(request, parser, event);
+                }
+                event = parser.next();
+            }
+        }
+
+        private void set(LocalAPIRequest request, String value) {
+            try {
+                setter.accept(request, value);
+            } catch (NumberFormatException e) {
+                addInvalidValueError(request);
+            }
+        }
+
+        private void invalidValue(LocalAPIRequest request, JsonParser parser, Event valueEvent) {
+            skipValue(parser, valueEvent);
+            addInvalidValueError(request);
+        }
+
+        private void addInvalidValueError(LocalAPIRequest request) {
+            if (type == FieldType.UNSIGNED_INT || type == FieldType.DECIMAL) {
+                request.addError(" # Error: Invalid  value for field '" + name + "'.");
+            } else {
+                request.addError(" # Error: Invalid value of '" + name + "'.");
+            }
+        }
+    }
+
+    private static class Schema {
+        private final Map<String, Field> fields = new HashMap<>();
+
+        Schema field(String name, FieldType type, boolean required, BiConsumer<LocalAPIRequest, String> setter) {
+            fields.put(name, new Field(name, type, required, fields.size(), setter));
+            return this;
+        }
+
+        Field get(String name) {
+            return fields.get(name);
+        }
+
+        int size() {
+            return fields.size();
+        }
+    }
+}
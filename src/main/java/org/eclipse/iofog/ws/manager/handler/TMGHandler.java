@@ -21,15 +21,16 @@ import io.netty.channel.SimpleChannelInboundHandler;
 import io.netty.handler.codec.http.FullHttpRequest;
 import io.netty.handler.codec.http.FullHttpResponse;
 import io.netty.handler.codec.http.HttpHeaders;
-import io.netty.handler.codec.http.websocketx.WebSocketFrame;
+import io.netty.handler.timeout.IdleStateEvent;
 import io.netty.util.CharsetUtil;
 import io.netty.util.concurrent.EventExecutorGroup;
 import io.netty.util.concurrent.Future;
 import io.netty.util.concurrent.GenericFutureListener;
 import org.eclipse.iofog.tmg.manager.ScheduleSender;
+import org.eclipse.iofog.tmg.manager.TMGMessageManager;
 import org.eclipse.iofog.utils.elements.LocalAPIURLType;
+import org.eclipse.iofog.ws.manager.WebSocketFrameEvent;
 import org.eclipse.iofog.ws.manager.WebSocketManager;
-import org.eclipse.iofog.ws.manager.listener.TMGWSManagerListener;
 
 import java.util.concurrent.Callable;
 import java.util.concurrent.ExecutionException;
@@ -43,12 +44,19 @@ public class TMGHandler extends SimpleChannelInboundHandler {
     private final WebSocketManager wsManager;
     private final boolean ssl;
 
-    private ScheduleSender schSender;
+    private String containerId;
+    private LocalAPIURLType socketType;
+    private Runnable containerConfigListener;
 
-    public TMGHandler(boolean ssl, EventExecutorGroup executor) {
+    /**
+     * @param ssl - true if channel is secured
+     * @param executor - executor of HTTP requests
+     * @param wsManager - WebSocket manager shared by all channels
+     */
+    public TMGHandler(boolean ssl, EventExecutorGroup executor, WebSocketManager wsManager) {
         super(false);
         this.ssl = ssl;
-        wsManager = new WebSocketManager(new TMGWSManagerListener());
+        this.wsManager = wsManager;
         this.executor = executor;
     }
 
@@ -56,8 +64,13 @@ public class TMGHandler extends SimpleChannelInboundHandler {
     public void channelRead0(ChannelHandlerContext ctx, Object msg) {
         if (msg instanceof FullHttpRequest) {
             handleHttpRequest(ctx, (FullHttpRequest) msg);
-        } else if (msg instanceof WebSocketFrame) {
-            wsManager.eatFrame(ctx, (WebSocketFrame) msg);
+        } else if (msg instanceof WebSocketFrameEvent) {
+            WebSocketFrameEvent event = (WebSocketFrameEvent) msg;
+            try {
+                wsManager.dispatch(ctx, event);
+            } finally {
+                event.release();
+            }
         }
     }
 
@@ -73,13 +86,19 @@ public class TMGHandler extends SimpleChannelInboundHandler {
             String id = tokens[4].trim();
             if (url.equals(LocalAPIURLType.GET_CONTROL_WEB_SOCKET_LOCAL_API.getURL())) {
                 wsManager.initControlSocket(ctx, id, ssl, url, request);
+                if (containerConfigListener == null) {
+                    containerConfigListener = () -> wsManager.sendControl(id);
+                    TMGMessageManager.addContainerConfigListener(containerConfigListener);
+                }
+                containerId = id;
+                socketType = LocalAPIURLType.GET_CONTROL_WEB_SOCKET_LOCAL_API;
+                ScheduleSender.startControl(id, wsManager, ctx);
             } else if (url.equals(LocalAPIURLType.GET_MSG_WEB_SOCKET_LOCAL_API.getURL())) {
                 wsManager.initMessageSocket(ctx, id, ssl, url, request);
+                containerId = id;
+                socketType = LocalAPIURLType.GET_MSG_WEB_SOCKET_LOCAL_API;
+                ScheduleSender.startMessages(id, wsManager, ctx);
             }
-            if (schSender == null) {
-                schSender = new ScheduleSender(id, wsManager);
-            }
-            schSender.start();
         }
 
     }
@@ -116,12 +135,37 @@ public class TMGHandler extends SimpleChannelInboundHandler {
     }
 
     @Override
-    public void exceptionCaught(ChannelHandlerContext ctx, Throwable cause) throws Exception {
-        if (schSender != null) {
-            schSender.stop();
+    public void channelInactive(ChannelHandlerContext ctx) throws Exception {
+        if (containerConfigListener != null) {
+            TMGMessageManager.removeContainerConfigListener(containerConfigListener);
+        }
+        stopSchedule(ctx);
+        wsManager.removeSocket(ctx);
+        super.channelInactive(ctx);
+    }
+
+    @Override
+    public void userEventTriggered(ChannelHandlerContext ctx, Object evt) throws Exception {
+        if (evt instanceof IdleStateEvent) {
+            wsManager.handleIdle(ctx, (IdleStateEvent) evt);
+        } else {
+            super.userEventTriggered(ctx, evt);
         }
+    }
+
+    @Override
+    public void exceptionCaught(ChannelHandlerContext ctx, Throwable cause) throws Exception {
+        stopSchedule(ctx);
         super.exceptionCaught(ctx, cause);
     }
 
+    private void stopSchedule(ChannelHandlerContext ctx) {
+        if (socketType == LocalAPIURLType.GET_CONTROL_WEB_SOCKET_LOCAL_API) {
+            ScheduleSender.stopControl(containerId, wsManager, ctx);
+        } else if (socketType == LocalAPIURLType.GET_MSG_WEB_SOCKET_LOCAL_API) {
+            ScheduleSender.stopMessages(containerId, wsManager, ctx);
+        }
+    }
+
 }
 
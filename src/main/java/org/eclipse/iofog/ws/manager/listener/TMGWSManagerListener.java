@@ -13,15 +13,23 @@
 package org.eclipse.iofog.ws.manager.listener;
 
 import io.netty.buffer.ByteBuf;
+import io.netty.channel.Channel;
 import io.netty.channel.ChannelHandlerContext;
 import io.netty.handler.codec.http.websocketx.BinaryWebSocketFrame;
+import io.netty.util.Attribute;
+import io.netty.util.AttributeKey;
+import io.netty.util.concurrent.EventExecutor;
+import io.netty.util.concurrent.EventExecutorGroup;
 import org.eclipse.iofog.tmg.manager.TMGMessageManager;
-import org.eclipse.iofog.utils.ByteUtils;
+import org.eclipse.iofog.tmg.storage.MessageStorage;
+import org.eclipse.iofog.utils.IOMessageEncoder;
 import org.eclipse.iofog.utils.IOMessageUtils;
-import org.eclipse.iofog.utils.elements.IOMessage;
+import org.eclipse.iofog.utils.elements.IOMessageView;
 import org.eclipse.iofog.ws.manager.WebSocketManager;
 
-import java.util.Arrays;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.logging.Logger;
 
 /**
  * Test Message Generator WebSocket Listener
@@ -29,29 +37,107 @@ import java.util.Arrays;
  * According to specification handles next transmissions' codes:
  * In case of receiving MESSAGE from ioContainer, Test Message Generator saves IOMessage with generate ID and timestamp
  * to receivedmessages.xml and responds to ioContainer with MESSAGE_RECEIPT response containing only generated ID and timestamp.
+ * When storage queue policy is "block", messages are saved on executor of the socket instead of its event loop
+ * and the socket stops reading until they are saved, so a full storage queue slows the container down instead of losing its messages.
+ * Messages which aren't saved get no receipt, they are counted and reported in log.
  **/
 public class TMGWSManagerListener implements WebSocketManagerListener {
 
+    private static final Logger log = Logger.getLogger(TMGWSManagerListener.class.getName());
+
+    private static final long REJECTED_REPORT_INTERVAL = TimeUnit.SECONDS.toMillis(10);
+    private static final AttributeKey<EventExecutor> SAVE_EXECUTOR = AttributeKey.valueOf("tmgSaveExecutor");
+    private static final AttributeKey<Integer> PENDING_SAVES = AttributeKey.valueOf("tmgPendingSaves");
+
+    private final EventExecutorGroup executor;
+    private final AtomicLong rejected = new AtomicLong();
+    private final AtomicLong lastRejectedReport = new AtomicLong();
+
+    /**
+     * @param executor - executor group which may block, used for saving with storage queue policy "block"
+     */
+    public TMGWSManagerListener(EventExecutorGroup executor) {
+        this.executor = executor;
+    }
+
     @Override
     public void handle(WebSocketManager wsManager, BinaryWebSocketFrame frame, ChannelHandlerContext ctx) {
         ByteBuf content = frame.content();
-        if(content.isReadable()) {
-            Byte opcode = content.readByte();
-            if (opcode.equals(WebSocketManager.OPCODE_MSG)) {
-                System.out.println("GOT MSG via SOCKET");
-                byte[] byteArray = new byte[content.readableBytes()];
-                int readerIndex = content.readerIndex();
-                content.getBytes(readerIndex, byteArray);
-                int totalMsgLength = ByteUtils.bytesToInteger(Arrays.copyOfRange(byteArray, 0, 4));
-                IOMessage message = new IOMessage(Arrays.copyOfRange(byteArray, 4, totalMsgLength + 4));
-                message.setId(IOMessageUtils.generateID());
-                message.setTimestamp(System.currentTimeMillis());
-//                System.out.println("Message: \n" + message.toString());
-                TMGMessageManager.saveMessage(message);
-                wsManager.sendReceipt(ctx, message.getId(), message.getTimestamp());
+        if(content.isReadable() && content.getByte(content.readerIndex()) == WebSocketManager.OPCODE_MSG) {
+            log.fine("Received message via socket");
+            if (TMGMessageManager.isMessageStorageBlocking()) {
+                saveBlocking(wsManager, frame, ctx);
+            } else {
+                save(wsManager, content, ctx);
             }
         }
     }
 
+    /**
+     * Method returns number of messages received via sockets which weren't saved and got no receipt.
+     *
+     * @return long
+     */
+    public long getRejectedCount() {
+        return rejected.get();
+    }
+
+    private void save(WebSocketManager wsManager, ByteBuf content, ChannelHandlerContext ctx) {
+        int index = content.readerIndex();
+        int totalMsgLength = content.getInt(index + 1);
+        IOMessageView messageView = new IOMessageView(content.slice(index + IOMessageEncoder.FRAME_PREFIX_SIZE, totalMsgLength));
+        if (!messageView.isSupportedVersion()) {
+            log.warning("Received IOMessage of unsupported version " + messageView.getVersion() + ". Skipping it.");
+            return;
+        }
+        messageView.setId(IOMessageUtils.generateID());
+        messageView.setTimestamp(System.currentTimeMillis());
+        MessageStorage.SaveResult result = TMGMessageManager.saveMessage(messageView);
+        if (result == MessageStorage.SaveResult.ACCEPTED) {
+            wsManager.sendReceipt(ctx, messageView.getId(), messageView.getTimestamp());
+        } else {
+            reportRejected(ctx, result);
+        }
+    }
+
+    /**
+     * Method saves message on executor of the socket, which keeps order of its messages.
+     * Socket doesn't read until all its pending messages are saved, pending count is kept on event loop of the socket.
+     */
+    private void saveBlocking(WebSocketManager wsManager, BinaryWebSocketFrame frame, ChannelHandlerContext ctx) {
+        Channel channel = ctx.channel();
+        EventExecutor saveExecutor = channel.attr(SAVE_EXECUTOR).get();
+        if (saveExecutor == null) {
+            saveExecutor = executor.next();
+            channel.attr(SAVE_EXECUTOR).set(saveExecutor);
+        }
+        Attribute<Integer> pending = channel.attr(PENDING_SAVES);
+        pending.set(pending.get() == null ? 1 : pending.get() + 1);
+        channel.config().setAutoRead(false);
+        frame.retain();
+        saveExecutor.execute(() -> {
+            try {
+                save(wsManager, frame.content(), ctx);
+            } finally {
+                frame.release();
+                ctx.executor().execute(() -> {
+                    int left = pending.get() - 1;
+                    pending.set(left);
+                    if (left == 0) {
+                        channel.config().setAutoRead(true);
+                    }
+                });
+            }
+        });
+    }
 
+    private void reportRejected(ChannelHandlerContext ctx, MessageStorage.SaveResult result) {
+        long count = rejected.incrementAndGet();
+        long now = System.currentTimeMillis();
+        long last = lastRejectedReport.get();
+        if (now - last >= REJECTED_REPORT_INTERVAL && lastRejectedReport.compareAndSet(last, now)) {
+            log.warning("Message received from " + ctx.channel().remoteAddress() + " wasn't saved (" + result
+                        + "), no receipt was sent. Socket messages not saved so far: " + count);
+        }
+    }
 }